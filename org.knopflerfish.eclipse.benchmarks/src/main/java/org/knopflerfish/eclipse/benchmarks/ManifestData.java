@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Generates realistic manifest headers for the benchmarks.
+ * <p>
+ * Package names, versions and uses directives follow the patterns of large
+ * bundles, e.g. library bundles exporting hundreds of packages.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class ManifestData {
+
+  // Number of packages in each uses directive
+  private static final int USES = 5;
+
+  /**
+   * Returns the name of the package with the given index.
+   *
+   * @param i package index
+   * @return package name
+   */
+  public static String packageName(int i)
+  {
+    return "org.knopflerfish.benchmark.module" + (i / 25) + ".api.impl" + i;
+  }
+
+  /**
+   * Returns an Export-Package header with versions and uses directives.
+   *
+   * @param packages number of packages
+   * @return header value
+   */
+  public static String exportPackage(int packages)
+  {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < packages; i++) {
+      if (i > 0) {
+        buf.append(',');
+      }
+      buf.append(packageName(i));
+      buf.append(";version=\"");
+      buf.append(1 + i % 3).append('.').append(i % 10).append('.').append(i);
+      buf.append("\";uses:=\"");
+      for (int j = 1; j <= USES; j++) {
+        if (j > 1) {
+          buf.append(',');
+        }
+        buf.append(packageName((i + j * 7) % packages));
+      }
+      buf.append('"');
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Returns an Import-Package header with version ranges, every fifth
+   * package is optional.
+   *
+   * @param packages number of packages
+   * @return header value
+   */
+  public static String importPackage(int packages)
+  {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < packages; i++) {
+      if (i > 0) {
+        buf.append(',');
+      }
+      buf.append(packageName(i));
+      buf.append(";version=\"");
+      buf.append(versionRange(i));
+      buf.append('"');
+      if (i % 5 == 0) {
+        buf.append(";resolution:=optional");
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Returns a version range, both ranges and single versions are returned.
+   *
+   * @param i index
+   * @return version range
+   */
+  public static String versionRange(int i)
+  {
+    int major = 1 + i % 3;
+    switch (i % 4) {
+    case 0:
+      return "[" + major + ".0.0," + (major + 1) + ".0.0)";
+    case 1:
+      return "(" + major + "." + (i % 10) + "," + (major + 1) + "]";
+    case 2:
+      return "[" + major + "." + (i % 10) + "." + i + "," + major + "."
+          + (i % 10) + "." + i + "]";
+    default:
+      return major + "." + (i % 10);
+    }
+  }
+
+  /**
+   * Returns a bundle manifest with the given number of imported and exported
+   * packages.
+   *
+   * @param packages number of packages
+   * @return manifest
+   */
+  public static Manifest manifest(int packages)
+  {
+    Manifest manifest = new Manifest();
+    Attributes attr = manifest.getMainAttributes();
+    attr.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attr.putValue("Bundle-ManifestVersion", "2");
+    attr.putValue("Bundle-SymbolicName",
+        "org.knopflerfish.benchmark;singleton:=true");
+    attr.putValue("Bundle-Name", "Benchmark bundle");
+    attr.putValue("Bundle-Version", "1.2.3.qualifier");
+    attr.putValue("Bundle-Vendor", "Knopflerfish");
+    attr.putValue("Bundle-Activator",
+        "org.knopflerfish.benchmark.impl.Activator");
+    attr.putValue("Bundle-ClassPath", ".,lib/a.jar,lib/b.jar,lib/c.jar");
+    attr.putValue("Bundle-Category", "benchmark,test,library");
+    attr.putValue("Export-Package", exportPackage(packages));
+    attr.putValue("Import-Package", importPackage(packages));
+    attr.putValue("Bundle-Description", "Bundle used by benchmarks");
+    attr.putValue("Bundle-DocURL", "http://www.knopflerfish.org/");
+    return manifest;
+  }
+
+  /**
+   * Returns the manifest as it is written to file, with lines wrapped using
+   * continuation lines.
+   *
+   * @param packages number of packages
+   * @return manifest text
+   * @throws IOException if the manifest can not be written
+   */
+  public static String manifestText(int packages) throws IOException
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    manifest(packages).write(bout);
+    return bout.toString("UTF-8");
+  }
+}
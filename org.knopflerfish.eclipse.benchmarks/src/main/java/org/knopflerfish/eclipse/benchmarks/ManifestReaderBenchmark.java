@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.knopflerfish.eclipse.core.ManifestReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link ManifestReader} with {@link JarFile} when reading the
+ * manifest of large jar files.
+ * <p>
+ * The manifest is either written first, as done by the jar tool, or last,
+ * as done by many zip tools, in which case the central directory has to be
+ * searched.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManifestReaderBenchmark {
+
+  @Param({"1000", "10000"})
+  public int entries;
+
+  @Param({"true", "false"})
+  public boolean manifestFirst;
+
+  private File jar;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException
+  {
+    jar = File.createTempFile("benchmark", ".jar");
+    jar.deleteOnExit();
+
+    Manifest manifest = new Manifest();
+    Attributes attr = manifest.getMainAttributes();
+    attr.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attr.putValue("Bundle-SymbolicName", "org.knopflerfish.benchmark");
+    attr.putValue("Bundle-Version", "1.0.0");
+
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      if (manifestFirst) {
+        writeManifest(out, manifest);
+      }
+      byte[] data = new byte[512];
+      for (int i = 0; i < entries; i++) {
+        out.putNextEntry(new ZipEntry("org/knopflerfish/benchmark/p" + (i / 100)
+            + "/Class" + i + ".class"));
+        out.write(data);
+        out.closeEntry();
+      }
+      if (!manifestFirst) {
+        writeManifest(out, manifest);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    jar.delete();
+  }
+
+  @Benchmark
+  public Manifest manifestReader() throws IOException
+  {
+    return ManifestReader.readManifest(jar);
+  }
+
+  @Benchmark
+  public Manifest jarFile() throws IOException
+  {
+    JarFile jarFile = new JarFile(jar);
+    try {
+      return jarFile.getManifest();
+    } finally {
+      jarFile.close();
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static void writeManifest(ZipOutputStream out, Manifest manifest)
+      throws IOException
+  {
+    out.putNextEntry(new ZipEntry("META-INF/"));
+    out.closeEntry();
+    out.putNextEntry(new ZipEntry(ManifestReader.MANIFEST_NAME));
+    manifest.write(out);
+    out.closeEntry();
+  }
+}
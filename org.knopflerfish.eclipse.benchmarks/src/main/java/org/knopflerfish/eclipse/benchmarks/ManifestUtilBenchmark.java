@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.knopflerfish.eclipse.core.manifest.ManifestText;
+import org.knopflerfish.eclipse.core.manifest.ManifestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures editing of manifest text with {@link ManifestUtil} and
+ * {@link ManifestText}, as done by the manifest form editor and when
+ * checking bundle projects.
+ * <p>
+ * Every invocation edits a fresh copy of the manifest text.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManifestUtilBenchmark {
+
+  // Attributes set when the form editor saves the manifest
+  private static final String[][] FORM_ATTRIBUTES = {
+    {"Bundle-Name", "Benchmark bundle 2"},
+    {"Bundle-SymbolicName", "org.knopflerfish.benchmark2"},
+    {"Bundle-Version", "1.2.4"},
+    {"Bundle-Vendor", "Makewave"},
+    {"Bundle-Activator", "org.knopflerfish.benchmark.impl.Activator2"},
+    {"Bundle-Category", "benchmark"},
+    {"Bundle-Description", "Updated description"},
+    {"Bundle-DocURL", "http://www.makewave.com/"},
+    {"Bundle-ContactAddress", "info@makewave.com"},
+    {"Bundle-Copyright", "Copyright (c) Makewave"}};
+
+  @Param({"50", "500"})
+  public int packages;
+
+  private String text;
+  private String exportPackage;
+
+  @Setup
+  public void setUp() throws IOException
+  {
+    text = ManifestData.manifestText(packages);
+    exportPackage = ManifestData.exportPackage(packages + 1);
+  }
+
+  @Benchmark
+  public StringBuffer setAttribute()
+  {
+    return ManifestUtil.setManifestAttribute(new StringBuffer(text),
+        "Bundle-DocURL", "http://www.makewave.com/");
+  }
+
+  @Benchmark
+  public StringBuffer setExportPackage()
+  {
+    return ManifestUtil.setManifestAttribute(new StringBuffer(text),
+        "Export-Package", exportPackage);
+  }
+
+  @Benchmark
+  public StringBuffer saveForm()
+  {
+    StringBuffer buf = new StringBuffer(text);
+    for (int i = 0; i < FORM_ATTRIBUTES.length; i++) {
+      buf = ManifestUtil.setManifestAttribute(buf, FORM_ATTRIBUTES[i][0],
+          FORM_ATTRIBUTES[i][1]);
+    }
+    return buf;
+  }
+
+  @Benchmark
+  public String saveFormManifestText()
+  {
+    ManifestText manifestText = new ManifestText(text);
+    for (int i = 0; i < FORM_ATTRIBUTES.length; i++) {
+      manifestText.setAttribute(FORM_ATTRIBUTES[i][0], FORM_ATTRIBUTES[i][1]);
+    }
+    return manifestText.getText();
+  }
+
+  @Benchmark
+  public int findAttributeLine()
+  {
+    StringBuffer buf = new StringBuffer(text);
+    int n = 0;
+    for (int i = 0; i < FORM_ATTRIBUTES.length; i++) {
+      n += ManifestUtil.findAttributeLine(buf, FORM_ATTRIBUTES[i][0]);
+    }
+    return n;
+  }
+
+  @Benchmark
+  public int findAttributeLineManifestText()
+  {
+    ManifestText manifestText = new ManifestText(text);
+    int n = 0;
+    for (int i = 0; i < FORM_ATTRIBUTES.length; i++) {
+      n += manifestText.getAttributeLine(FORM_ATTRIBUTES[i][0]);
+    }
+    return n;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.knopflerfish.eclipse.core.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the header tokenizers in {@link Util}.
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+  @Param({"50", "500"})
+  public int packages;
+
+  private String exportPackage;
+  private String words;
+
+  @Setup
+  public void setUp()
+  {
+    exportPackage = ManifestData.exportPackage(packages);
+
+    // Command line like string with quoted words
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < packages; i++) {
+      buf.append(i % 10 == 0 ? " \"" : " ");
+      buf.append(ManifestData.packageName(i));
+      buf.append(i % 10 == 0 ? " quoted\"\t" : "\n");
+    }
+    words = buf.toString();
+  }
+
+  @Benchmark
+  public String[] splitwords()
+  {
+    return Util.splitwords(words);
+  }
+
+  @Benchmark
+  public String[] splitwordsExportPackage()
+  {
+    return Util.splitwords(exportPackage, ",", '"');
+  }
+
+  @Benchmark
+  public void parseEntriesExportPackage(Blackhole bh)
+  {
+    Iterator i = Util.parseEntries("Export-Package", exportPackage, false,
+        true, false);
+    while (i.hasNext()) {
+      bh.consume(i.next());
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.knopflerfish.eclipse.core.VersionRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.Version;
+
+/**
+ * Measures parsing of {@link VersionRange} and matching versions against
+ * ranges, as done when resolving imported packages.
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionRangeBenchmark {
+
+  private static final int SIZE = 500;
+
+  private String[] specs;
+  private VersionRange[] ranges;
+  private Version[] versions;
+
+  @Setup
+  public void setUp()
+  {
+    specs = new String[SIZE];
+    ranges = new VersionRange[SIZE];
+    versions = new Version[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      specs[i] = "\"" + ManifestData.versionRange(i) + "\"";
+      ranges[i] = new VersionRange(specs[i]);
+      versions[i] = new Version(1 + i % 4, i % 10, i % 7);
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh)
+  {
+    for (int i = 0; i < SIZE; i++) {
+      bh.consume(new VersionRange(specs[i]));
+    }
+  }
+
+  @Benchmark
+  public int contains()
+  {
+    int n = 0;
+    for (int i = 0; i < SIZE; i++) {
+      if (ranges[i].contains(versions[(i * 31) % SIZE])) {
+        n++;
+      }
+    }
+    return n;
+  }
+}
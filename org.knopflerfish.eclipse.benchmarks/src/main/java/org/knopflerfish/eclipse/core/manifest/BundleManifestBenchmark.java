@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.manifest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import org.knopflerfish.eclipse.benchmarks.ManifestData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing of package headers and the {@link BundleManifest} header
+ * getters.
+ * <p>
+ * The benchmark is in the manifest package since
+ * {@link PackageDescription#parseNames(String, boolean)} is package private.
+ * The getters are measured both on a new manifest, where headers have to be
+ * parsed, and on a manifest where the parsed headers are cached.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleManifestBenchmark {
+
+  @Param({"50", "500"})
+  public int packages;
+
+  private String exportPackage;
+  private String importPackage;
+  private Manifest manifest;
+  private BundleManifest cached;
+
+  @Setup
+  public void setUp()
+  {
+    exportPackage = ManifestData.exportPackage(packages);
+    importPackage = ManifestData.importPackage(packages);
+    manifest = ManifestData.manifest(packages);
+    cached = new BundleManifest(manifest);
+    getAll(cached, null);
+  }
+
+  @Benchmark
+  public List<PackageDescription> parseExportPackage()
+  {
+    return PackageDescription.parseNames(exportPackage, false);
+  }
+
+  @Benchmark
+  public List<PackageDescription> parseImportPackage()
+  {
+    return PackageDescription.parseNames(importPackage, true);
+  }
+
+  @Benchmark
+  public void getters(Blackhole bh)
+  {
+    getAll(new BundleManifest(manifest), bh);
+  }
+
+  @Benchmark
+  public void cachedGetters(Blackhole bh)
+  {
+    getAll(cached, bh);
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static void getAll(BundleManifest bm, Blackhole bh)
+  {
+    Object[] values = new Object[] {bm.getSymbolicName(), bm.getVersion(),
+        bm.getName(), bm.getActivator(), bm.getCategories(),
+        bm.getBundleClassPath(), bm.getExportedPackages(),
+        bm.getImportedPackages(), bm.getNativeCodeClauses()};
+    if (bh != null) {
+      bh.consume(values);
+    }
+  }
+}
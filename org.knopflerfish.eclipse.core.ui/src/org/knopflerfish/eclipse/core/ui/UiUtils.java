@@ -34,6 +34,12 @@
 
 package org.knopflerfish.eclipse.core.ui;
 
+import java.util.List;
+
+import org.eclipse.jface.viewers.IBaseLabelProvider;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Drawable;
 import org.eclipse.swt.graphics.FontMetrics;
 import org.eclipse.swt.graphics.GC;
@@ -56,11 +62,11 @@ public class UiUtils {
   public static int BOTTOM = 3;
   
 
-  /*
   private static final int MIN_COL_WIDTH    = 15;
   private static final int COL_MARGIN       = 15;
   private static final int CHECKBOX_WIDTH   = 15;
-  */
+  // Max number of rows measured when fitting columns
+  private static final int SAMPLE_ROWS      = 100;
 
   public static void packTableColumns(Table table) {
     if(table == null) return;
@@ -108,6 +114,71 @@ public class UiUtils {
     }
     */
   }
+  
+  /**
+   * Fits the table columns to the given rows without reading the table
+   * items, which makes it usable for virtual tables. If there are many rows
+   * only a sample of evenly spread rows is measured.
+   * <p>
+   * Columns are only widened unless shrink is set, i.e. the columns can be
+   * fitted incrementally by only passing added or changed rows.
+   * </p>
+   * 
+   * @param table table
+   * @param labelProvider table or plain label provider used by the table
+   * @param rows row elements to fit
+   * @param shrink true if columns may be made narrower
+   */
+  public static void fitTableColumns(Table table, IBaseLabelProvider labelProvider, List<?> rows, boolean shrink) {
+    if(table == null || rows == null) return;
+    TableColumn [] columns = table.getColumns();
+    if (columns == null) return;
+    
+    int step = Math.max(1, rows.size() / SAMPLE_ROWS);
+    GC gc = null;
+    try {
+      gc = new GC(table);
+      for(int i=0;i<columns.length;i++) {
+        int width = MIN_COL_WIDTH;
+        // Header
+        String header = columns[i].getText();
+        if (header != null) {
+          int textWidth = gc.textExtent(header).x;
+          if (textWidth > width) width = textWidth;
+        }
+        
+        // Sampled rows
+        for (int j=0; j<rows.size(); j+=step) {
+          Object row = rows.get(j);
+          String text = null;
+          Image img = null;
+          if (labelProvider instanceof ITableLabelProvider) {
+            text = ((ITableLabelProvider) labelProvider).getColumnText(row, i);
+            img = ((ITableLabelProvider) labelProvider).getColumnImage(row, i);
+          } else if (labelProvider instanceof ILabelProvider && i == 0) {
+            text = ((ILabelProvider) labelProvider).getText(row);
+            img = ((ILabelProvider) labelProvider).getImage(row);
+          }
+          int textWidth = text == null ? 0 : gc.textExtent(text).x;
+          // Check if image is shown
+          if (img != null) {
+            textWidth += img.getBounds().width;
+          }
+          if ( (table.getStyle() & SWT.CHECK) != 0 && i==0) {
+            textWidth += CHECKBOX_WIDTH;
+          }
+          if (textWidth > width) width = textWidth;
+        }
+        
+        width += COL_MARGIN;
+        if (shrink || width > columns[i].getWidth()) {
+          columns[i].setWidth(width);
+        }
+      }
+    } finally {
+      if (gc != null) gc.dispose();
+    }
+  }
  
   public static void packTreeColumns(Tree tree) {
     if(tree == null) return;
@@ -34,34 +34,77 @@
 
 package org.knopflerfish.eclipse.core.ui.dialogs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
+import org.eclipse.jface.viewers.DoubleClickEvent;
+import org.eclipse.jface.viewers.IDoubleClickListener;
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.ISelectionChangedListener;
+import org.eclipse.jface.viewers.SelectionChangedEvent;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
-import org.eclipse.ui.dialogs.ElementListSelectionDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.dialogs.SelectionStatusDialog;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.ui.UiUtils;
 
 /**
+ * Dialog for selecting packages by name.
+ * <p>
+ * The packages are shown in a virtual table, only rows that are visible are
+ * created. The filter matches the beginning of the package names, '*' and
+ * '?' can be used as wildcards.
+ * </p>
+ * 
  * @author Anders Rimn, Makewave
  * @see http://www.makewave.com/
  */
-public class PackageSelectionDialog extends ElementListSelectionDialog {
+public class PackageSelectionDialog extends SelectionStatusDialog {
 
-  //private Map<String, List<PackageDescription>> packages;
+  private static final int NUM_TABLE_ROWS = 18;
+  private static final int NUM_TABLE_CHARS = 60;
+
+  private final PackageLabelProvider labelProvider;
+  private boolean multipleSelection = false;
+  // Sorted package names
+  private String[] packages = new String[0];
+  // Package names matching filter
+  private List<String> matches = new ArrayList<String>();
+
+  // Widgets
+  private Text wFilterText;
+  private TableViewer wPackageTableViewer;
 
   public PackageSelectionDialog(Shell activeShell, PackageLabelProvider provider)
   {
-    super(activeShell, provider);
+    super(activeShell);
+    this.labelProvider = provider;
   }
 
   public void setPackages(Map<String, List<PackageDescription>> map)
   {
-    //packages = map;
-    setElements(map.keySet().toArray(new String[map.size()]));
+    packages = map.keySet().toArray(new String[map.size()]);
+    Arrays.sort(packages);
+    matches = new ArrayList<String>(Arrays.asList(packages));
+  }
+
+  public void setMultipleSelection(boolean multipleSelection)
+  {
+    this.multipleSelection = multipleSelection;
   }
 
   // ***************************************************************************
@@ -76,13 +119,165 @@ public class PackageSelectionDialog extends ElementListSelectionDialog {
    */
   protected Control createDialogArea(Composite parent)
   {
-    Composite wDialogComposite = new Composite(parent, SWT.NONE);
-    GridLayout layout = new GridLayout();
-    wDialogComposite.setLayout(layout);
+    Composite wDialogComposite = (Composite) super.createDialogArea(parent);
+
+    createMessageArea(wDialogComposite);
 
-    // Add default dialog area
-    super.createDialogArea(wDialogComposite);
+    // Filter
+    wFilterText = new Text(wDialogComposite, SWT.SINGLE | SWT.BORDER);
+    wFilterText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+    wFilterText.addModifyListener(new ModifyListener() {
+      public void modifyText(ModifyEvent e)
+      {
+        applyFilter();
+      }
+    });
+
+    // Packages
+    int style = SWT.VIRTUAL | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL
+        | SWT.FULL_SELECTION | (multipleSelection ? SWT.MULTI : SWT.SINGLE);
+    Table wPackageTable = new Table(wDialogComposite, style);
+    new TableColumn(wPackageTable, SWT.LEFT);
+    GridData gd = new GridData(GridData.FILL_BOTH);
+    gd.widthHint = UiUtils.convertWidthInCharsToPixels(wPackageTable,
+        NUM_TABLE_CHARS);
+    gd.heightHint = wPackageTable.getItemHeight() * NUM_TABLE_ROWS;
+    wPackageTable.setLayoutData(gd);
+    wPackageTableViewer = new TableViewer(wPackageTable);
+    wPackageTableViewer.setContentProvider(new PackageContentProvider());
+    wPackageTableViewer.setLabelProvider(labelProvider);
+    wPackageTableViewer.addSelectionChangedListener(new ISelectionChangedListener() {
+      public void selectionChanged(SelectionChangedEvent event)
+      {
+        updateOkButton();
+      }
+    });
+    wPackageTableViewer.addDoubleClickListener(new IDoubleClickListener() {
+      public void doubleClick(DoubleClickEvent event)
+      {
+        if (getOkButton().isEnabled()) {
+          okPressed();
+        }
+      }
+    });
+    wPackageTableViewer.setInput(matches);
+    UiUtils.fitTableColumns(wPackageTable, labelProvider, matches, true);
 
     return wDialogComposite;
   }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.eclipse.ui.dialogs.SelectionStatusDialog#create()
+   */
+  public void create()
+  {
+    super.create();
+    updateOkButton();
+    wFilterText.setFocus();
+  }
+
+  // ***************************************************************************
+  // org.eclipse.ui.dialogs.SelectionStatusDialog methods
+  // ***************************************************************************
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.eclipse.ui.dialogs.SelectionStatusDialog#computeResult()
+   */
+  protected void computeResult()
+  {
+    int[] indices = wPackageTableViewer.getTable().getSelectionIndices();
+    List<String> result = new ArrayList<String>(indices.length);
+    for (int i = 0; i < indices.length; i++) {
+      result.add(matches.get(indices[i]));
+    }
+    setResult(result);
+  }
+
+  // ***************************************************************************
+  // Private utility methods
+  // ***************************************************************************
+  private void applyFilter()
+  {
+    Pattern pattern = createPattern(wFilterText.getText());
+    List<String> l = new ArrayList<String>();
+    for (int i = 0; i < packages.length; i++) {
+      if (pattern.matcher(packages[i]).lookingAt()) {
+        l.add(packages[i]);
+      }
+    }
+    matches = l;
+
+    Table wPackageTable = wPackageTableViewer.getTable();
+    wPackageTable.deselectAll();
+    wPackageTableViewer.setInput(matches);
+    UiUtils.fitTableColumns(wPackageTable, labelProvider, matches, false);
+    updateOkButton();
+  }
+
+  private void updateOkButton()
+  {
+    if (getOkButton() != null) {
+      getOkButton().setEnabled(
+          wPackageTableViewer.getTable().getSelectionCount() > 0);
+    }
+  }
+
+  private static Pattern createPattern(String filter)
+  {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < filter.length(); i++) {
+      char c = filter.charAt(i);
+      if (c == '*') {
+        buf.append(".*");
+      } else if (c == '?') {
+        buf.append('.');
+      } else {
+        buf.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(buf.toString(), Pattern.CASE_INSENSITIVE);
+  }
+
+  // ***************************************************************************
+  // Private classes
+  // ***************************************************************************
+  private class PackageContentProvider implements ILazyContentProvider {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.eclipse.jface.viewers.ILazyContentProvider#updateElement(int)
+     */
+    public void updateElement(int index)
+    {
+      if (index < matches.size()) {
+        wPackageTableViewer.replace(matches.get(index), index);
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+     */
+    public void dispose()
+    {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface
+     * .viewers.Viewer, java.lang.Object, java.lang.Object)
+     */
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput)
+    {
+      List<?> l = (List<?>) newInput;
+      ((TableViewer) viewer).setItemCount(l == null ? 0 : l.size());
+    }
+  }
 }
@@ -81,6 +81,7 @@ import org.eclipse.ui.forms.widgets.Section;
 import org.eclipse.ui.forms.widgets.TableWrapData;
 import org.eclipse.ui.forms.widgets.TableWrapLayout;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.ManifestText;
 import org.knopflerfish.eclipse.core.manifest.ManifestUtil;
 import org.knopflerfish.eclipse.core.preferences.EnvironmentPreference;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
@@ -302,38 +303,38 @@ public class GeneralSection extends SectionPart {
     IDocument doc = ((BundleDocument) getManagedForm().getInput()).getManifestDocument();
     if (manifest == null) return;
     
-    StringBuffer buf = new StringBuffer(doc.get());
-    ManifestUtil.setManifestAttribute(buf, 
+    ManifestText manifestText = new ManifestText(doc.get());
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_SYMBOLIC_NAME, wSymbolicNameText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_VERSION, wVersionText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_NAME, wNameText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_UPDATELOCATION, wUpdateLocationText.getText());
     if ("".equals(wManifestVersionCombo.getText())) {
-      ManifestUtil.removeAttribute(buf, BundleManifest.BUNDLE_MANIFESTVERSION);
+      manifestText.removeAttribute(BundleManifest.BUNDLE_MANIFESTVERSION);
     } else {
-      ManifestUtil.setManifestAttribute(buf,
+      manifestText.setAttribute(
           BundleManifest.BUNDLE_MANIFESTVERSION, wManifestVersionCombo.getText());
     }
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_ACTIVATOR, wActivatorText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_DESCRIPTION, wDescriptionText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_DOCURL, wDocUrlText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_VENDOR, wVendorText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_CONTACT, wContactText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_COPYRIGHT, wCopyrightText.getText());
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_CATEGORY, manifest.getAttribute(BundleManifest.BUNDLE_CATEGORY));
-    ManifestUtil.setManifestAttribute(buf, 
+    manifestText.setAttribute(
         BundleManifest.BUNDLE_EXEC_ENV, manifest.getAttribute(BundleManifest.BUNDLE_EXEC_ENV));
-    doc.set(buf.toString());
+    doc.set(manifestText.getText());
     
     super.commit(onSave);
   }
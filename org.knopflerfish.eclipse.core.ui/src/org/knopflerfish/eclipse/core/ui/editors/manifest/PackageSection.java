@@ -75,6 +75,7 @@ import org.eclipse.ui.forms.widgets.TableWrapData;
 import org.eclipse.ui.forms.widgets.TableWrapLayout;
 import org.knopflerfish.eclipse.core.VersionRange;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.ManifestText;
 import org.knopflerfish.eclipse.core.manifest.ManifestUtil;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.pkg.PackageUtil;
@@ -182,15 +183,15 @@ public class PackageSection extends SectionPart {
     if (manifest == null)
       return;
 
-    StringBuffer buf = new StringBuffer(doc.get());
-    ManifestUtil.setManifestAttribute(buf, BundleManifest.EXPORT_PACKAGE,
+    ManifestText manifestText = new ManifestText(doc.get());
+    manifestText.setAttribute(BundleManifest.EXPORT_PACKAGE,
         manifest.getAttribute(BundleManifest.EXPORT_PACKAGE));
-    ManifestUtil.setManifestAttribute(buf, BundleManifest.IMPORT_PACKAGE,
+    manifestText.setAttribute(BundleManifest.IMPORT_PACKAGE,
         manifest.getAttribute(BundleManifest.IMPORT_PACKAGE));
-    ManifestUtil.setManifestAttribute(buf,
+    manifestText.setAttribute(
         BundleManifest.DYNAMIC_IMPORT_PACKAGE,
         manifest.getAttribute(BundleManifest.DYNAMIC_IMPORT_PACKAGE));
-    doc.set(buf.toString());
+    doc.set(manifestText.getText());
 
     bundleDocument.setImportPackageModel(importPackageModel);
 
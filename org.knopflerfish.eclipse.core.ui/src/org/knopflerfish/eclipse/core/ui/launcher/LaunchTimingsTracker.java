@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.ui.launcher;
+
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.model.IProcess;
+import org.eclipse.debug.core.model.IStreamMonitor;
+import org.eclipse.debug.ui.IDebugUIConstants;
+import org.eclipse.debug.ui.console.IConsole;
+import org.eclipse.debug.ui.console.IConsoleLineTracker;
+import org.eclipse.jface.text.IRegion;
+import org.knopflerfish.eclipse.core.launcher.IOsgiLaunchConfigurationConstants;
+
+/**
+ * Shows the launch preparation timings recorded by the OSGi launch delegate
+ * first in the console of the launched framework.
+ * 
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class LaunchTimingsTracker implements IConsoleLineTracker
+{
+
+  // ***************************************************************************
+  // org.eclipse.debug.ui.console.IConsoleLineTracker Methods
+  // ***************************************************************************
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.eclipse.debug.ui.console.IConsoleLineTracker#init(org.eclipse.debug
+   * .ui.console.IConsole)
+   */
+  public void init(IConsole console)
+  {
+    IProcess process = console.getProcess();
+    ILaunch launch = process == null ? null : process.getLaunch();
+    if (launch == null) {
+      return;
+    }
+    String timings = launch
+        .getAttribute(IOsgiLaunchConfigurationConstants.ATTR_LAUNCH_TIMINGS);
+    if (timings != null) {
+      console.connect(new TextStreamMonitor(timings),
+          IDebugUIConstants.ID_STANDARD_OUTPUT_STREAM);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.eclipse.debug.ui.console.IConsoleLineTracker#lineAppended(org.eclipse
+   * .jface.text.IRegion)
+   */
+  public void lineAppended(IRegion line)
+  {
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.eclipse.debug.ui.console.IConsoleLineTracker#dispose()
+   */
+  public void dispose()
+  {
+  }
+
+  // ***************************************************************************
+  // Private classes
+  // ***************************************************************************
+  /**
+   * Stream monitor with fixed contents.
+   */
+  private static class TextStreamMonitor implements IStreamMonitor
+  {
+    private final String text;
+
+    TextStreamMonitor(String text)
+    {
+      this.text = text;
+    }
+
+    public void addListener(IStreamListener listener)
+    {
+    }
+
+    public String getContents()
+    {
+      return text;
+    }
+
+    public void removeListener(IStreamListener listener)
+    {
+    }
+  }
+}
@@ -35,6 +35,11 @@
 package org.knopflerfish.eclipse.core.ui.launcher.bundle;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
 
 import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.knopflerfish.eclipse.core.IBundleRepositoryType;
@@ -45,13 +50,26 @@ import org.knopflerfish.eclipse.core.preferences.RepositoryPreference;
 import org.osgi.framework.Version;
 
 /**
+ * Repository in the available bundles tree.
+ * <p>
+ * The bundles of the repository are not read until they are needed, e.g.
+ * when the repository is expanded in the tree. The tree reads them in a
+ * background job, see {@link #load(IProgressMonitor)}. Read bundles are
+ * cached between dialog openings until the repository preferences are
+ * changed.
+ * </p>
+ * 
  * @author Anders Rimn, Makewave
  * @see http://www.makewave.com/
  */
 public class AvailableElementRepository implements IAvailableTreeElement {
 
+  // Repository type and configuration -> bundles
+  private static final Map<String, IOsgiBundle[]> cache = new HashMap<String, IOsgiBundle[]>();
+
   private final IAvailableTreeElement parent;
-  private final ArrayList<AvailableElementBundle> children = new ArrayList<AvailableElementBundle>();
+  // Null until bundles are loaded
+  private List<AvailableElementBundle> children = null;
   private final RepositoryPreference repositoryPref;
 
   AvailableElementRepository(IAvailableTreeElement parent, RepositoryPreference repositoryPref) {
@@ -59,25 +77,70 @@ public class AvailableElementRepository implements IAvailableTreeElement {
     this.repositoryPref = repositoryPref;
 
     if (!repositoryPref.isActive()) {
+      setBundles(new IOsgiBundle[0]);
       return;
     }
     
-    // Add repository bundles
+    // Use bundles read when dialog was opened earlier
+    IOsgiBundle[] bundles;
+    synchronized (cache) {
+      bundles = cache.get(getCacheKey());
+    }
+    if (bundles != null) {
+      setBundles(bundles);
+    }
+  }
+  
+  /**
+   * Clears bundles cached between dialog openings. Shall be called when the
+   * repository preferences have changed.
+   */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+  
+  /**
+   * Returns true if the bundles of this repository have been loaded.
+   * 
+   * @return true if loaded
+   */
+  public synchronized boolean isLoaded() {
+    return children != null;
+  }
+  
+  /**
+   * Loads the bundles of this repository if not already loaded. May be
+   * called from any thread.
+   * 
+   * @param monitor progress monitor, may be null
+   */
+  public void load(IProgressMonitor monitor) {
+    if (isLoaded()) {
+      return;
+    }
+
+    IOsgiBundle[] bundles = null;
     IBundleRepositoryType repositoryType = 
       Osgi.getBundleRepositoryType(repositoryPref.getType());
-    if (repositoryType == null) return;
-    
-    IBundleRepository repository = 
-      repositoryType.createRepository(repositoryPref.getConfig());
-    if (repository == null) return;
-    
-    
-    IOsgiBundle[] bundles = repository.getBundles();
-    if (bundles != null) {
-      for(int i=0; i<bundles.length; i++) {
-        children.add(new AvailableElementBundle(this, bundles[i]));
+    if (repositoryType != null) {
+      IBundleRepository repository = 
+        repositoryType.createRepository(repositoryPref.getConfig());
+      if (repository != null) {
+        bundles = repository.getBundles();
       }
     }
+    if (bundles == null) {
+      bundles = new IOsgiBundle[0];
+    }
+    
+    synchronized (cache) {
+      cache.put(getCacheKey(), bundles);
+    }
+    if (monitor == null || !monitor.isCanceled()) {
+      setBundles(bundles);
+    }
   }
   
   public RepositoryPreference getRepositoryPreference() {
@@ -88,7 +151,7 @@ public class AvailableElementRepository implements IAvailableTreeElement {
     if (location.startsWith("file:")) {
       location = location.substring(5);
     }
-    for(AvailableElementBundle e : children) {
+    for(AvailableElementBundle e : getBundleElements()) {
       IOsgiBundle b = e.getBundle();
       if (b.getPath().equals(location)) {
         return e;
@@ -98,7 +161,7 @@ public class AvailableElementRepository implements IAvailableTreeElement {
   }
   
   public AvailableElementBundle findBundle(String filename) {
-    for(AvailableElementBundle e : children) {
+    for(AvailableElementBundle e : getBundleElements()) {
       IOsgiBundle b = e.getBundle();
       if (b.getName().equals(filename)) {
         return e;
@@ -124,7 +187,8 @@ public class AvailableElementRepository implements IAvailableTreeElement {
    * @see org.knopflerfish.eclipse.core.ui.launcher.IAvailableTreeElement#getChildren()
    */
   public IAvailableTreeElement[] getChildren() {
-    return children.toArray(new IAvailableTreeElement[children.size()]);
+    List<AvailableElementBundle> l = getBundleElements();
+    return l.toArray(new IAvailableTreeElement[l.size()]);
   }
   
   /*
@@ -132,7 +196,13 @@ public class AvailableElementRepository implements IAvailableTreeElement {
    * @see org.knopflerfish.eclipse.core.ui.launcher.IAvailableTreeElement#hasChildren()
    */
   public boolean hasChildren() {
-    return (children.size() > 0);
+    synchronized (this) {
+      if (children != null) {
+        return (children.size() > 0);
+      }
+    }
+    // Not loaded yet
+    return true;
   }
   
   /*
@@ -179,6 +249,32 @@ public class AvailableElementRepository implements IAvailableTreeElement {
     return repositoryPref;
   }
 
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private List<AvailableElementBundle> getBundleElements() {
+    // Load in calling thread if not loaded by tree
+    load(null);
+    synchronized (this) {
+      return children;
+    }
+  }
+  
+  private synchronized void setBundles(IOsgiBundle[] bundles) {
+    if (children != null) {
+      return;
+    }
+    List<AvailableElementBundle> l = new ArrayList<AvailableElementBundle>(bundles.length);
+    for(int i=0; i<bundles.length; i++) {
+      l.add(new AvailableElementBundle(this, bundles[i]));
+    }
+    children = l;
+  }
+  
+  private String getCacheKey() {
+    return repositoryPref.getType() + "\n" + repositoryPref.getConfig();
+  }
+
   //***************************************************************************
   // java.lang.Object methods
   //***************************************************************************
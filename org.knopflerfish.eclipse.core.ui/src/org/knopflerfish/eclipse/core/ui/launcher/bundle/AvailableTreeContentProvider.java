@@ -34,19 +34,53 @@
 
 package org.knopflerfish.eclipse.core.ui.launcher.bundle;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.ui.progress.DeferredTreeContentManager;
+import org.eclipse.ui.progress.IDeferredWorkbenchAdapter;
+import org.eclipse.ui.progress.IElementCollector;
 
 /**
+ * Content provider for the available bundles tree.
+ * <p>
+ * If created for a tree viewer the bundles of a repository are read in a
+ * background job when the repository is expanded. A pending node is shown
+ * in the tree until the bundles have been read.
+ * </p>
+ * 
  * @author Anders Rimn, Gatespace Telematics
  * @see http://www.gatespacetelematics.com/
  */
 public class AvailableTreeContentProvider implements ITreeContentProvider {
 
+  private final DeferredTreeContentManager manager;
+  
+  public AvailableTreeContentProvider() {
+    manager = null;
+  }
+  
+  public AvailableTreeContentProvider(AbstractTreeViewer viewer) {
+    manager = new DeferredTreeContentManager(viewer) {
+      protected IDeferredWorkbenchAdapter getAdapter(Object element) {
+        if (isDeferred(element)) {
+          return new DeferredRepositoryAdapter();
+        }
+        return null;
+      }
+    };
+  }
+  
   /* (non-Javadoc)
    * @see org.eclipse.jface.viewers.ITreeContentProvider#getChildren(java.lang.Object)
    */
   public Object[] getChildren(Object parentElement) {
+    if (isDeferred(parentElement)) {
+      return manager.getChildren(parentElement);
+    }
     IAvailableTreeElement abe = (IAvailableTreeElement) parentElement;  
     return abe.getChildren();
   }
@@ -55,6 +89,10 @@ public class AvailableTreeContentProvider implements ITreeContentProvider {
    * @see org.eclipse.jface.viewers.ITreeContentProvider#getParent(java.lang.Object)
    */
   public Object getParent(Object element) {
+    if (!(element instanceof IAvailableTreeElement)) {
+      // Pending node
+      return null;
+    }
     IAvailableTreeElement abe = (IAvailableTreeElement) element;  
     return abe.getParent();
   }
@@ -63,6 +101,10 @@ public class AvailableTreeContentProvider implements ITreeContentProvider {
    * @see org.eclipse.jface.viewers.ITreeContentProvider#hasChildren(java.lang.Object)
    */
   public boolean hasChildren(Object element) {
+    if (!(element instanceof IAvailableTreeElement)) {
+      // Pending node
+      return false;
+    }
     IAvailableTreeElement abe = (IAvailableTreeElement) element;  
     return abe.hasChildren();
   }
@@ -79,12 +121,86 @@ public class AvailableTreeContentProvider implements ITreeContentProvider {
    * @see org.eclipse.jface.viewers.IContentProvider#dispose()
    */
   public void dispose() {
+    if (manager != null) {
+      manager.cancel(null);
+    }
   }
 
   /* (non-Javadoc)
    * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
    */
   public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+    if (manager != null && oldInput != null) {
+      manager.cancel(oldInput);
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private boolean isDeferred(Object element) {
+    return manager != null && element instanceof AvailableElementRepository
+        && !((AvailableElementRepository) element).isLoaded();
+  }
+  
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class DeferredRepositoryAdapter implements IDeferredWorkbenchAdapter {
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.progress.IDeferredWorkbenchAdapter#fetchDeferredChildren(java.lang.Object, org.eclipse.ui.progress.IElementCollector, org.eclipse.core.runtime.IProgressMonitor)
+     */
+    public void fetchDeferredChildren(Object object, IElementCollector collector, IProgressMonitor monitor) {
+      AvailableElementRepository repository = (AvailableElementRepository) object;
+      repository.load(monitor);
+      if (!monitor.isCanceled()) {
+        collector.add(repository.getChildren(), monitor);
+      }
+      collector.done();
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.progress.IDeferredWorkbenchAdapter#isContainer()
+     */
+    public boolean isContainer() {
+      return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.progress.IDeferredWorkbenchAdapter#getRule(java.lang.Object)
+     */
+    public ISchedulingRule getRule(Object object) {
+      return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.model.IWorkbenchAdapter#getChildren(java.lang.Object)
+     */
+    public Object[] getChildren(Object o) {
+      return new Object[0];
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.model.IWorkbenchAdapter#getImageDescriptor(java.lang.Object)
+     */
+    public ImageDescriptor getImageDescriptor(Object object) {
+      return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.model.IWorkbenchAdapter#getLabel(java.lang.Object)
+     */
+    public String getLabel(Object o) {
+      return ((AvailableElementRepository) o).getName();
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.ui.model.IWorkbenchAdapter#getParent(java.lang.Object)
+     */
+    public Object getParent(Object o) {
+      return ((AvailableElementRepository) o).getParent();
+    }
   }
 
 }
@@ -36,6 +36,7 @@ package org.knopflerfish.eclipse.core.ui.launcher.bundle;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -45,6 +46,10 @@ import java.util.Map;
 import java.util.TreeSet;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
 import org.eclipse.debug.ui.AbstractLaunchConfigurationTab;
@@ -53,6 +58,9 @@ import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.action.IMenuListener;
 import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.MenuManager;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.CellEditor;
 import org.eclipse.jface.viewers.ComboBoxCellEditor;
@@ -61,7 +69,6 @@ import org.eclipse.jface.viewers.ICellModifier;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
-import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TextCellEditor;
 import org.eclipse.jface.viewers.TreeViewer;
@@ -70,6 +77,7 @@ import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.jface.viewers.ViewerSorter;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
@@ -86,23 +94,17 @@ import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.knopflerfish.eclipse.core.IBundleProject;
-import org.knopflerfish.eclipse.core.IFrameworkDefinition;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
-import org.knopflerfish.eclipse.core.IOsgiLibrary;
 import org.knopflerfish.eclipse.core.IXArgsBundle;
-import org.knopflerfish.eclipse.core.Osgi;
 import org.knopflerfish.eclipse.core.OsgiBundle;
 import org.knopflerfish.eclipse.core.Util;
-import org.knopflerfish.eclipse.core.VersionRange;
 import org.knopflerfish.eclipse.core.launcher.BundleLaunchInfo;
 import org.knopflerfish.eclipse.core.launcher.IOsgiLaunchConfigurationConstants;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
-import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.preferences.FrameworkPreference;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
 import org.knopflerfish.eclipse.core.project.BundleProject;
 import org.knopflerfish.eclipse.core.ui.OsgiUiPlugin;
-import org.knopflerfish.eclipse.core.ui.UiUtils;
 import org.knopflerfish.eclipse.core.ui.dialogs.LibraryDialog;
 import org.knopflerfish.eclipse.core.ui.dialogs.StartLevelDialog;
 import org.knopflerfish.eclipse.core.ui.launcher.main.MainTab;
@@ -143,6 +145,7 @@ public class BundleTab extends AbstractLaunchConfigurationTab
   SelectedBundlesModel         selectedBundlesModel              =
                                                                    new SelectedBundlesModel();
   SelectedBundlesLabelProvider selectedBundlesLabelProvider;
+  private ResolverJob          resolverJob;
   private FrameworkPreference  distribution;
   Map<String, String>          systemProperties;
 
@@ -199,6 +202,9 @@ public class BundleTab extends AbstractLaunchConfigurationTab
    */
   public void dispose()
   {
+    if (resolverJob != null) {
+      resolverJob.cancel();
+    }
     if (imageTab != null) {
       imageTab.dispose();
       imageTab = null;
@@ -241,7 +247,7 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     Tree wAvailableBundleTree =
       new Tree(wPageComposite, SWT.MULTI | SWT.BORDER);
     wAvailableBundleTreeViewer = new TreeViewer(wAvailableBundleTree);
-    wAvailableBundleTreeViewer.setContentProvider(new AvailableTreeContentProvider());
+    wAvailableBundleTreeViewer.setContentProvider(new AvailableTreeContentProvider(wAvailableBundleTreeViewer));
     wAvailableBundleTreeViewer.setLabelProvider(new AvailableBundlesLabelProvider());
     wAvailableBundleTreeViewer.setSorter(new SorterName());
     wAvailableBundleTreeViewer.addFilter(new AvailableTreeFilter());
@@ -256,7 +262,9 @@ public class BundleTab extends AbstractLaunchConfigurationTab
         if (selection != null && !selection.isEmpty()) {
           // Check that bundle or bundle project is selected
           for (Iterator i = selection.iterator(); i.hasNext() && !enable;) {
-            IAvailableTreeElement element = (IAvailableTreeElement) i.next();
+            Object o = i.next();
+            if (!(o instanceof IAvailableTreeElement)) continue;
+            IAvailableTreeElement element = (IAvailableTreeElement) o;
             int type = element.getType();
             enable |=
               type == IAvailableTreeElement.TYPE_BUNDLE
@@ -271,7 +279,8 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     Label wBundleSelectedLabel = new Label(wPageComposite, SWT.LEFT);
     wBundleSelectedLabel.setText("Selected bundles:");
     Table wSelectedBundleTable =
-      new Table(wPageComposite, SWT.MULTI | SWT.FULL_SELECTION | SWT.BORDER);
+      new Table(wPageComposite, SWT.MULTI | SWT.FULL_SELECTION | SWT.BORDER
+          | SWT.VIRTUAL);
     // Pop up menu
     final MenuManager popupMenu = new MenuManager();
     final MenuManager startLevelMenu = new MenuManager("Start Level");
@@ -314,11 +323,14 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     wSelectedBundleTableViewer.setContentProvider(new SelectedBundlesContentProvider());
     selectedBundlesLabelProvider = new SelectedBundlesLabelProvider();
     wSelectedBundleTableViewer.setLabelProvider(selectedBundlesLabelProvider);
-    wSelectedBundleTableViewer.setSorter(new SorterStartLevel());
+    selectedBundlesModel.setComparator(wSelectedBundleTableViewer,
+                                       new StartLevelComparator());
     wSelectedBundleTableViewer.setColumnProperties(new String[]{
       PROP_NAME, PROP_VERSION, PROP_STARTLEVEL, PROP_MODE, PROP_ERROR
     });
     wSelectedBundleTableViewer.setCellModifier(new CellModifier());
+    resolverJob = new ResolverJob(wSelectedBundleTableViewer,
+                                  selectedBundlesModel);
     TextCellEditor startLevelEditor =
       new TextCellEditor(wSelectedBundleTable, SWT.NONE);
     startLevelEditor.setValidator(new StartLevelValidator());
@@ -350,7 +362,8 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     colName.addSelectionListener(new SelectionAdapter() {
       public void widgetSelected(SelectionEvent e)
       {
-        wSelectedBundleTableViewer.setSorter(new SorterName());
+        selectedBundlesModel.setComparator(wSelectedBundleTableViewer,
+                                           new NameComparator());
       }
     });
     TableColumn colVersion = new TableColumn(wSelectedBundleTable, SWT.LEFT);
@@ -360,7 +373,8 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     colLocation.addSelectionListener(new SelectionAdapter() {
       public void widgetSelected(SelectionEvent e)
       {
-        wSelectedBundleTableViewer.setSorter(new SorterStartLevel());
+        selectedBundlesModel.setComparator(wSelectedBundleTableViewer,
+                                           new StartLevelComparator());
       }
     });
     TableColumn colMode = new TableColumn(wSelectedBundleTable, SWT.LEFT);
@@ -378,6 +392,15 @@ public class BundleTab extends AbstractLaunchConfigurationTab
       }
     });
 
+    Button wAddRequiredBundlesButton = new Button(wPageComposite, SWT.CENTER);
+    wAddRequiredBundlesButton.setText("Add required");
+    wAddRequiredBundlesButton.addSelectionListener(new SelectionAdapter() {
+      public void widgetSelected(SelectionEvent e)
+      {
+        addRequiredBundles();
+      }
+    });
+
     Button wAddExternalBundleButton = new Button(wPageComposite, SWT.CENTER);
     wAddExternalBundleButton.setText("Add external...");
     wAddExternalBundleButton.addSelectionListener(new SelectionAdapter() {
@@ -414,9 +437,6 @@ public class BundleTab extends AbstractLaunchConfigurationTab
 
             // Notify that configuration is changed
             updateDialog();
-
-            // Resize columns in selected table
-            UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
           } catch (IOException ioe) {
             ioe.printStackTrace();
           }
@@ -468,6 +488,12 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     data.top = new FormAttachment(wBundleRemoveButton, 5, SWT.BOTTOM);
     wAddExternalBundleButton.setLayoutData(data);
 
+    data = new FormData();
+    data.right = new FormAttachment(100, 0);
+    data.left = new FormAttachment(wAddExternalBundleButton, 0, SWT.LEFT);
+    data.top = new FormAttachment(wAddExternalBundleButton, 5, SWT.BOTTOM);
+    wAddRequiredBundlesButton.setLayoutData(data);
+
   }
 
   /*
@@ -591,7 +617,7 @@ public class BundleTab extends AbstractLaunchConfigurationTab
       updateLaunchConfigurationDialog();
     }
 
-    UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
+    selectedBundlesModel.fitColumns(wSelectedBundleTableViewer);
   }
 
   /*
@@ -691,52 +717,21 @@ public class BundleTab extends AbstractLaunchConfigurationTab
       (IStructuredSelection) wAvailableBundleTreeViewer.getSelection();
     List<SelectedBundleElement> items = new ArrayList<SelectedBundleElement>();
     for (Iterator i = selection.iterator(); i.hasNext();) {
-      IAvailableTreeElement element = (IAvailableTreeElement) i.next();
-
-      SelectedBundleElement selectedElement = null;
-      if (element.getType() == IAvailableTreeElement.TYPE_BUNDLE) {
-        final IOsgiBundle bundle = (IOsgiBundle) element.getData();
-        final BundleLaunchInfo info = new BundleLaunchInfo();
-        
-        // Set start level to initial selected start level
-        info.setStartLevel(startLevel);
-        
-        // Start bundle if bundle activator or service component is specified
-        final BundleManifest bm = bundle.getBundleManifest();
-        if (bm != null) {
-          if (bm.getServiceComponent() != null || bm.getActivator() != null) {
-            info.setMode(BundleLaunchInfo.MODE_START);
-          }
-        }
-        if (bundle.getSource() != null) {
-          info.setSource(bundle.getSource());
-        }
-        selectedElement = new SelectedBundleElement(bundle, info);
-      } else if (element.getType() == IAvailableTreeElement.TYPE_PROJECT) {
-        final IBundleProject project = (IBundleProject) element.getData();
-        final BundleLaunchInfo info = new BundleLaunchInfo();
-
-        // Set start level to initial selected start level
-        info.setStartLevel(startLevel);
-        
-        // Start bundle if bundle activator or service component is specified
-        final BundleManifest bm = project.getBundleManifest();
-        if (bm != null) {
-          if (bm.getServiceComponent() != null || bm.getActivator() != null) {
-            info.setMode(BundleLaunchInfo.MODE_START);
-          }
-        }
-        
-        selectedElement = new SelectedBundleElement(project, info);
-      }
+      Object o = i.next();
+      if (!(o instanceof IAvailableTreeElement)) continue;
+      IAvailableTreeElement element = (IAvailableTreeElement) o;
 
+      // Set start level to initial selected start level
+      SelectedBundleElement selectedElement =
+        createSelectedElement(element, startLevel);
       if (selectedElement != null) {
         selectedBundlesModel.add(wSelectedBundleTableViewer, selectedElement);
         items.add(selectedElement);
       }
     }
 
-    wSelectedBundleTableViewer.setSelection(new StructuredSelection(items));
+    selectedBundlesModel.setSelection(wSelectedBundleTableViewer, items);
+    wBundleRemoveButton.setEnabled(!items.isEmpty());
 
     // Check package dependencies
     updatePackages();
@@ -746,21 +741,53 @@ public class BundleTab extends AbstractLaunchConfigurationTab
 
     // Notify that configuration is changed
     updateLaunchConfigurationDialog();
-
-    // Resize columns in selected table
-    UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
   }
 
-  void unselectBundle()
+  /**
+   * Adds the bundles needed to satisfy the imports of the selected bundles,
+   * transitively, from the available bundles. Repositories not yet loaded
+   * are loaded first, in a progress dialog. Bundles deeper down in the
+   * dependency chain get lower start levels.
+   */
+  void addRequiredBundles()
   {
-    IStructuredSelection selection =
-      (IStructuredSelection) wSelectedBundleTableViewer.getSelection();
+    if (distribution == null) return;
 
-    for (Iterator<SelectedBundleElement> i = selection.iterator(); i.hasNext();) {
-      SelectedBundleElement element = i.next();
-      selectedBundlesModel.remove(wSelectedBundleTableViewer, element);
+    boolean complete = loadRepositories();
+    final List<DependencyClosure.Required> required =
+      new ArrayList<DependencyClosure.Required>();
+    BusyIndicator.showWhile(wPageComposite.getDisplay(), new Runnable() {
+      public void run()
+      {
+        DependencyClosure closure =
+          new DependencyClosure((AvailableElementRoot) wAvailableBundleTreeViewer.getInput());
+        closure.addProvided(ResolverJob.getFrameworkPackages(distribution,
+                                                             systemProperties));
+        required.addAll(closure.resolve(selectedBundlesModel.getElements()));
+      }
+    });
+
+    List<SelectedBundleElement> items = new ArrayList<SelectedBundleElement>();
+    for (DependencyClosure.Required r : required) {
+      SelectedBundleElement selectedElement =
+        createSelectedElement(r.element, Math.max(1, startLevel - r.depth));
+      if (selectedElement != null) {
+        selectedBundlesModel.add(wSelectedBundleTableViewer, selectedElement);
+        items.add(selectedElement);
+      }
+    }
+    if (!complete) {
+      MessageDialog.openInformation(getShell(), "Add Required Bundles",
+          "Loading of bundle repositories was canceled. Bundles in repositories " +
+          "that were not loaded have not been added.");
+    }
+    if (items.isEmpty()) {
+      return;
     }
 
+    selectedBundlesModel.setSelection(wSelectedBundleTableViewer, items);
+    wBundleRemoveButton.setEnabled(!items.isEmpty());
+
     // Check package dependencies
     updatePackages();
 
@@ -769,103 +796,128 @@ public class BundleTab extends AbstractLaunchConfigurationTab
 
     // Notify that configuration is changed
     updateLaunchConfigurationDialog();
-
-    // Resize columns in selected table
-    UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
   }
 
-  public void updatePackages()
+  /**
+   * Loads the repositories in the available bundle tree that have not been
+   * loaded yet. The user may cancel loading.
+   * 
+   * @return true if all repositories are loaded
+   */
+  private boolean loadRepositories()
   {
-    Map<String, List<PackageDescription>> exportedPackages =
-      new HashMap<String, List<PackageDescription>>();
-
-    // Get exported packages by runtime
-    if (distribution == null) return;
-    IFrameworkDefinition framework =
-      Osgi.getFrameworkDefinition(distribution.getType());
-    IOsgiLibrary[] libraries = distribution.getRuntimeLibraries();
-    PackageDescription[] frameworkPackages =
-      framework.getExportedPackages(libraries);
-    if (frameworkPackages != null) {
-      for (int j = 0; j < frameworkPackages.length; j++) {
-        List<PackageDescription> descriptions =
-          exportedPackages.get(frameworkPackages[j].getPackageName());
-        if (descriptions == null) {
-          descriptions = new ArrayList<PackageDescription>();
-        }
-        descriptions.add(frameworkPackages[j]);
-        exportedPackages.put(frameworkPackages[j].getPackageName(),
-                             descriptions);
+    AvailableElementRoot root = (AvailableElementRoot) wAvailableBundleTreeViewer.getInput();
+    final List<AvailableElementRepository> unloaded = new ArrayList<AvailableElementRepository>();
+    IAvailableTreeElement[] children = root.getChildren();
+    for (int i = 0; i < children.length; i++) {
+      if (children[i] instanceof AvailableElementRepository
+          && !((AvailableElementRepository) children[i]).isLoaded()) {
+        unloaded.add((AvailableElementRepository) children[i]);
       }
     }
-
-    // Get system packages exports by runtime
-    PackageDescription[] systemPackages =
-      framework.getSystemPackages(new File(distribution.getLocation()),
-                                  systemProperties);
-    if (systemPackages != null) {
-      for (int j = 0; j < systemPackages.length; j++) {
-        List<PackageDescription> descriptions =
-          exportedPackages.get(systemPackages[j].getPackageName());
-        if (descriptions == null) {
-          descriptions = new ArrayList<PackageDescription>();
+    if (unloaded.isEmpty()) {
+      return true;
+    }
+    
+    try {
+      new ProgressMonitorDialog(getShell()).run(true, true, new IRunnableWithProgress() {
+        public void run(IProgressMonitor monitor)
+        {
+          SubMonitor progress = SubMonitor.convert(monitor, 
+              "Loading bundle repositories", unloaded.size());
+          for (AvailableElementRepository repository : unloaded) {
+            progress.subTask(repository.getName());
+            repository.load(progress.split(1));
+          }
         }
-        descriptions.add(systemPackages[j]);
-        exportedPackages.put(systemPackages[j].getPackageName(), descriptions);
+      });
+    } catch (InvocationTargetException e) {
+      OsgiUiPlugin.log(new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", 
+          IStatus.OK, "Failed to load bundle repositories", e.getTargetException()));
+    } catch (InterruptedException e) {
+      // Canceled, repositories not loaded are skipped
+    }
+    
+    // Show loaded bundles in available bundle tree
+    wAvailableBundleTreeViewer.refresh();
+    
+    for (AvailableElementRepository repository : unloaded) {
+      if (!repository.isLoaded()) {
+        return false;
       }
     }
-
-    // Loop through elements and find exported packages
-    SelectedBundleElement[] elements = selectedBundlesModel.getElements();
-    for (int i = 0; i < elements.length; i++) {
-      PackageDescription[] packages = elements[i].getExportedPackages();
-      if (packages != null) {
-        for (int j = 0; j < packages.length; j++) {
-          List<PackageDescription> descriptions =
-            exportedPackages.get(packages[j].getPackageName());
-          if (descriptions == null) {
-            descriptions = new ArrayList<PackageDescription>();
-          }
-          descriptions.add(packages[j]);
-          exportedPackages.put(packages[j].getPackageName(), descriptions);
+    return true;
+  }
+  
+  private SelectedBundleElement createSelectedElement(IAvailableTreeElement element,
+                                                      int level)
+  {
+    SelectedBundleElement selectedElement = null;
+    if (element.getType() == IAvailableTreeElement.TYPE_BUNDLE) {
+      final IOsgiBundle bundle = (IOsgiBundle) element.getData();
+      final BundleLaunchInfo info = new BundleLaunchInfo();
+      info.setStartLevel(level);
+      
+      // Start bundle if bundle activator or service component is specified
+      final BundleManifest bm = bundle.getBundleManifest();
+      if (bm != null) {
+        if (bm.getServiceComponent() != null || bm.getActivator() != null) {
+          info.setMode(BundleLaunchInfo.MODE_START);
+        }
+      }
+      if (bundle.getSource() != null) {
+        info.setSource(bundle.getSource());
+      }
+      selectedElement = new SelectedBundleElement(bundle, info);
+    } else if (element.getType() == IAvailableTreeElement.TYPE_PROJECT) {
+      final IBundleProject project = (IBundleProject) element.getData();
+      final BundleLaunchInfo info = new BundleLaunchInfo();
+      info.setStartLevel(level);
+      
+      // Start bundle if bundle activator or service component is specified
+      final BundleManifest bm = project.getBundleManifest();
+      if (bm != null) {
+        if (bm.getServiceComponent() != null || bm.getActivator() != null) {
+          info.setMode(BundleLaunchInfo.MODE_START);
         }
       }
+      
+      selectedElement = new SelectedBundleElement(project, info);
     }
+    return selectedElement;
+  }
 
-    // Loop through elements and update import packages
-    TableItem[] items = wSelectedBundleTableViewer.getTable().getItems();
-    for (int i = 0; i < items.length; i++) {
-      Object data = items[i].getData();
-      if (data != null && data instanceof SelectedBundleElement) {
-        SelectedBundleElement element = (SelectedBundleElement) data;
-        PackageDescription[] packages = element.getImportedPackages();
-        List<PackageDescription> missingPackages =
-          new ArrayList<PackageDescription>();
-        if (packages != null) {
-          for (int j = 0; j < packages.length; j++) {
-            List<PackageDescription> descriptions =
-              exportedPackages.get(packages[j].getPackageName());
-            VersionRange versionRange = packages[j].getVersionRange();
-            boolean versionExist = false;
-            if (descriptions != null) {
-              // Check version
-              for (PackageDescription pd : descriptions) {
-                if (versionRange.contains(pd.getVersion())) {
-                  versionExist = true;
-                  break;
-                }
-              }
-            }
-            if (!versionExist) {
-              missingPackages.add(packages[j]);
-            }
-          }
-        }
+  void unselectBundle()
+  {
+    IStructuredSelection selection =
+      (IStructuredSelection) wSelectedBundleTableViewer.getSelection();
 
-        element.setMissingPackages(missingPackages);
-        wSelectedBundleTableViewer.update(element, null);
-      }
+    for (Iterator<SelectedBundleElement> i = selection.iterator(); i.hasNext();) {
+      SelectedBundleElement element = i.next();
+      selectedBundlesModel.remove(wSelectedBundleTableViewer, element);
     }
+    wBundleRemoveButton.setEnabled(false);
+
+    // Check package dependencies
+    updatePackages();
+
+    // Refilter available bundle tree
+    wAvailableBundleTreeViewer.refresh();
+
+    // Notify that configuration is changed
+    updateLaunchConfigurationDialog();
+  }
+
+  /**
+   * Checks the package dependencies of the selected bundles. The bundles are
+   * resolved in the background and rows with changed problems are updated
+   * when done.
+   */
+  public void updatePackages()
+  {
+    if (distribution == null) return;
+    resolverJob.resolve(distribution, systemProperties, selectedBundlesModel
+        .getElements());
   }
 
   protected void updateDialog()
@@ -922,14 +974,13 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     wAvailableBundleTreeViewer.refresh();
 
     // Resize columns in selected table
-    UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
+    selectedBundlesModel.fitColumns(wSelectedBundleTableViewer);
   }
   
   public void setInitialStartLevel(int startLevel) {
     this.startLevel = startLevel;
     selectedBundlesLabelProvider.setInitialStartLevel(startLevel);
-    wSelectedBundleTableViewer.refresh();
-    UiUtils.packTableColumns(wSelectedBundleTableViewer.getTable());
+    selectedBundlesModel.refresh(wSelectedBundleTableViewer);
   }
 
   // ***************************************************************************
@@ -1081,12 +1132,8 @@ public class BundleTab extends AbstractLaunchConfigurationTab
 
       String n1 = null;
       String n2 = null;
-      if (o1 instanceof SelectedBundleElement) {
-        SelectedBundleElement e1 = (SelectedBundleElement) o1;
-        SelectedBundleElement e2 = (SelectedBundleElement) o2;
-        n1 = e1.getName();
-        n2 = e2.getName();
-      } else if (o1 instanceof IAvailableTreeElement) {
+      if (o1 instanceof IAvailableTreeElement
+          && o2 instanceof IAvailableTreeElement) {
         IAvailableTreeElement e1 = (IAvailableTreeElement) o1;
         IAvailableTreeElement e2 = (IAvailableTreeElement) o2;
         n1 = e1.getName();
@@ -1125,25 +1172,16 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     }
   }
 
-  class SorterStartLevel extends ViewerSorter
+  class NameComparator implements Comparator<SelectedBundleElement>
   {
 
     /*
      * (non-Javadoc)
      * 
-     * @see
-     * org.eclipse.jface.viewers.ViewerSorter#compare(org.eclipse.jface.viewers
-     * .Viewer, java.lang.Object, java.lang.Object)
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
      */
-    public int compare(Viewer viewer, Object o1, Object o2)
+    public int compare(SelectedBundleElement e1, SelectedBundleElement e2)
     {
-      SelectedBundleElement e1 = (SelectedBundleElement) o1;
-      SelectedBundleElement e2 = (SelectedBundleElement) o2;
-      int sl =
-        e1.getLaunchInfo().getStartLevel() - e2.getLaunchInfo().getStartLevel();
-      if (sl != 0) {
-        return sl;
-      }
       String n1 = e1.getName();
       String n2 = e2.getName();
       if (n1 == null) n1 = "";
@@ -1152,6 +1190,25 @@ public class BundleTab extends AbstractLaunchConfigurationTab
     }
   }
 
+  class StartLevelComparator extends NameComparator
+  {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+     */
+    public int compare(SelectedBundleElement e1, SelectedBundleElement e2)
+    {
+      int sl =
+        e1.getLaunchInfo().getStartLevel() - e2.getLaunchInfo().getStartLevel();
+      if (sl != 0) {
+        return sl;
+      }
+      return super.compare(e1, e2);
+    }
+  }
+
   class StartLevelAction extends Action
   {
 
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.ui.launcher.bundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.knopflerfish.eclipse.core.IBundleProject;
+import org.knopflerfish.eclipse.core.IOsgiBundle;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.osgi.framework.Version;
+
+/**
+ * Computes the bundles needed to satisfy the package imports of the
+ * selected bundles, transitively.
+ * <p>
+ * All bundles in the loaded repositories and all workspace bundle projects
+ * are indexed on exported package name once, with the exports of each
+ * package sorted on descending version. An import is then satisfied by the
+ * first export within the import range, i.e. the highest compatible
+ * version, without looking at any other package.
+ * </p>
+ * <p>
+ * Imports already satisfied by the framework, the system packages or the
+ * selected bundles are not looked up. Optional imports are ignored.
+ * </p>
+ * 
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class DependencyClosure
+{
+  // Package name -> exports sorted on descending version
+  private final Map<String, List<Candidate>> index = new HashMap<String, List<Candidate>>();
+  // Package name -> provided versions
+  private final Map<String, List<Version>> provided = new HashMap<String, List<Version>>();
+  private final Set<String> selectedPaths = new HashSet<String>();
+
+  /**
+   * Creates a closure over the available bundles in the given tree.
+   * Repositories shall have been loaded by the caller, outside the UI
+   * thread; any repository still not loaded, e.g. because loading was
+   * canceled, is skipped.
+   * 
+   * @param root available bundles
+   */
+  DependencyClosure(AvailableElementRoot root)
+  {
+    IAvailableTreeElement[] children = root.getChildren();
+    for (int i = 0; i < children.length; i++) {
+      if (children[i] instanceof AvailableElementRepository
+          && !((AvailableElementRepository) children[i]).isLoaded()) {
+        continue;
+      }
+      IAvailableTreeElement[] elements = children[i].getChildren();
+      for (int j = 0; j < elements.length; j++) {
+        addCandidate(elements[j]);
+      }
+    }
+
+    Comparator<Candidate> comparator = new Comparator<Candidate>() {
+      public int compare(Candidate c1, Candidate c2)
+      {
+        return c2.pd.getVersion().compareTo(c1.pd.getVersion());
+      }
+    };
+    for (List<Candidate> l : index.values()) {
+      // Stable sort, keeps tree order for equal versions
+      Collections.sort(l, comparator);
+    }
+  }
+
+  /**
+   * Adds packages provided by the framework, e.g. system packages.
+   * 
+   * @param packages exported packages, may be null
+   */
+  void addProvided(PackageDescription[] packages)
+  {
+    if (packages == null) {
+      return;
+    }
+    for (int i = 0; i < packages.length; i++) {
+      addProvided(packages[i]);
+    }
+  }
+
+  /**
+   * Returns the bundles needed to satisfy the imports of the selected
+   * bundles, in the order they were found.
+   * 
+   * @param selected selected bundles
+   * @return list of required bundles with dependency depth
+   */
+  List<Required> resolve(SelectedBundleElement[] selected)
+  {
+    // Breadth first, so the depth is the shortest dependency chain from a
+    // selected bundle
+    LinkedList<Node> queue = new LinkedList<Node>();
+    for (int i = 0; i < selected.length; i++) {
+      selectedPaths.add(selected[i].getPath());
+      BundleManifest manifest = selected[i].getBundleManifest();
+      addProvided(manifest);
+      queue.add(new Node(manifest, 0));
+    }
+
+    List<Required> required = new ArrayList<Required>();
+    while (!queue.isEmpty()) {
+      Node node = queue.removeFirst();
+      if (node.manifest == null) {
+        continue;
+      }
+      PackageDescription[] imports = node.manifest.getImportedPackages();
+      for (int i = 0; i < imports.length; i++) {
+        PackageDescription pd = imports[i];
+        if (pd.isOptional() || isProvided(pd)) {
+          continue;
+        }
+        Candidate c = findCandidate(pd);
+        if (c == null) {
+          // Missing, shown as error when resolved
+          continue;
+        }
+        selectedPaths.add(c.element.getPath());
+        addProvided(c.manifest);
+        required.add(new Required(c.element, node.depth + 1));
+        queue.add(new Node(c.manifest, node.depth + 1));
+      }
+    }
+    return required;
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void addCandidate(IAvailableTreeElement element)
+  {
+    BundleManifest manifest = null;
+    if (element.getType() == IAvailableTreeElement.TYPE_BUNDLE) {
+      manifest = ((IOsgiBundle) element.getData()).getBundleManifest();
+    } else if (element.getType() == IAvailableTreeElement.TYPE_PROJECT) {
+      manifest = ((IBundleProject) element.getData()).getBundleManifest();
+    }
+    if (manifest == null) {
+      return;
+    }
+
+    PackageDescription[] exports = manifest.getExportedPackages();
+    for (int i = 0; i < exports.length; i++) {
+      String name = exports[i].getPackageName();
+      List<Candidate> l = index.get(name);
+      if (l == null) {
+        l = new ArrayList<Candidate>(1);
+        index.put(name, l);
+      }
+      l.add(new Candidate(element, manifest, exports[i]));
+    }
+  }
+
+  private Candidate findCandidate(PackageDescription pd)
+  {
+    List<Candidate> l = index.get(pd.getPackageName());
+    if (l == null) {
+      return null;
+    }
+    for (Candidate c : l) {
+      if (pd.getVersionRange().contains(c.pd.getVersion())
+          && !selectedPaths.contains(c.element.getPath())) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  private void addProvided(BundleManifest manifest)
+  {
+    if (manifest == null) {
+      return;
+    }
+    PackageDescription[] exports = manifest.getExportedPackages();
+    for (int i = 0; i < exports.length; i++) {
+      addProvided(exports[i]);
+    }
+  }
+
+  private void addProvided(PackageDescription pd)
+  {
+    List<Version> l = provided.get(pd.getPackageName());
+    if (l == null) {
+      l = new ArrayList<Version>(1);
+      provided.put(pd.getPackageName(), l);
+    }
+    l.add(pd.getVersion());
+  }
+
+  private boolean isProvided(PackageDescription pd)
+  {
+    List<Version> l = provided.get(pd.getPackageName());
+    if (l != null) {
+      for (Version v : l) {
+        if (pd.getVersionRange().contains(v)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  //***************************************************************************
+  // Inner classes
+  //***************************************************************************
+  /**
+   * A bundle required by the selected bundles.
+   */
+  static class Required
+  {
+    final IAvailableTreeElement element;
+    // Length of shortest dependency chain from a selected bundle
+    final int                   depth;
+
+    Required(IAvailableTreeElement element, int depth)
+    {
+      this.element = element;
+      this.depth = depth;
+    }
+  }
+
+  private static class Candidate
+  {
+    final IAvailableTreeElement element;
+    final BundleManifest        manifest;
+    final PackageDescription    pd;
+
+    Candidate(IAvailableTreeElement element,
+              BundleManifest manifest,
+              PackageDescription pd)
+    {
+      this.element = element;
+      this.manifest = manifest;
+      this.pd = pd;
+    }
+  }
+
+  private static class Node
+  {
+    final BundleManifest manifest;
+    final int            depth;
+
+    Node(BundleManifest manifest, int depth)
+    {
+      this.manifest = manifest;
+      this.depth = depth;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.ui.launcher.bundle;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.widgets.Display;
+import org.knopflerfish.eclipse.core.IFrameworkDefinition;
+import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.preferences.FrameworkPreference;
+
+/**
+ * Job resolving the selected bundles of the bundle tab in the background.
+ * <p>
+ * All requests made before the job runs are coalesced into one run. When
+ * the job has run, only the table rows whose problems have changed are
+ * updated.
+ * </p>
+ * 
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class ResolverJob extends Job
+{
+  // Delay before a requested resolve is run
+  private static final long DELAY = 100;
+
+  private final TableViewer viewer;
+  private final SelectedBundlesModel model;
+  private final Display display;
+  private final WiringResolver resolver = new WiringResolver();
+
+  // Pending request
+  private FrameworkPreference distribution;
+  private Map<String, String> systemProperties;
+  private SelectedBundleElement[] elements;
+
+  // Framework packages used in last run
+  private FrameworkPreference resolvedDistribution;
+  private Map<String, String> resolvedSystemProperties;
+
+  /**
+   * Creates a job updating the given table. Must be called from the UI
+   * thread.
+   * 
+   * @param viewer selected bundles table
+   * @param model model of selected bundles table
+   */
+  ResolverJob(TableViewer viewer, SelectedBundlesModel model)
+  {
+    super("Resolve selected bundles");
+    this.viewer = viewer;
+    this.model = model;
+    this.display = viewer.getControl().getDisplay();
+    setSystem(true);
+    setPriority(Job.SHORT);
+  }
+
+  /**
+   * Requests the given bundles to be resolved.
+   * 
+   * @param distribution framework distribution
+   * @param systemProperties system properties, may be null
+   * @param elements selected bundles
+   */
+  synchronized void resolve(FrameworkPreference distribution,
+                            Map<String, String> systemProperties,
+                            SelectedBundleElement[] elements)
+  {
+    this.distribution = distribution;
+    this.systemProperties = systemProperties == null ? null
+        : new HashMap<String, String>(systemProperties);
+    this.elements = elements;
+    // Merged with the job if it is waiting, rerun when done if it is running
+    schedule(DELAY);
+  }
+
+  //***************************************************************************
+  // org.eclipse.core.runtime.jobs.Job methods
+  //***************************************************************************
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor
+   * )
+   */
+  protected IStatus run(IProgressMonitor monitor)
+  {
+    FrameworkPreference distribution;
+    Map<String, String> systemProperties;
+    SelectedBundleElement[] elements;
+    synchronized (this) {
+      distribution = this.distribution;
+      systemProperties = this.systemProperties;
+      elements = this.elements;
+      this.elements = null;
+    }
+    if (elements == null || distribution == null) {
+      return Status.OK_STATUS;
+    }
+
+    // Framework and system packages are only read again if the framework
+    // or system properties have changed
+    if (distribution != resolvedDistribution
+        || !equals(systemProperties, resolvedSystemProperties)) {
+      resolver.setFrameworkPackages(getFrameworkPackages(distribution,
+          systemProperties));
+      resolvedDistribution = distribution;
+      resolvedSystemProperties = systemProperties;
+    }
+    resolver.update(elements);
+    final Map<SelectedBundleElement, WiringResolver.Problems> changed = resolver
+        .resolve();
+    if (changed.isEmpty() || monitor.isCanceled()) {
+      return Status.OK_STATUS;
+    }
+
+    // Update changed rows
+    display.asyncExec(new Runnable() {
+      public void run()
+      {
+        if (viewer.getControl().isDisposed()) {
+          return;
+        }
+        for (Map.Entry<SelectedBundleElement, WiringResolver.Problems> entry : changed
+            .entrySet()) {
+          SelectedBundleElement element = entry.getKey();
+          WiringResolver.Problems problems = entry.getValue();
+          element.setMissingPackages(Arrays.asList(problems.missingPackages));
+          element.setConflicts(problems.conflicts);
+          model.updateRow(viewer, element);
+        }
+      }
+    });
+    return Status.OK_STATUS;
+  }
+
+  //***************************************************************************
+  // Utility methods
+  //***************************************************************************
+  /**
+   * Returns the packages exported by the framework and the system bundle.
+   * 
+   * @param distribution framework distribution
+   * @param systemProperties system properties, may be null
+   * @return array of exported packages
+   */
+  static PackageDescription[] getFrameworkPackages(FrameworkPreference distribution,
+                                                   Map<String, String> systemProperties)
+  {
+    List<PackageDescription> packages = new ArrayList<PackageDescription>();
+    IFrameworkDefinition framework = Osgi.getFrameworkDefinition(distribution
+        .getType());
+
+    // Exported packages by runtime
+    PackageDescription[] frameworkPackages = framework
+        .getExportedPackages(distribution.getRuntimeLibraries());
+    if (frameworkPackages != null) {
+      packages.addAll(Arrays.asList(frameworkPackages));
+    }
+
+    // System packages exported by runtime
+    PackageDescription[] systemPackages = framework.getSystemPackages(
+        new File(distribution.getLocation()), systemProperties);
+    if (systemPackages != null) {
+      packages.addAll(Arrays.asList(systemPackages));
+    }
+    return packages.toArray(new PackageDescription[packages.size()]);
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+
+  private static boolean equals(Object o1, Object o2)
+  {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+}
@@ -39,6 +39,7 @@ import java.util.List;
 import org.knopflerfish.eclipse.core.IBundleProject;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.launcher.BundleLaunchInfo;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.osgi.framework.Version;
 
@@ -54,6 +55,7 @@ public class SelectedBundleElement {
   private IBundleProject project;
   private final BundleLaunchInfo launchInfo;
   private PackageDescription[] missingPackages;
+  private String[] conflicts;
 
   public SelectedBundleElement(IOsgiBundle bundle, BundleLaunchInfo info)
   {
@@ -113,6 +115,14 @@ public class SelectedBundleElement {
     return project.getBundleManifest().getVersion();
   }
 
+  public BundleManifest getBundleManifest()
+  {
+    if (bundle != null) {
+      return bundle.getBundleManifest();
+    }
+    return project.getBundleManifest();
+  }
+
   public PackageDescription[] getImportedPackages()
   {
     if (bundle != null) {
@@ -147,6 +157,22 @@ public class SelectedBundleElement {
     return missingPackages;
   }
 
+  public void setConflicts(String[] conflicts)
+  {
+    this.conflicts = conflicts;
+  }
+
+  /**
+   * Returns wiring conflicts found when resolving the selected bundles, e.g.
+   * singleton or uses constraint conflicts.
+   * 
+   * @return array of conflict descriptions, may be null
+   */
+  public String[] getConflicts()
+  {
+    return conflicts;
+  }
+
   public String toString()
   {
     return getName();
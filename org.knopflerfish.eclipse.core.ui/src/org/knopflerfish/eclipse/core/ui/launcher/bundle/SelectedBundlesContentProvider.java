@@ -34,22 +34,29 @@
 
 package org.knopflerfish.eclipse.core.ui.launcher.bundle;
 
-import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.Viewer;
 
 /**
+ * Lazy content provider for the virtual selected bundles table. Rows are
+ * read from the {@link SelectedBundlesModel} when they are shown.
+ * 
  * @author Anders Rimn, Gatespace Telematics
  * @see http://www.gatespacetelematics.com/
  */
-public class SelectedBundlesContentProvider implements IStructuredContentProvider {
+public class SelectedBundlesContentProvider implements ILazyContentProvider {
 
+  private TableViewer viewer;
+  private SelectedBundlesModel model;
+  
   /* (non-Javadoc)
-   * @see org.eclipse.jface.viewers.IStructuredContentProvider#getElements(java.lang.Object)
+   * @see org.eclipse.jface.viewers.ILazyContentProvider#updateElement(int)
    */
-  public Object[] getElements(Object inputElement) {
-
-    SelectedBundlesModel root = (SelectedBundlesModel) inputElement;
-    return root.getElements();
+  public void updateElement(int index) {
+    if (viewer == null || model == null || index >= model.size()) return;
+    
+    viewer.replace(model.getElement(index), index);
   }
 
   /* (non-Javadoc)
@@ -62,5 +69,8 @@ public class SelectedBundlesContentProvider implements IStructuredContentProvide
    * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
    */
   public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+    this.viewer = (TableViewer) viewer;
+    this.model = (SelectedBundlesModel) newInput;
+    this.viewer.setItemCount(model == null ? 0 : model.size());
   }
 }
@@ -239,13 +239,25 @@ public class SelectedBundlesLabelProvider
     case 4:
       // Error
       PackageDescription[] missingPackages = e.getMissingPackages();
+      String[] conflicts = e.getConflicts();
+      StringBuffer error = new StringBuffer();
+      if (conflicts != null) {
+        for (int i = 0; i < conflicts.length; i++) {
+          if (error.length() > 0) {
+            error.append(", ");
+          }
+          error.append(conflicts[i]);
+        }
+      }
       if (missingPackages != null && missingPackages.length > 0) {
         String s = Arrays.toString(missingPackages);
+        if (error.length() > 0) {
+          error.append(", ");
+        }
         // Remove brackets
-        return s.substring(1, s.length() - 1);
-      } else {
-        return "";
+        error.append(s.substring(1, s.length() - 1));
       }
+      return error.toString();
     default:
       return "";
     }
@@ -265,6 +277,9 @@ public class SelectedBundlesLabelProvider
     SelectedBundleElement e = (SelectedBundleElement) o;
     PackageDescription[] missingPackages = e.getMissingPackages();
     Color c = null;
+    if (e.getConflicts() != null && e.getConflicts().length > 0) {
+      return colorError;
+    }
     if (missingPackages != null && missingPackages.length > 0) {
       for (int i = 0; i < missingPackages.length; i++) {
         if (!missingPackages[i].isOptional()) {
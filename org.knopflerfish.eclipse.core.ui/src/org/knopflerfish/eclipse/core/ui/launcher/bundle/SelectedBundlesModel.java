@@ -36,12 +36,16 @@ package org.knopflerfish.eclipse.core.ui.launcher.bundle;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.widgets.Table;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.OsgiBundle;
 import org.knopflerfish.eclipse.core.Util;
@@ -50,6 +54,14 @@ import org.knopflerfish.eclipse.core.project.BundleProject;
 import org.knopflerfish.eclipse.core.ui.UiUtils;
 
 /**
+ * Model of the selected bundles table.
+ * <p>
+ * The table is virtual and the model keeps its elements in table order, i.e.
+ * sorted with the current comparator. Changes to the model only clear the
+ * table rows that are affected, the rows are then read again from the model
+ * when they are shown.
+ * </p>
+ * 
  * @author Anders Rimn, Makewave
  * @see http://www.makewave.com/
  */
@@ -58,6 +70,7 @@ public class SelectedBundlesModel {
   private Map<String, String> bundles = new HashMap<String, String>();
   private Map<String, String> bundleProjects = new HashMap<String, String>();
   private List<SelectedBundleElement> elements = new ArrayList<SelectedBundleElement>();
+  private Comparator<SelectedBundleElement> comparator = null;
   
   public void clear() {
     bundles.clear();
@@ -115,7 +128,7 @@ public class SelectedBundlesModel {
         String name = entry.getKey();
         BundleLaunchInfo info = new BundleLaunchInfo(entry.getValue());
         SelectedBundleElement element = new SelectedBundleElement(new BundleProject(name), info);
-        elements.add(element);
+        elements.add(getInsertIndex(element), element);
         bundleProjects.put(entry.getKey(), entry.getValue());
       } catch (Exception e) {
         // Something went wrong, skip this element
@@ -144,9 +157,13 @@ public class SelectedBundlesModel {
       bundleProjects.put(element.getPath(), element.getLaunchInfo().toString());
     }
 
-    // Add element to viewer
-    viewer.add(element);
-    elements.add(element);
+    // Add element to viewer, rows are moved so selection is restored
+    List<SelectedBundleElement> selection = getSelection(viewer.getTable());
+    int index = getInsertIndex(element);
+    elements.add(index, element);
+    clearRows(viewer, index, elements.size()-1);
+    setSelection(viewer, selection);
+    fitColumns(viewer, Collections.singletonList(element), false);
   }
 
   public void remove(TableViewer viewer, SelectedBundleElement element) {
@@ -162,28 +179,30 @@ public class SelectedBundlesModel {
       bundleProjects.remove(element.getPath());
     }
     
-    // Remove element from viewer
-    viewer.remove(element);
-    elements.remove(element);
+    // Remove element from viewer, rows are moved so selection is cleared
+    int index = elements.indexOf(element);
+    if (index < 0) return;
+    elements.remove(index);
+    viewer.getTable().deselectAll();
+    clearRows(viewer, index, elements.size()-1);
   }
   
   public void removeAll(TableViewer viewer) {
-    for (Iterator<SelectedBundleElement> i=elements.iterator(); i.hasNext();) {
-      SelectedBundleElement element = i.next();
-    
-      // Remove element from model
-      if (element.getType() == SelectedBundleElement.TYPE_BUNDLE) {
-        bundles.remove(element.getPath());
-      } else if (element.getType() == SelectedBundleElement.TYPE_BUNDLE_PROJECT) {
-        bundleProjects.remove(element.getPath());
-      }
-    
-      // Remove element from viewer
-      viewer.remove(element);
-      i.remove();
-    }
+    bundles.clear();
+    bundleProjects.clear();
+    elements.clear();
+    viewer.getTable().deselectAll();
+    viewer.setItemCount(0);
   }
 
+  public int size() {
+    return elements.size();
+  }
+  
+  public SelectedBundleElement getElement(int index) {
+    return elements.get(index);
+  }
+  
   public SelectedBundleElement [] getElements() {
     return (SelectedBundleElement[]) elements.toArray(new SelectedBundleElement[elements.size()]);
   }
@@ -201,10 +220,132 @@ public class SelectedBundlesModel {
       bundleProjects.put(element.getPath(), element.getLaunchInfo().toString());
     }
     
-    // Update element in viewer
-    viewer.refresh(element);
-    //viewer.update(element, new String[] {prop});
-    
-    UiUtils.packTableColumns(viewer.getTable());
+    // Move element to its sorted position and update the rows in between
+    int index = elements.indexOf(element);
+    if (index < 0) return;
+    Table table = viewer.getTable();
+    List<SelectedBundleElement> selection = getSelection(table);
+    elements.remove(index);
+    int newIndex = getInsertIndex(element);
+    elements.add(newIndex, element);
+    clearRows(viewer, Math.min(index, newIndex), Math.max(index, newIndex));
+    if (index != newIndex) {
+      setSelection(viewer, selection);
+    }
+    fitColumns(viewer, Collections.singletonList(element), false);
+  }
+  
+  /**
+   * Updates the row of the given element, e.g. when the problems of the
+   * element have changed.
+   * 
+   * @param viewer selected bundles table
+   * @param element element
+   */
+  public void updateRow(TableViewer viewer, SelectedBundleElement element) {
+    int index = elements.indexOf(element);
+    if (index >= 0) {
+      viewer.getTable().clear(index);
+    }
+  }
+
+  /**
+   * Updates all rows, e.g. when the labels of all elements may have changed.
+   * 
+   * @param viewer selected bundles table
+   */
+  public void refresh(TableViewer viewer) {
+    viewer.setItemCount(elements.size());
+    viewer.getTable().clearAll();
+    fitColumns(viewer);
+  }
+  
+  /**
+   * Sets the comparator used to sort the elements and updates all rows.
+   * 
+   * @param viewer selected bundles table
+   * @param comparator comparator, or null to keep the elements in the order
+   *          they were added
+   */
+  public void setComparator(TableViewer viewer, Comparator<SelectedBundleElement> comparator) {
+    this.comparator = comparator;
+    if (comparator != null) {
+      Table table = viewer.getTable();
+      List<SelectedBundleElement> selection = getSelection(table);
+      Collections.sort(elements, comparator);
+      table.clearAll();
+      setSelection(viewer, selection);
+    }
+  }
+  
+  /**
+   * Selects the given elements in the table.
+   * 
+   * @param viewer selected bundles table
+   * @param selection elements to select
+   */
+  public void setSelection(TableViewer viewer, List<SelectedBundleElement> selection) {
+    Map<SelectedBundleElement, SelectedBundleElement> selected = 
+      new IdentityHashMap<SelectedBundleElement, SelectedBundleElement>();
+    for(SelectedBundleElement element : selection) {
+      selected.put(element, element);
+    }
+    int [] indices = new int[selected.size()];
+    int n = 0;
+    for (int i=0; i<elements.size() && n<indices.length; i++) {
+      if (selected.containsKey(elements.get(i))) {
+        indices[n++] = i;
+      }
+    }
+    Table table = viewer.getTable();
+    if (n < indices.length) {
+      int [] tmp = new int[n];
+      System.arraycopy(indices, 0, tmp, 0, n);
+      indices = tmp;
+    }
+    table.setSelection(indices);
+  }
+  
+  /**
+   * Fits the table columns to the elements. Only a sample of the elements
+   * is measured if there are many elements.
+   * 
+   * @param viewer selected bundles table
+   */
+  public void fitColumns(TableViewer viewer) {
+    fitColumns(viewer, elements, true);
+  }
+  
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private int getInsertIndex(SelectedBundleElement element) {
+    if (comparator == null) {
+      return elements.size();
+    }
+    int index = Collections.binarySearch(elements, element, comparator);
+    return index < 0 ? -(index+1) : index;
+  }
+  
+  private void clearRows(TableViewer viewer, int start, int end) {
+    viewer.setItemCount(elements.size());
+    if (start <= end) {
+      viewer.getTable().clear(start, end);
+    }
+  }
+  
+  private List<SelectedBundleElement> getSelection(Table table) {
+    int [] indices = table.getSelectionIndices();
+    List<SelectedBundleElement> selection = new ArrayList<SelectedBundleElement>(indices.length);
+    for (int i=0; i<indices.length; i++) {
+      if (indices[i] < elements.size()) {
+        selection.add(elements.get(indices[i]));
+      }
+    }
+    return selection;
+  }
+  
+  private void fitColumns(TableViewer viewer, List<SelectedBundleElement> rows, boolean shrink) {
+    UiUtils.fitTableColumns(viewer.getTable(), viewer.getLabelProvider(), rows, shrink);
   }
 }
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.ui.launcher.bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.manifest.SymbolicName;
+
+/**
+ * Incremental resolver for the bundles selected in a launch configuration.
+ * <p>
+ * The resolver keeps an index of all exported packages and of the bundles
+ * importing each package. When bundles are added or removed only the
+ * bundles importing a package whose exporters have changed are wired again.
+ * </p>
+ * <p>
+ * Every import is wired to the exporter with the highest version within the
+ * import range, framework and system packages are preferred if versions are
+ * equal. Besides missing packages, singleton bundles selected more than once
+ * and imports violating the uses constraints of the chosen exporter are
+ * reported as conflicts.
+ * </p>
+ * <p>
+ * The resolver is not thread safe.
+ * </p>
+ * 
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class WiringResolver
+{
+  private static final PackageDescription[] NO_PACKAGES = new PackageDescription[0];
+
+  // Package name -> exports
+  private final Map<String, List<Export>> exports = new HashMap<String, List<Export>>();
+  // Package name -> importing bundles
+  private final Map<String, Set<Node>> importers = new HashMap<String, Set<Node>>();
+  // Symbolic name -> singleton bundles
+  private final Map<String, List<Node>> singletons = new HashMap<String, List<Node>>();
+  private final Map<SelectedBundleElement, Node> nodes = new HashMap<SelectedBundleElement, Node>();
+  private final Set<Node> dirty = new LinkedHashSet<Node>();
+  private PackageDescription[] frameworkPackages = NO_PACKAGES;
+
+  /**
+   * Sets the packages exported by the framework and the system bundle.
+   * 
+   * @param packages exported packages, may be null
+   */
+  void setFrameworkPackages(PackageDescription[] packages)
+  {
+    if (packages == null) {
+      packages = NO_PACKAGES;
+    }
+    if (Arrays.equals(frameworkPackages, packages)) {
+      return;
+    }
+
+    for (int i = 0; i < frameworkPackages.length; i++) {
+      removeExport(frameworkPackages[i], null);
+    }
+    frameworkPackages = packages;
+    for (int i = 0; i < frameworkPackages.length; i++) {
+      addExport(frameworkPackages[i], null);
+    }
+    // Any import may be affected
+    dirty.addAll(nodes.values());
+  }
+
+  /**
+   * Sets the selected bundles. Bundles not selected since the last call are
+   * removed, new bundles and bundles whose manifest has changed are added.
+   * 
+   * @param elements selected bundles
+   */
+  void update(SelectedBundleElement[] elements)
+  {
+    Set<SelectedBundleElement> selected = new HashSet<SelectedBundleElement>(
+        Arrays.asList(elements));
+    for (Iterator<Node> i = nodes.values().iterator(); i.hasNext();) {
+      Node node = i.next();
+      if (!selected.contains(node.element)) {
+        i.remove();
+        removeNode(node);
+      }
+    }
+
+    for (int i = 0; i < elements.length; i++) {
+      SelectedBundleElement element = elements[i];
+      Node node = nodes.get(element);
+      Node newNode = new Node(element);
+      if (node != null) {
+        if (node.isSameBundle(newNode)) {
+          continue;
+        }
+        removeNode(node);
+      }
+      nodes.put(element, newNode);
+      addNode(newNode);
+    }
+  }
+
+  /**
+   * Wires all bundles affected by changes since the last call and checks
+   * them for problems.
+   * 
+   * @return bundles whose problems have changed, mapped to the new problems
+   */
+  Map<SelectedBundleElement, Problems> resolve()
+  {
+    // Wire bundles, the uses constraints of bundles importing from a bundle
+    // with changed wiring must be checked again
+    Set<Node> check = new LinkedHashSet<Node>(dirty);
+    for (Node node : dirty) {
+      Map<String, Export> wires = wire(node);
+      if (!wires.equals(node.wires)) {
+        node.wires = wires;
+        for (int i = 0; i < node.exports.length; i++) {
+          Set<Node> s = importers.get(node.exports[i].getPackageName());
+          if (s != null) {
+            check.addAll(s);
+          }
+        }
+      }
+    }
+    dirty.clear();
+
+    Map<SelectedBundleElement, Problems> changed = new LinkedHashMap<SelectedBundleElement, Problems>();
+    for (Node node : check) {
+      if (nodes.get(node.element) != node) {
+        // Removed
+        continue;
+      }
+      Problems problems = check(node);
+      if (!problems.equals(node.problems)) {
+        node.problems = problems;
+        changed.put(node.element, problems);
+      }
+    }
+    return changed;
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void addNode(Node node)
+  {
+    dirty.add(node);
+    for (int i = 0; i < node.exports.length; i++) {
+      addExport(node.exports[i], node);
+    }
+    for (int i = 0; i < node.imports.length; i++) {
+      String name = node.imports[i].getPackageName();
+      Set<Node> s = importers.get(name);
+      if (s == null) {
+        s = new LinkedHashSet<Node>();
+        importers.put(name, s);
+      }
+      s.add(node);
+    }
+    if (node.singleton) {
+      List<Node> l = singletons.get(node.symbolicName);
+      if (l == null) {
+        l = new ArrayList<Node>(1);
+        singletons.put(node.symbolicName, l);
+      }
+      dirty.addAll(l);
+      l.add(node);
+    }
+  }
+
+  private void removeNode(Node node)
+  {
+    for (int i = 0; i < node.exports.length; i++) {
+      removeExport(node.exports[i], node);
+    }
+    for (int i = 0; i < node.imports.length; i++) {
+      String name = node.imports[i].getPackageName();
+      Set<Node> s = importers.get(name);
+      if (s != null) {
+        s.remove(node);
+        if (s.isEmpty()) {
+          importers.remove(name);
+        }
+      }
+    }
+    if (node.singleton) {
+      List<Node> l = singletons.get(node.symbolicName);
+      if (l != null) {
+        l.remove(node);
+        dirty.addAll(l);
+        if (l.isEmpty()) {
+          singletons.remove(node.symbolicName);
+        }
+      }
+    }
+    dirty.remove(node);
+  }
+
+  private void addExport(PackageDescription pd, Node owner)
+  {
+    String name = pd.getPackageName();
+    List<Export> l = exports.get(name);
+    if (l == null) {
+      l = new ArrayList<Export>(1);
+      exports.put(name, l);
+    }
+    l.add(new Export(pd, owner));
+    markImporters(name);
+  }
+
+  private void removeExport(PackageDescription pd, Node owner)
+  {
+    String name = pd.getPackageName();
+    List<Export> l = exports.get(name);
+    if (l == null) {
+      return;
+    }
+    for (Iterator<Export> i = l.iterator(); i.hasNext();) {
+      Export export = i.next();
+      if (export.owner == owner && export.pd == pd) {
+        i.remove();
+        break;
+      }
+    }
+    if (l.isEmpty()) {
+      exports.remove(name);
+    }
+    markImporters(name);
+  }
+
+  private void markImporters(String name)
+  {
+    Set<Node> s = importers.get(name);
+    if (s != null) {
+      dirty.addAll(s);
+    }
+  }
+
+  private Map<String, Export> wire(Node node)
+  {
+    Map<String, Export> wires = new HashMap<String, Export>();
+    for (int i = 0; i < node.imports.length; i++) {
+      PackageDescription pd = node.imports[i];
+      List<Export> l = exports.get(pd.getPackageName());
+      if (l == null) {
+        continue;
+      }
+      Export best = null;
+      for (Export export : l) {
+        if (!pd.getVersionRange().contains(export.pd.getVersion())) {
+          continue;
+        }
+        if (best == null) {
+          best = export;
+          continue;
+        }
+        int c = export.pd.getVersion().compareTo(best.pd.getVersion());
+        // Framework and system packages win if versions are equal
+        if (c > 0 || (c == 0 && export.owner == null && best.owner != null)) {
+          best = export;
+        }
+      }
+      if (best != null) {
+        wires.put(pd.getPackageName(), best);
+      }
+    }
+    return wires;
+  }
+
+  private Problems check(Node node)
+  {
+    // Missing packages
+    List<PackageDescription> missing = new ArrayList<PackageDescription>();
+    for (int i = 0; i < node.imports.length; i++) {
+      if (!node.wires.containsKey(node.imports[i].getPackageName())) {
+        missing.add(node.imports[i]);
+      }
+    }
+
+    List<String> conflicts = new ArrayList<String>();
+
+    // Singletons
+    if (node.singleton && singletons.get(node.symbolicName).size() > 1) {
+      conflicts.add("Singleton " + node.symbolicName + " selected more than once");
+    }
+
+    // Uses constraints
+    for (Map.Entry<String, Export> entry : node.wires.entrySet()) {
+      Export export = entry.getValue();
+      if (export.owner == null) {
+        continue;
+      }
+      String[] uses = export.pd.getUses();
+      for (int i = 0; i < uses.length; i++) {
+        Export wire = node.wires.get(uses[i]);
+        Export used = export.owner.getSource(uses[i]);
+        if (wire != null && used != null && wire != used) {
+          conflicts.add(entry.getKey() + " uses " + uses[i]
+              + " from other exporter");
+        }
+      }
+    }
+
+    return new Problems(missing.toArray(new PackageDescription[missing.size()]),
+        conflicts.toArray(new String[conflicts.size()]));
+  }
+
+  //***************************************************************************
+  // Inner classes
+  //***************************************************************************
+  /**
+   * Problems found for a bundle.
+   */
+  static class Problems
+  {
+    final PackageDescription[] missingPackages;
+    final String[]             conflicts;
+
+    Problems(PackageDescription[] missingPackages, String[] conflicts)
+    {
+      this.missingPackages = missingPackages;
+      this.conflicts = conflicts;
+    }
+
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Problems)) {
+        return false;
+      }
+      Problems p = (Problems) o;
+      return Arrays.equals(missingPackages, p.missingPackages)
+          && Arrays.equals(conflicts, p.conflicts);
+    }
+
+    public int hashCode()
+    {
+      return Arrays.hashCode(missingPackages) ^ Arrays.hashCode(conflicts);
+    }
+  }
+
+  /**
+   * Exported package, owner is null for framework and system packages.
+   */
+  private static class Export
+  {
+    final PackageDescription pd;
+    final Node               owner;
+
+    Export(PackageDescription pd, Node owner)
+    {
+      this.pd = pd;
+      this.owner = owner;
+    }
+  }
+
+  /**
+   * A selected bundle.
+   */
+  private class Node
+  {
+    final SelectedBundleElement element;
+    final PackageDescription[]  imports;
+    final PackageDescription[]  exports;
+    final String                symbolicName;
+    final boolean               singleton;
+    Map<String, Export>         wires = new HashMap<String, Export>();
+    Problems                    problems;
+
+    Node(SelectedBundleElement element)
+    {
+      this.element = element;
+      BundleManifest manifest = element.getBundleManifest();
+      PackageDescription[] imports = null;
+      PackageDescription[] exports = null;
+      SymbolicName sn = null;
+      if (manifest != null) {
+        imports = manifest.getImportedPackages();
+        exports = manifest.getExportedPackages();
+        sn = manifest.getSymbolicName();
+      }
+      this.imports = imports == null ? NO_PACKAGES : imports;
+      this.exports = exports == null ? NO_PACKAGES : exports;
+      this.symbolicName = sn == null ? null : sn.getSymbolicName();
+      this.singleton = sn != null && sn.isSingleton();
+    }
+
+    boolean isSameBundle(Node node)
+    {
+      return Arrays.equals(imports, node.imports)
+          && Arrays.equals(exports, node.exports)
+          && singleton == node.singleton
+          && (symbolicName == null ? node.symbolicName == null : symbolicName
+              .equals(node.symbolicName));
+    }
+
+    /**
+     * Returns the export this bundle uses for the given package, i.e. its
+     * own export or the export it is wired to.
+     */
+    Export getSource(String packageName)
+    {
+      Export wire = wires.get(packageName);
+      if (wire != null) {
+        return wire;
+      }
+      List<Export> l = WiringResolver.this.exports.get(packageName);
+      if (l != null) {
+        for (Export export : l) {
+          if (export.owner == this) {
+            return export;
+          }
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -133,6 +133,7 @@ public class MainTab extends AbstractLaunchConfigurationTab
   Text                                 wInstanceDirText;
   private Spinner                      wStartLevelSpinner;
   private Button                       wInitButton;
+  private Button                       wUpdateBundlesButton;
   private Button                       wAddPropertyButton;
   private Button                       wRemovePropertyButton;
   private Label                        wErrorXargs;
@@ -372,6 +373,18 @@ public class MainTab extends AbstractLaunchConfigurationTab
     gd.horizontalSpan = 2;
     wInitButton.setLayoutData(gd);
 
+    wUpdateBundlesButton = new Button(wFrameworkGroup, SWT.CHECK);
+    wUpdateBundlesButton.setText("Install, update and uninstall changed bundles when restarting framework");
+    wUpdateBundlesButton.addSelectionListener(new SelectionAdapter() {
+      public void widgetSelected(SelectionEvent e)
+      {
+        updateDialog();
+      }
+    });
+    gd = new GridData(GridData.FILL_HORIZONTAL);
+    gd.horizontalSpan = 2;
+    wUpdateBundlesButton.setLayoutData(gd);
+
     // System Properties Group
     Group wPropertyGroup = new Group(wPageComposite, SWT.SHADOW_IN);
     FormLayout formLayout = new FormLayout();
@@ -639,6 +652,17 @@ public class MainTab extends AbstractLaunchConfigurationTab
     wStartLevelSpinner.setSelection(startLevel);
     bundleTab.setInitialStartLevel(wStartLevelSpinner.getSelection());
 
+    // Update bundles on restart
+    boolean updateBundles = false;
+    try {
+      updateBundles =
+        configuration.getAttribute(IOsgiLaunchConfigurationConstants.ATTR_UPDATE_BUNDLES,
+                                   false);
+    } catch (CoreException e) {
+      OsgiUiPlugin.log(e.getStatus());
+    }
+    wUpdateBundlesButton.setSelection(updateBundles);
+
     // Initialize default system properties list
     try {
       systemProperties =
@@ -693,6 +717,8 @@ public class MainTab extends AbstractLaunchConfigurationTab
 
     configuration.setAttribute(IOsgiLaunchConfigurationConstants.ATTR_START_LEVEL,
                                wStartLevelSpinner.getSelection());
+    configuration.setAttribute(IOsgiLaunchConfigurationConstants.ATTR_UPDATE_BUNDLES,
+                               wUpdateBundlesButton.getSelection());
     configuration.setAttribute(ISourcePathComputer.ATTR_SOURCE_PATH_COMPUTER_ID,
                                SourcePathComputer.ID);
 
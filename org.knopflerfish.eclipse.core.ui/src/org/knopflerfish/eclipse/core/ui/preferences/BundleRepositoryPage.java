@@ -62,9 +62,13 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.knopflerfish.eclipse.core.IBundleRepositoryType;
+import org.knopflerfish.eclipse.core.Osgi;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
 import org.knopflerfish.eclipse.core.preferences.RepositoryPreference;
+import org.knopflerfish.eclipse.core.project.classpath.BundleResolutionCache;
 import org.knopflerfish.eclipse.core.ui.UiUtils;
+import org.knopflerfish.eclipse.core.ui.launcher.bundle.AvailableElementRepository;
 
 /**
  * @author Anders Rimn, Gatespace Telematics
@@ -317,6 +321,14 @@ public class BundleRepositoryPage extends PreferencePage implements IWorkbenchPr
     // Save bundle repositories to preference store
     OsgiPreferences.setBundleRepositories(
         (RepositoryPreference[]) repositories.toArray(new RepositoryPreference[repositories.size()]));
+    
+    // Refresh cached repositories, changed bundles are read again
+    IBundleRepositoryType[] types = Osgi.getBundleRepositoryTypes();
+    for (int i=0; i<types.length; i++) {
+      types[i].refreshRepositories();
+    }
+    BundleResolutionCache.clear();
+    AvailableElementRepository.clearCache();
     return true;
   }
 
@@ -39,11 +39,13 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
 
 /**
  * @author Anders Rimn, Gatespace Telematics
@@ -52,6 +54,21 @@ import org.eclipse.ui.IWorkbenchPreferencePage;
 public class OsgiPage extends PreferencePage implements IWorkbenchPreferencePage {
   private static String DESCRIPTION = 
     "General settings for OSGi environments.";
+  private static String PARALLEL_PACKAGING = 
+    "Package bundle JARs of several projects in parallel";
+  private static String SKIP_UNCHANGED_JARS = 
+    "Do not write bundle JARs whose contents and manifest are unchanged";
+  private static String SKIP_UNCHANGED_JARS_TOOLTIP = 
+    "Incremental builds never write a bundle JAR when no packaged file has changed. " +
+    "This setting also compares the contents of the files, so that JARs are left " +
+    "untouched on full builds and when files are rewritten with the same contents.";
+  private static String REPRODUCIBLE_BUILD_DATE = 
+    "Use modification time of newest packaged file as build date";
+  
+  // Widgets
+  private Button wParallelPackagingButton;
+  private Button wSkipUnchangedJarsButton;
+  private Button wReproducibleBuildDateButton;
 
   /****************************************************************************
    * org.eclipse.ui.IWorkbenchPreferencePage methods
@@ -84,6 +101,52 @@ public class OsgiPage extends PreferencePage implements IWorkbenchPreferencePage
     data.right = new FormAttachment(100,0);
     wDescriptionLabel.setLayoutData(data);
     
+    // Build settings
+    wParallelPackagingButton = new Button(page, SWT.CHECK);
+    wParallelPackagingButton.setText(PARALLEL_PACKAGING);
+    wParallelPackagingButton.setSelection(OsgiPreferences.isParallelPackaging());
+    data = new FormData();
+    data.left = new FormAttachment(0,0);
+    data.top = new FormAttachment(wDescriptionLabel, 10, SWT.BOTTOM);
+    wParallelPackagingButton.setLayoutData(data);
+    
+    wSkipUnchangedJarsButton = new Button(page, SWT.CHECK);
+    wSkipUnchangedJarsButton.setText(SKIP_UNCHANGED_JARS);
+    wSkipUnchangedJarsButton.setToolTipText(SKIP_UNCHANGED_JARS_TOOLTIP);
+    wSkipUnchangedJarsButton.setSelection(OsgiPreferences.isSkipUnchangedJars());
+    data = new FormData();
+    data.left = new FormAttachment(0,0);
+    data.top = new FormAttachment(wParallelPackagingButton, 5, SWT.BOTTOM);
+    wSkipUnchangedJarsButton.setLayoutData(data);
+    
+    wReproducibleBuildDateButton = new Button(page, SWT.CHECK);
+    wReproducibleBuildDateButton.setText(REPRODUCIBLE_BUILD_DATE);
+    wReproducibleBuildDateButton.setSelection(OsgiPreferences.isReproducibleBuildDate());
+    data = new FormData();
+    data.left = new FormAttachment(0,0);
+    data.top = new FormAttachment(wSkipUnchangedJarsButton, 5, SWT.BOTTOM);
+    wReproducibleBuildDateButton.setLayoutData(data);
+    
     return page;
   }
+  
+  /* (non-Javadoc)
+   * @see org.eclipse.jface.preference.PreferencePage#performDefaults()
+   */
+  protected void performDefaults() {
+    wParallelPackagingButton.setSelection(false);
+    wSkipUnchangedJarsButton.setSelection(false);
+    wReproducibleBuildDateButton.setSelection(false);
+    super.performDefaults();
+  }
+  
+  /* (non-Javadoc)
+   * @see org.eclipse.jface.preference.IPreferencePage#performOk()
+   */
+  public boolean performOk() {
+    OsgiPreferences.setParallelPackaging(wParallelPackagingButton.getSelection());
+    OsgiPreferences.setSkipUnchangedJars(wSkipUnchangedJarsButton.getSelection());
+    OsgiPreferences.setReproducibleBuildDate(wReproducibleBuildDateButton.getSelection());
+    return true;
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+/**
+ * Cache of bundle manifests read from jar files.
+ * <p>
+ * A manifest is only read again if the size or modification time of the jar
+ * file has changed since it was cached. This lets e.g. launches with
+ * hundreds of bundles reuse the manifests read by earlier launches instead
+ * of opening every jar file again.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class BundleCache {
+
+  // Maximum number of cached manifests
+  private static final int MAX_SIZE = 4096;
+
+  private static final Map<String, CachedManifest> cache =
+    new LinkedHashMap<String, CachedManifest>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, CachedManifest> eldest)
+      {
+        return size() > MAX_SIZE;
+      }
+    };
+
+  /**
+   * Returns a bundle for the given jar file, using the cached manifest if
+   * the file is unchanged.
+   *
+   * @param f bundle jar file
+   * @return bundle
+   * @throws IOException if the file does not exist or can not be read
+   */
+  public static IOsgiBundle getBundle(File f) throws IOException
+  {
+    if (!f.isFile()) {
+      throw new IOException("Library, " + f + ", does not exist.");
+    }
+
+    String path = f.getAbsolutePath();
+    long length = f.length();
+    long lastModified = f.lastModified();
+
+    CachedManifest entry;
+    synchronized (cache) {
+      entry = cache.get(path);
+    }
+    if (entry == null || entry.length != length
+        || entry.lastModified != lastModified) {
+      // Read file without holding the lock
+      entry = new CachedManifest(length, lastModified, ManifestReader
+          .readManifest(f));
+      synchronized (cache) {
+        cache.put(path, entry);
+      }
+    }
+    // Copy manifest since bundle manifests may be modified
+    return new OsgiBundle(f, entry.manifest == null ? null : new Manifest(
+        entry.manifest));
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class CachedManifest {
+    final long length;
+    final long lastModified;
+    final Manifest manifest;
+
+    CachedManifest(long length, long lastModified, Manifest manifest)
+    {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.manifest = manifest;
+    }
+  }
+}
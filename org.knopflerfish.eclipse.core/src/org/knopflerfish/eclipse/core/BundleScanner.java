@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.core;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Scans directories for bundles using a bounded pool of worker threads.
+ * <p>
+ * Both directory traversal and file processing, e.g. reading manifests, are
+ * done in parallel. The results are always merged in the same order as a
+ * sequential depth first scan would produce, so the order of the bundles in
+ * a repository does not depend on thread scheduling.
+ * </p>
+ * <p>
+ * A scan is canceled if the given progress monitor is canceled, in which
+ * case an {@link OperationCanceledException} is thrown.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class BundleScanner {
+
+  /**
+   * Filter accepting all files.
+   */
+  public static final FileFilter ALL_FILES = new FileFilter() {
+    public boolean accept(File f)
+    {
+      return true;
+    }
+  };
+
+  /**
+   * Filter accepting files with a name ending with "jar".
+   */
+  public static final FileFilter JAR_FILES = new FileFilter() {
+    public boolean accept(File f)
+    {
+      return f.getName().toLowerCase().endsWith("jar");
+    }
+  };
+
+  /**
+   * Processes a file found during a scan.
+   */
+  public interface IFileProcessor<T> {
+
+    /**
+     * Processes the given file. Called concurrently from several threads.
+     *
+     * @param f file
+     * @return result or null if the file shall be skipped
+     * @throws Exception if the file can not be processed, the file is then
+     *           skipped
+     */
+    T process(File f) throws Exception;
+  }
+
+  private static final int TYPE_OTHER = 0;
+  private static final int TYPE_FILE = 1;
+  private static final int TYPE_DIRECTORY = 2;
+
+  private static final int THREADS = Math.max(2, Math.min(8, Runtime
+      .getRuntime().availableProcessors()));
+  private static final long POLL_INTERVAL = 100;
+
+  private static final ThreadPoolExecutor executor;
+  static {
+    executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ScannerThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Scans the given directory for files and processes all files found.
+   *
+   * @param root file or directory to scan
+   * @param filter filter for files to process, called concurrently
+   * @param processor processor for files
+   * @param monitor progress monitor, may be null
+   * @return list of non null results in scan order
+   * @throws OperationCanceledException if the monitor is canceled
+   */
+  public static <T> List<T> scan(File root,
+                                 FileFilter filter,
+                                 IFileProcessor<T> processor,
+                                 IProgressMonitor monitor)
+  {
+    return processFiles(findFiles(root, filter, monitor), processor, monitor);
+  }
+
+  /**
+   * Returns all files in the given directory and its sub directories
+   * accepted by the filter.
+   *
+   * @param root file or directory to scan
+   * @param filter filter for files, called concurrently
+   * @param monitor progress monitor, may be null
+   * @return list of files in depth first order
+   * @throws OperationCanceledException if the monitor is canceled
+   */
+  public static List<File> findFiles(File root,
+                                     final FileFilter filter,
+                                     IProgressMonitor monitor)
+  {
+    List<File> files = new ArrayList<File>();
+    if (root == null || !root.exists()) {
+      return files;
+    }
+    if (root.isFile()) {
+      if (filter.accept(root)) {
+        files.add(root);
+      }
+      return files;
+    }
+
+    // List directories one level at a time
+    Map<File, Listing> listings = new HashMap<File, Listing>();
+    List<File> level = new ArrayList<File>();
+    level.add(root);
+    while (!level.isEmpty()) {
+      List<Callable<Listing>> tasks = new ArrayList<Callable<Listing>>(level
+          .size());
+      for (final File dir : level) {
+        tasks.add(new Callable<Listing>() {
+          public Listing call()
+          {
+            return new Listing(dir, filter);
+          }
+        });
+      }
+      List<Listing> result = invokeAll(tasks, monitor, false);
+
+      List<File> next = new ArrayList<File>();
+      for (int i = 0; i < level.size(); i++) {
+        Listing listing = result.get(i);
+        if (listing == null) {
+          continue;
+        }
+        listings.put(level.get(i), listing);
+        for (int j = 0; j < listing.children.length; j++) {
+          if (listing.types[j] == TYPE_DIRECTORY) {
+            next.add(listing.children[j]);
+          }
+        }
+      }
+      level = next;
+    }
+
+    collectFiles(root, listings, files);
+    return files;
+  }
+
+  /**
+   * Processes the given files in parallel.
+   * <p>
+   * If a monitor is given one unit of work is reported for every processed
+   * file.
+   * </p>
+   *
+   * @param files files to process
+   * @param processor processor for files
+   * @param monitor progress monitor, may be null
+   * @return list of non null results in the same order as the files
+   * @throws OperationCanceledException if the monitor is canceled
+   */
+  public static <T> List<T> processFiles(List<File> files,
+                                         final IFileProcessor<T> processor,
+                                         IProgressMonitor monitor)
+  {
+    List<Callable<T>> tasks = new ArrayList<Callable<T>>(files.size());
+    for (final File f : files) {
+      tasks.add(new Callable<T>() {
+        public T call() throws Exception
+        {
+          return processor.process(f);
+        }
+      });
+    }
+
+    List<T> result = invokeAll(tasks, monitor, true);
+    List<T> l = new ArrayList<T>(result.size());
+    for (T t : result) {
+      if (t != null) {
+        l.add(t);
+      }
+    }
+    return l;
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+
+  /**
+   * Runs all tasks and returns their results in task order. Failed tasks
+   * have a null result.
+   */
+  private static <T> List<T> invokeAll(List<Callable<T>> tasks,
+                                       IProgressMonitor monitor,
+                                       boolean reportWork)
+  {
+    List<T> result = new ArrayList<T>(tasks.size());
+
+    // Run in calling thread if already in a scanner thread, to avoid
+    // waiting for tasks that can never be run, or if there is nothing to
+    // gain from using several threads
+    if (tasks.size() < 2 || Thread.currentThread() instanceof ScannerThread) {
+      for (Callable<T> task : tasks) {
+        checkCanceled(monitor, null);
+        result.add(call(task));
+        if (reportWork && monitor != null) {
+          monitor.worked(1);
+        }
+      }
+      return result;
+    }
+
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    for (Future<T> future : futures) {
+      result.add(get(future, futures, monitor));
+      if (reportWork && monitor != null) {
+        monitor.worked(1);
+      }
+    }
+    return result;
+  }
+
+  private static <T> T call(Callable<T> task)
+  {
+    try {
+      return task.call();
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  private static <T> T get(Future<T> future,
+                           List<Future<T>> futures,
+                           IProgressMonitor monitor)
+  {
+    while (true) {
+      checkCanceled(monitor, futures);
+      try {
+        return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        // Check monitor and wait again
+      } catch (ExecutionException e) {
+        return null;
+      } catch (InterruptedException e) {
+        cancel(futures);
+        Thread.currentThread().interrupt();
+        throw new OperationCanceledException();
+      }
+    }
+  }
+
+  private static <T> void checkCanceled(IProgressMonitor monitor,
+                                        List<Future<T>> futures)
+  {
+    if (monitor != null && monitor.isCanceled()) {
+      cancel(futures);
+      throw new OperationCanceledException();
+    }
+  }
+
+  private static <T> void cancel(List<Future<T>> futures)
+  {
+    if (futures == null) {
+      return;
+    }
+    for (Future<T> future : futures) {
+      future.cancel(false);
+    }
+  }
+
+  private static void collectFiles(File dir,
+                                   Map<File, Listing> listings,
+                                   List<File> files)
+  {
+    Listing listing = listings.get(dir);
+    if (listing == null) {
+      return;
+    }
+    for (int i = 0; i < listing.children.length; i++) {
+      if (listing.types[i] == TYPE_DIRECTORY) {
+        collectFiles(listing.children[i], listings, files);
+      } else if (listing.types[i] == TYPE_FILE && listing.accepted[i]) {
+        files.add(listing.children[i]);
+      }
+    }
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+
+  /**
+   * Contents of a directory. File type and filter are evaluated when the
+   * listing is created, i.e. in a worker thread.
+   */
+  private static class Listing {
+    final File[] children;
+    final int[] types;
+    final boolean[] accepted;
+
+    Listing(File dir, FileFilter filter)
+    {
+      File[] list = dir.listFiles();
+      children = list == null ? new File[0] : list;
+      types = new int[children.length];
+      accepted = new boolean[children.length];
+      for (int i = 0; i < children.length; i++) {
+        if (children[i].isFile()) {
+          types[i] = TYPE_FILE;
+          accepted[i] = filter.accept(children[i]);
+        } else if (children[i].isDirectory()) {
+          types[i] = TYPE_DIRECTORY;
+        } else {
+          types[i] = TYPE_OTHER;
+        }
+      }
+    }
+  }
+
+  private static class ScannerThread extends Thread {
+    ScannerThread(Runnable r, String name)
+    {
+      super(r, name);
+    }
+  }
+
+  private static class ScannerThreadFactory implements ThreadFactory {
+    private int count = 0;
+
+    public synchronized Thread newThread(Runnable r)
+    {
+      Thread t = new ScannerThread(r, "Bundle scanner " + (++count));
+      t.setDaemon(true);
+      t.setPriority(Thread.NORM_PRIORITY - 1);
+      return t;
+    }
+  }
+}
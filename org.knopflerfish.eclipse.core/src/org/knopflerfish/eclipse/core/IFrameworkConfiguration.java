@@ -69,6 +69,16 @@ public interface IFrameworkConfiguration {
 
   public void clearBundleCache(boolean clear);
 
+  /**
+   * Sets if bundles added, removed or changed since the last launch shall be
+   * installed, uninstalled or updated when the framework is restarted
+   * without clearing the bundle cache.
+   * 
+   * @param update
+   *          true if bundle changes shall be applied on restart
+   */
+  public void setUpdateBundles(boolean update);
+
   public void setStartLevel(int startLevel);
 
   /**
@@ -84,4 +94,11 @@ public interface IFrameworkConfiguration {
 
   public File getWorkingDirectory();
 
+  /**
+   * Called when the framework has been started with the arguments returned
+   * by {@link #create()}. State that depends on the framework having been
+   * started, e.g. the bundles installed, shall not be saved before this.
+   */
+  public void launched();
+
 }
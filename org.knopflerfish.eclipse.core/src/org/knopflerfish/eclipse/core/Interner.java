@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.osgi.framework.Version;
+
+/**
+ * Canonical instances of package names, versions and version ranges.
+ * <p>
+ * Repositories and manifests contain the same package names and versions
+ * many times. Interned values are shared, which saves heap and lets
+ * comparisons succeed on the identity check. Canonical instances are
+ * weakly referenced and are released when no longer used. Recently parsed
+ * version and version range strings are also cached, so repeated strings
+ * are only parsed once.
+ * </p>
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class Interner {
+
+  // Number of parsed strings kept in each parse cache
+  private static final int PARSE_CACHE_SIZE = 1024;
+
+  private static final Pool<String> names = new Pool<String>();
+  private static final Pool<Version> versions = new Pool<Version>();
+  private static final Pool<VersionRange> ranges = new Pool<VersionRange>();
+  static {
+    versions.intern(Version.emptyVersion);
+  }
+
+  private static final Map<String, Version> parsedVersions = new ParseCache<Version>();
+  private static final Map<String, VersionRange> parsedRanges = new ParseCache<VersionRange>();
+
+  /**
+   * Returns the canonical instance of a package name.
+   *
+   * @param name package name, may be null
+   * @return canonical package name
+   */
+  public static String packageName(String name)
+  {
+    return names.intern(name);
+  }
+
+  /**
+   * Returns the canonical instance of a version.
+   *
+   * @param version version, may be null
+   * @return canonical version
+   */
+  public static Version version(Version version)
+  {
+    return versions.intern(version);
+  }
+
+  /**
+   * Parses a version and returns its canonical instance.
+   *
+   * @param s version string, may be null
+   * @return canonical version, {@link Version#emptyVersion} if the string is
+   *         null or empty
+   * @throws IllegalArgumentException if the string is not a valid version
+   * @see Version#parseVersion(String)
+   */
+  public static Version parseVersion(String s)
+  {
+    if (s == null) {
+      return Version.emptyVersion;
+    }
+    synchronized (parsedVersions) {
+      Version version = parsedVersions.get(s);
+      if (version != null) {
+        return version;
+      }
+    }
+    Version version = version(Version.parseVersion(s));
+    synchronized (parsedVersions) {
+      parsedVersions.put(s, version);
+    }
+    return version;
+  }
+
+  /**
+   * Returns the canonical instance of a version range.
+   *
+   * @param range version range, may be null
+   * @return canonical version range
+   */
+  public static VersionRange versionRange(VersionRange range)
+  {
+    return ranges.intern(range);
+  }
+
+  /**
+   * Parses a version range and returns its canonical instance.
+   *
+   * @param s version range string, may be null
+   * @return canonical version range
+   * @throws IllegalArgumentException if a version in the range is not a
+   *           valid version
+   * @see VersionRange#VersionRange(String)
+   */
+  public static VersionRange parseVersionRange(String s)
+  {
+    String key = s == null ? "" : s;
+    synchronized (parsedRanges) {
+      VersionRange range = parsedRanges.get(key);
+      if (range != null) {
+        return range;
+      }
+    }
+    VersionRange range = versionRange(new VersionRange(s));
+    synchronized (parsedRanges) {
+      parsedRanges.put(key, range);
+    }
+    return range;
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+
+  /**
+   * Weak set of canonical instances.
+   */
+  private static class Pool<T> {
+    private final Map<T, WeakReference<T>> map = new WeakHashMap<T, WeakReference<T>>();
+
+    synchronized T intern(T t)
+    {
+      if (t == null) {
+        return null;
+      }
+      WeakReference<T> ref = map.get(t);
+      T canonical = ref == null ? null : ref.get();
+      if (canonical == null) {
+        map.put(t, new WeakReference<T>(t));
+        canonical = t;
+      }
+      return canonical;
+    }
+  }
+
+  /**
+   * Bounded cache of parsed strings, least recently used strings are
+   * removed first.
+   */
+  private static class ParseCache<T> extends LinkedHashMap<String, T> {
+    private static final long serialVersionUID = 1L;
+
+    ParseCache()
+    {
+      super(16, 0.75f, true);
+    }
+
+    protected boolean removeEldestEntry(Map.Entry<String, T> eldest)
+    {
+      return size() > PARSE_CACHE_SIZE;
+    }
+  }
+}
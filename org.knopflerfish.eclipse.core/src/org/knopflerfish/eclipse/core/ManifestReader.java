@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the manifest of a jar file without opening it as a
+ * {@link JarFile}.
+ * <p>
+ * The manifest is normally one of the first entries in a jar file, so the
+ * local file headers at the start of the file are searched first. If the
+ * manifest is not found there, the central directory is read and searched.
+ * Only if the jar file can not be handled, e.g. encrypted entries or ZIP64
+ * archives, the manifest is read using {@link JarFile}.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class ManifestReader {
+
+  public static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+  private static final int LOC_SIG = 0x04034b50;
+  private static final int EXT_SIG = 0x08074b50;
+  private static final int CEN_SIG = 0x02014b50;
+  private static final int END_SIG = 0x06054b50;
+
+  private static final int LOC_HDR = 30;
+  private static final int CEN_HDR = 46;
+  private static final int END_HDR = 22;
+  private static final int END_MAXLEN = 0xFFFF + END_HDR;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final int FLAG_ENCRYPTED = 0x01;
+  private static final int FLAG_DESCRIPTOR = 0x08;
+
+  // Number of local file headers searched before the central directory is used
+  private static final int MAX_LOCAL_ENTRIES = 4;
+  // Manifests larger than this are read using JarFile
+  private static final int MAX_MANIFEST_SIZE = 8 * 1024 * 1024;
+
+  // Returned when the central directory has no manifest entry
+  private static final byte[] NO_MANIFEST = new byte[0];
+
+  /**
+   * Returns the manifest of the given jar file.
+   *
+   * @param f jar file
+   * @return manifest or null if the jar file has no manifest
+   * @throws IOException if the file is not a jar file or can not be read
+   */
+  public static Manifest readManifest(File f) throws IOException
+  {
+    byte[] bytes = null;
+    try {
+      bytes = readManifestBytes(f);
+    } catch (IOException e) {
+      // Let JarFile decide if this is a jar file or not
+      bytes = null;
+    } catch (DataFormatException e) {
+      bytes = null;
+    }
+
+    if (bytes == NO_MANIFEST) {
+      return null;
+    }
+    if (bytes != null) {
+      return new Manifest(new ByteArrayInputStream(bytes));
+    }
+
+    // Fall back to JarFile
+    JarFile jar = new JarFile(f);
+    try {
+      return jar.getManifest();
+    } finally {
+      jar.close();
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+
+  /**
+   * Returns the raw manifest, NO_MANIFEST if there is no manifest entry or
+   * null if the jar file can not be handled by this reader.
+   */
+  private static byte[] readManifestBytes(File f) throws IOException,
+      DataFormatException
+  {
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      byte[] bytes = readFromLocalHeaders(raf);
+      if (bytes == null) {
+        bytes = readFromCentralDirectory(raf);
+      }
+      return bytes;
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static byte[] readFromLocalHeaders(RandomAccessFile raf)
+      throws IOException, DataFormatException
+  {
+    long length = raf.length();
+    byte[] hdr = new byte[LOC_HDR];
+    long pos = 0;
+
+    for (int n = 0; n < MAX_LOCAL_ENTRIES; n++) {
+      if (pos + LOC_HDR > length) {
+        return null;
+      }
+      raf.seek(pos);
+      raf.readFully(hdr);
+      if (getInt(hdr, 0) != LOC_SIG) {
+        return null;
+      }
+      int flag = getShort(hdr, 6);
+      int method = getShort(hdr, 8);
+      long csize = getUInt(hdr, 18);
+      long size = getUInt(hdr, 22);
+      int nameLen = getShort(hdr, 26);
+      int extraLen = getShort(hdr, 28);
+      if ((flag & FLAG_ENCRYPTED) != 0) {
+        return null;
+      }
+
+      byte[] name = new byte[nameLen];
+      raf.readFully(name);
+      long dataPos = pos + LOC_HDR + nameLen + extraLen;
+      boolean descriptor = (flag & FLAG_DESCRIPTOR) != 0;
+
+      if (isManifestName(name)) {
+        if (descriptor) {
+          // Sizes are stored after the data
+          return method == DEFLATED ? inflate(raf, dataPos, -1, -1) : null;
+        }
+        return readData(raf, dataPos, method, csize, size);
+      }
+
+      // Skip entry
+      if (!descriptor) {
+        pos = dataPos + csize;
+      } else if (method == DEFLATED) {
+        pos = dataPos + skipDeflated(raf, dataPos);
+        raf.seek(pos);
+        byte[] ext = new byte[4];
+        raf.readFully(ext);
+        // Data descriptor signature is optional
+        pos += getInt(ext, 0) == EXT_SIG ? 16 : 12;
+      } else {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private static byte[] readFromCentralDirectory(RandomAccessFile raf)
+      throws IOException, DataFormatException
+  {
+    // Find end of central directory record
+    long length = raf.length();
+    int len = (int) Math.min(length, END_MAXLEN);
+    if (len < END_HDR) {
+      return null;
+    }
+    byte[] buf = new byte[len];
+    raf.seek(length - len);
+    raf.readFully(buf);
+    int end = -1;
+    for (int i = len - END_HDR; i >= 0; i--) {
+      if (getInt(buf, i) == END_SIG) {
+        end = i;
+        break;
+      }
+    }
+    if (end == -1) {
+      return null;
+    }
+    long cenSize = getUInt(buf, end + 12);
+    long cenOff = getUInt(buf, end + 16);
+    if (cenOff == 0xFFFFFFFFL || cenSize == 0xFFFFFFFFL
+        || cenOff + cenSize > length) {
+      // ZIP64 or corrupt archive
+      return null;
+    }
+
+    // Read and search central directory
+    byte[] cen = new byte[(int) cenSize];
+    raf.seek(cenOff);
+    raf.readFully(cen);
+    int p = 0;
+    while (p + CEN_HDR <= cen.length) {
+      if (getInt(cen, p) != CEN_SIG) {
+        return null;
+      }
+      int flag = getShort(cen, p + 8);
+      int method = getShort(cen, p + 10);
+      long csize = getUInt(cen, p + 20);
+      long size = getUInt(cen, p + 24);
+      int nameLen = getShort(cen, p + 28);
+      int extraLen = getShort(cen, p + 30);
+      int commentLen = getShort(cen, p + 32);
+      long locOff = getUInt(cen, p + 42);
+      if (p + CEN_HDR + nameLen > cen.length) {
+        return null;
+      }
+
+      if (isManifestName(cen, p + CEN_HDR, nameLen)) {
+        if ((flag & FLAG_ENCRYPTED) != 0 || locOff + LOC_HDR > length) {
+          return null;
+        }
+        byte[] hdr = new byte[LOC_HDR];
+        raf.seek(locOff);
+        raf.readFully(hdr);
+        if (getInt(hdr, 0) != LOC_SIG) {
+          return null;
+        }
+        long dataPos = locOff + LOC_HDR + getShort(hdr, 26) + getShort(hdr, 28);
+        return readData(raf, dataPos, method, csize, size);
+      }
+      p += CEN_HDR + nameLen + extraLen + commentLen;
+    }
+    return NO_MANIFEST;
+  }
+
+  private static byte[] readData(RandomAccessFile raf, long pos, int method,
+                                 long csize, long size)
+      throws IOException, DataFormatException
+  {
+    if (size > MAX_MANIFEST_SIZE || csize > MAX_MANIFEST_SIZE) {
+      return null;
+    }
+    if (method == STORED) {
+      byte[] data = new byte[(int) size];
+      raf.seek(pos);
+      raf.readFully(data);
+      return data;
+    } else if (method == DEFLATED) {
+      return inflate(raf, pos, csize, size);
+    }
+    return null;
+  }
+
+  /**
+   * Inflates entry data starting at the given position. If the sizes are
+   * unknown (-1) data is inflated until the end of the deflate stream.
+   */
+  private static byte[] inflate(RandomAccessFile raf, long pos, long csize,
+                                long size)
+      throws IOException, DataFormatException
+  {
+    Inflater inflater = new Inflater(true);
+    try {
+      raf.seek(pos);
+      byte[] in = new byte[csize >= 0 ? (int) csize + 1 : 4096];
+      ByteArrayOutputStream out = new ByteArrayOutputStream(size >= 0
+          ? (int) size : 1024);
+      byte[] buf = new byte[4096];
+      boolean eof = false;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int n = raf.read(in);
+          if (n <= 0) {
+            if (eof) {
+              throw new DataFormatException("Unexpected end of entry");
+            }
+            // Inflater in nowrap mode may need an extra dummy byte
+            eof = true;
+            in[0] = 0;
+            n = 1;
+          }
+          inflater.setInput(in, 0, n);
+        }
+        int n = inflater.inflate(buf);
+        if (n == 0 && inflater.needsDictionary()) {
+          return null;
+        }
+        out.write(buf, 0, n);
+        if (out.size() > MAX_MANIFEST_SIZE) {
+          return null;
+        }
+      }
+      if (size >= 0 && out.size() != size) {
+        return null;
+      }
+      return out.toByteArray();
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Returns the number of compressed bytes of the deflated entry data
+   * starting at the given position.
+   */
+  private static long skipDeflated(RandomAccessFile raf, long pos)
+      throws IOException, DataFormatException
+  {
+    Inflater inflater = new Inflater(true);
+    try {
+      raf.seek(pos);
+      byte[] in = new byte[4096];
+      byte[] buf = new byte[4096];
+      long read = 0;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int n = raf.read(in);
+          if (n <= 0) {
+            throw new DataFormatException("Unexpected end of entry");
+          }
+          read += n;
+          inflater.setInput(in, 0, n);
+        }
+        if (inflater.inflate(buf) == 0 && inflater.needsDictionary()) {
+          throw new DataFormatException("Dictionary needed");
+        }
+      }
+      return read - inflater.getRemaining();
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static boolean isManifestName(byte[] name)
+  {
+    return isManifestName(name, 0, name.length);
+  }
+
+  private static boolean isManifestName(byte[] b, int off, int len)
+  {
+    if (len != MANIFEST_NAME.length()) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (Character.toUpperCase((char) (b[off + i] & 0xff)) != MANIFEST_NAME
+          .charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int getShort(byte[] b, int off)
+  {
+    return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+  }
+
+  private static int getInt(byte[] b, int off)
+  {
+    return getShort(b, off) | (getShort(b, off + 2) << 16);
+  }
+
+  private static long getUInt(byte[] b, int off)
+  {
+    return getInt(b, off) & 0xFFFFFFFFL;
+  }
+}
@@ -36,6 +36,7 @@ package org.knopflerfish.eclipse.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.jar.Manifest;
 
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
@@ -55,7 +56,22 @@ public class OsgiBundle extends OsgiLibrary implements IOsgiBundle {
       bundleManifest = new BundleManifest(getManifest());
     }
   }
-  
+
+  /**
+   * Creates a bundle from an already known manifest without opening
+   * the jar file.
+   *
+   * @param jar bundle file
+   * @param manifest manifest of bundle, may be null
+   */
+  public OsgiBundle(File jar, Manifest manifest) {
+    super(jar, manifest);
+
+    if (manifest != null) {
+      bundleManifest = new BundleManifest(manifest);
+    }
+  }
+
   /****************************************************************************
    * org.knopflerfish.eclipse.core.IOsgiBundle methods
    ***************************************************************************/
@@ -36,7 +36,6 @@ package org.knopflerfish.eclipse.core;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 /**
@@ -46,7 +45,6 @@ import java.util.jar.Manifest;
 public class OsgiLibrary implements IOsgiLibrary {
 
   private final File file;
-  private final JarFile jar;
   private final Manifest manifest;
   private String source;
   private boolean userDefined =false;
@@ -58,9 +56,19 @@ public class OsgiLibrary implements IOsgiLibrary {
       throw new IOException("Library, " + f + ", does not exist.");
     }
     
-    jar = new JarFile(file);
-    manifest = jar.getManifest();
-    jar.close();
+    manifest = ManifestReader.readManifest(file);
+  }
+
+  /**
+   * Creates a library from an already known manifest, e.g. read from a
+   * repository index, without opening the jar file.
+   *
+   * @param f library file
+   * @param manifest manifest of library, may be null
+   */
+  public OsgiLibrary(File f, Manifest manifest) {
+    this.file = f;
+    this.manifest = manifest;
   }
   
   /****************************************************************************
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.osgi.framework.Version;
+
+/**
+ * Index from exported package name to the exporting bundles and package
+ * versions of a bundle repository.
+ * <p>
+ * The index is built once when the repository is created and then used by
+ * all {@link IBundleRepository} query methods, so a lookup only has to look
+ * at the bundles exporting a package with the requested name.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class PackageIndex {
+
+  private final List<PackageDescription> packages = new ArrayList<PackageDescription>();
+  private final Map<String, List<Export>> exports = new HashMap<String, List<Export>>();
+  private final Map<String, Set<Version>> versions = new HashMap<String, Set<Version>>();
+
+  /**
+   * Adds the packages exported by the given bundle to the index.
+   *
+   * @param bm bundle manifest
+   */
+  public void addBundle(BundleManifest bm)
+  {
+    if (bm == null) {
+      return;
+    }
+
+    PackageDescription[] exported = bm.getExportedPackages();
+    for (int i = 0; i < exported.length; i++) {
+      PackageDescription pd = exported[i];
+      packages.add(pd);
+
+      List<Export> l = exports.get(pd.getPackageName());
+      if (l == null) {
+        l = new ArrayList<Export>(1);
+        exports.put(pd.getPackageName(), l);
+      }
+      l.add(new Export(pd, bm));
+
+      Set<Version> s = versions.get(pd.getPackageName());
+      if (s == null) {
+        s = new LinkedHashSet<Version>();
+        versions.put(pd.getPackageName(), s);
+      }
+      s.add(pd.getVersion());
+    }
+  }
+
+  /**
+   * Returns all exported packages in the order the bundles were added.
+   *
+   * @return array of exported packages
+   */
+  public PackageDescription[] getExportedPackages()
+  {
+    return packages.toArray(new PackageDescription[packages.size()]);
+  }
+
+  /**
+   * Returns manifests for all bundles exporting a package compatible with
+   * the given package.
+   *
+   * @param pd package
+   * @return array of bundle manifests
+   */
+  public BundleManifest[] getExportingBundles(PackageDescription pd)
+  {
+    if (pd == null || pd.getPackageName() == null) {
+      return new BundleManifest[0];
+    }
+    List<Export> l = exports.get(pd.getPackageName());
+    if (l == null) {
+      return new BundleManifest[0];
+    }
+
+    // Exports from the same bundle are always adjacent in the list
+    List<BundleManifest> manifests = new ArrayList<BundleManifest>();
+    for (Export export : l) {
+      if (export.pd.isCompatible(pd)
+          && (manifests.isEmpty() || manifests.get(manifests.size() - 1) != export.manifest)) {
+        manifests.add(export.manifest);
+      }
+    }
+    return manifests.toArray(new BundleManifest[manifests.size()]);
+  }
+
+  /**
+   * Returns true if the given bundle exports a package compatible with the
+   * given package.
+   *
+   * @param bm bundle manifest, must have been added to this index
+   * @param pd package
+   * @return true if bundle exports a compatible package; otherwise false
+   */
+  public boolean hasExportedPackage(BundleManifest bm, PackageDescription pd)
+  {
+    if (pd == null || pd.getPackageName() == null) {
+      return false;
+    }
+    List<Export> l = exports.get(pd.getPackageName());
+    if (l == null) {
+      return false;
+    }
+    for (Export export : l) {
+      if (export.manifest == bm && export.pd.isCompatible(pd)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns all versions of the given exported package.
+   *
+   * @param packageName package name
+   * @return array of package versions or null if package name is null
+   */
+  public Version[] getPackageVersions(String packageName)
+  {
+    if (packageName == null) {
+      return null;
+    }
+    Set<Version> s = versions.get(packageName);
+    if (s == null) {
+      return new Version[0];
+    }
+    return s.toArray(new Version[s.size()]);
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class Export {
+    final PackageDescription pd;
+    final BundleManifest manifest;
+
+    Export(PackageDescription pd, BundleManifest manifest)
+    {
+      this.pd = pd;
+      this.manifest = manifest;
+    }
+  }
+}
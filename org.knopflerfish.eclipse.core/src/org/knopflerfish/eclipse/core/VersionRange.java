@@ -36,10 +36,17 @@ import org.osgi.framework.Version;
 
 public class VersionRange {
 
-  Version lowerBound;
-  Version upperBound;
-  boolean lowerBoundInclusive;
-  boolean upperBoundInclusive;
+  // Versions without qualifier encoded as comparable longs, see key()
+  private static final int KEY_BITS = 21;
+  private static final int KEY_MAX = (1 << KEY_BITS) - 1;
+  private static final long NO_KEY = -1;
+
+  final Version lowerBound;
+  final Version upperBound;
+  final boolean lowerBoundInclusive;
+  final boolean upperBoundInclusive;
+  private final long lowerKey;
+  private final long upperKey;
 
   public VersionRange()
   {
@@ -86,6 +93,8 @@ public class VersionRange {
       lowerBound = new Version(s.substring(0, splitPos).trim());
       upperBound = new Version(s.substring(splitPos + 1, s.length()).trim());
     }
+    lowerKey = key(lowerBound);
+    upperKey = upperBound == null ? NO_KEY : key(upperBound);
   }
 
   /**
@@ -98,22 +107,16 @@ public class VersionRange {
    */
   public boolean contains(Version ver)
   {
-    boolean res = false;
+    long key = key(ver);
+    int cmp = compare(lowerBound, lowerKey, ver, key);
     if (null == upperBound) {
-      res = lowerBound.compareTo(ver) <= 0;
-    } else {
-      if (lowerBoundInclusive) {
-        res = lowerBound.compareTo(ver) <= 0;
-      } else {
-        res = lowerBound.compareTo(ver) < 0;
-      }
-      if (upperBoundInclusive) {
-        res &= ver.compareTo(upperBound) <= 0;
-      } else {
-        res &= ver.compareTo(upperBound) < 0;
-      }
+      return cmp <= 0;
+    }
+    if (lowerBoundInclusive ? cmp > 0 : cmp >= 0) {
+      return false;
     }
-    return res;
+    cmp = compare(ver, key, upperBound, upperKey);
+    return upperBoundInclusive ? cmp <= 0 : cmp < 0;
   }
 
   public boolean isRange()
@@ -126,6 +129,33 @@ public class VersionRange {
     return !isRange() && Version.emptyVersion.equals(lowerBound);
   }
 
+  // ***************************************************************************
+  // Private utility methods
+  // ***************************************************************************
+
+  /**
+   * Encodes major, minor and micro of a version into a long that compares
+   * as the version. Versions with a qualifier or too large components can
+   * not be encoded.
+   */
+  private static long key(Version v)
+  {
+    if (v.getQualifier().length() > 0 || v.getMajor() > KEY_MAX
+        || v.getMinor() > KEY_MAX || v.getMicro() > KEY_MAX) {
+      return NO_KEY;
+    }
+    return ((long) v.getMajor() << (2 * KEY_BITS))
+        | ((long) v.getMinor() << KEY_BITS) | v.getMicro();
+  }
+
+  private static int compare(Version v1, long key1, Version v2, long key2)
+  {
+    if (key1 == NO_KEY || key2 == NO_KEY) {
+      return v1.compareTo(v2);
+    }
+    return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+  }
+
   // ***************************************************************************
   // java.lang.Object methods
   // ***************************************************************************
@@ -162,6 +192,21 @@ public class VersionRange {
     return true;
   }
   
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#hashCode()
+   */
+  public int hashCode()
+  {
+    int hash = lowerBound.hashCode();
+    if (upperBound != null) {
+      hash = 31 * hash + upperBound.hashCode();
+    }
+    return 4 * hash + (lowerBoundInclusive ? 2 : 0)
+        + (upperBoundInclusive ? 1 : 0);
+  }
+  
   /*
    * (non-Javadoc)
    * 
@@ -57,8 +57,10 @@ import org.eclipse.jdt.launching.IVMInstallChangedListener;
 import org.eclipse.jdt.launching.JavaRuntime;
 import org.eclipse.jdt.launching.PropertyChangeEvent;
 import org.knopflerfish.eclipse.core.OsgiLibrary;
+import org.knopflerfish.eclipse.core.pkg.ProjectRegistry;
 import org.knopflerfish.eclipse.core.preferences.EnvironmentPreference;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
+import org.knopflerfish.eclipse.core.project.BundleContentsIndex;
 import org.knopflerfish.eclipse.core.project.classpath.ClasspathUtil;
 import org.osgi.framework.BundleContext;
 
@@ -216,6 +218,11 @@ public class OsgiPlugin extends Plugin implements IResourceChangeListener, IVMIn
    * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
    */
   public void resourceChanged(IResourceChangeEvent event) {
+    // Update workspace registry of bundle projects
+    ProjectRegistry.getDefault().resourceChanged(event.getDelta());
+    // Update contents of bundle JARs
+    BundleContentsIndex.getDefault().resourceChanged(event.getDelta());
+
     try {
       ResourceDeltaVisitor visitor = new ResourceDeltaVisitor();
       event.getDelta().accept(visitor);
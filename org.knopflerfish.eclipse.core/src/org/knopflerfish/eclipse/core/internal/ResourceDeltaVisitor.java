@@ -34,21 +34,14 @@
 
 package org.knopflerfish.eclipse.core.internal;
 
-import java.util.Map;
-
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.jdt.core.IClasspathEntry;
-import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.JavaCore;
 import org.knopflerfish.eclipse.core.IBundleProject;
 import org.knopflerfish.eclipse.core.Osgi;
-import org.knopflerfish.eclipse.core.project.BundleProject;
 
 /**
  * @author Anders Rimn, Gatespace Telematics
@@ -81,17 +74,11 @@ public class ResourceDeltaVisitor implements IResourceDeltaVisitor {
       IProject project = file.getProject();
       if (IBundleProject.CLASSPATH_FILE.equals(file.getName())) {
 
-        if (!isClasspathSynched(project)) {
-          // Update manifest
-          Runnable runnable = new SynchManifestRunnable(project);
-          new Thread(runnable).start();
-        }
+        // Update manifest
+        SynchJob.synch(project, SynchJob.SYNCH_MANIFEST);
       } else if (IBundleProject.MANIFEST_FILE.equals(file.getName())) {
-        if (!isClasspathSynched(project)) {
-          // Update classpath
-          Runnable runnable = new SynchClasspathRunnable(project);
-          new Thread(runnable).start();
-        }
+        // Update classpath
+        SynchJob.synch(project, SynchJob.SYNCH_CLASSPATH);
       }
       return false;
     case IResource.FOLDER:
@@ -108,77 +95,4 @@ public class ResourceDeltaVisitor implements IResourceDeltaVisitor {
       return false;
     }
   }
-
-  /****************************************************************************
-   * Private utility methods
-   ***************************************************************************/
-
-  private boolean isClasspathSynched(IProject project) throws CoreException {
-
-    boolean synchClasspath = false;
-    
-    // Get references to project
-    IJavaProject javaProject = JavaCore.create(project);
-    BundleProject bundleProject = new BundleProject(javaProject);
-
-    // Check if bundle classpath is out of synch
-    Map contents = bundleProject.getBundlePackDescription().getContentsMap(false);
-    String[] bundleClassPath = bundleProject.getBundleManifest().getBundleClassPath();
-    if (bundleClassPath.length == 0) {
-      bundleClassPath = new String[] {"."};
-    }
-    IClasspathEntry [] rawClassPath = javaProject.getRawClasspath();
-    
-    int idx = 0;
-    int prevEntryKind = -1;
-    for (int i=0; i<rawClassPath.length; i++) {
-      IClasspathEntry entry = rawClassPath[i];
-
-      // Check if source entry, if multiple source entries exist
-      // they must not exist any lib entries in between otherwise
-      // the classpath in the bundle manifest can not be created
-      // correctly
-      if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE && 
-          prevEntryKind != IClasspathEntry.CPE_SOURCE) {
-        prevEntryKind = IClasspathEntry.CPE_SOURCE;
-        if (idx == 0 && bundleClassPath.length == 0) {
-          continue;
-        } else if (idx > bundleClassPath.length-1) {
-          // Check array bounds
-          synchClasspath = true;
-          break;
-        } else if (!".".equals(bundleClassPath[idx])) {
-          synchClasspath = true;
-          break;
-        } else {
-          idx = idx +1;
-        }
-      } else if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
-        prevEntryKind = IClasspathEntry.CPE_LIBRARY;
-        // Check that library is a member of this project
-        IResource lib = project.findMember(entry.getPath().removeFirstSegments(1));
-        if (lib != null) {
-          // Check array bounds
-          if (idx > bundleClassPath.length-1) {
-            synchClasspath = true;
-            break;
-          }
-          
-          IPath path = (IPath) contents.get(bundleClassPath[idx]);
-          if (!entry.getPath().equals(path)) {
-            synchClasspath = true;
-            break;
-          }
-          idx = idx+1;
-        }
-      }
-    }
-
-    if(idx != bundleClassPath.length) {
-      synchClasspath = true; 
-    }
-    
-    return !synchClasspath;
-  }
 }
-
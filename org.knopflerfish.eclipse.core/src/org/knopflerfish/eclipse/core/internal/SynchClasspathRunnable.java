@@ -35,6 +35,7 @@
 package org.knopflerfish.eclipse.core.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -159,6 +160,11 @@ public class SynchClasspathRunnable implements IWorkspaceRunnable, Runnable {
     IJavaProject javaProject = bundleProject.getJavaProject();
     IPath outPath = javaProject.getOutputLocation();
     
+    // Setting the raw classpath makes JDT rebuild the project and its
+    // dependents, skip it if nothing has changed
+    if (Arrays.equals(rawClasspath, javaProject.getRawClasspath())) {
+      return;
+    }
     javaProject.setRawClasspath(
         rawClasspath,
         outPath,
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.project.BundleProject;
+
+/**
+ * Job keeping the bundle classpath in the manifest and the Java build path
+ * of a bundle project in synch.
+ * <p>
+ * There is at most one job per project. Requests are delayed a short time
+ * and all requests made before the job runs are coalesced into one run.
+ * A running job also takes over the requests of the jobs of other projects
+ * that are still waiting, and synchs all these projects in one workspace
+ * operation with the projects as scheduling rule. Changing e.g. the
+ * manifests of many projects at once therefore only results in one build.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class SynchJob extends Job {
+
+  /**
+   * Build path has changed, manifest shall be updated.
+   */
+  public static final int SYNCH_MANIFEST = 1;
+  /**
+   * Manifest has changed, build path shall be updated.
+   */
+  public static final int SYNCH_CLASSPATH = 2;
+
+  // Delay before a requested synch is run
+  private static final long DELAY = 500;
+
+  // Project -> scheduled or running job
+  private static final Map<IProject, SynchJob> jobs = new LinkedHashMap<IProject, SynchJob>();
+
+  private final IProject project;
+  // Requested kinds, not yet handled by the job
+  private int pending = 0;
+
+  /**
+   * Requests a synch of the given project. If a job is already waiting for
+   * the project the request is merged with that job.
+   *
+   * @param project bundle project
+   * @param kind {@link #SYNCH_MANIFEST} or {@link #SYNCH_CLASSPATH}
+   */
+  public static void synch(IProject project, int kind)
+  {
+    synchronized (jobs) {
+      SynchJob job = jobs.get(project);
+      if (job == null) {
+        job = new SynchJob(project);
+        jobs.put(project, job);
+      }
+      job.request(kind);
+    }
+  }
+
+  private SynchJob(IProject project)
+  {
+    super("Synchronize bundle classpath of " + project.getName());
+    this.project = project;
+    setSystem(true);
+    setPriority(Job.SHORT);
+  }
+
+  /****************************************************************************
+   * org.eclipse.core.runtime.jobs.Job methods
+   ***************************************************************************/
+  /*
+   *  (non-Javadoc)
+   * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+   */
+  protected IStatus run(IProgressMonitor monitor)
+  {
+    // Take over the requests of jobs that have not started yet. A job that
+    // is put to sleep can not start, and is then canceled.
+    Map<IProject, Integer> requests = new LinkedHashMap<IProject, Integer>();
+    synchronized (jobs) {
+      for (Iterator<SynchJob> i = jobs.values().iterator(); i.hasNext();) {
+        SynchJob job = i.next();
+        if (job == this) {
+          requests.put(project, Integer.valueOf(takePending()));
+        } else if (job.sleep()) {
+          job.cancel();
+          i.remove();
+          requests.put(job.project, Integer.valueOf(job.takePending()));
+        }
+      }
+    }
+
+    try {
+      synch(requests, monitor);
+    } catch (CoreException e) {
+      OsgiPlugin.log(e.getStatus());
+    } catch (OperationCanceledException e) {
+      return Status.CANCEL_STATUS;
+    } finally {
+      synchronized (jobs) {
+        synchronized (this) {
+          if (pending == 0) {
+            jobs.remove(project);
+          }
+        }
+      }
+    }
+    return Status.OK_STATUS;
+  }
+
+  /****************************************************************************
+   * Private utility methods
+   ***************************************************************************/
+
+  private synchronized void request(int kind)
+  {
+    pending |= kind;
+    // Merged with the job if it is waiting, rerun when done if it is running
+    schedule(DELAY);
+  }
+
+  private synchronized int takePending()
+  {
+    int kind = pending;
+    pending = 0;
+    return kind;
+  }
+
+  /**
+   * Synchs the given projects in one workspace operation.
+   */
+  private static void synch(final Map<IProject, Integer> requests,
+                            IProgressMonitor monitor) throws CoreException
+  {
+    if (requests.isEmpty()) {
+      return;
+    }
+
+    ISchedulingRule[] rules = requests.keySet().toArray(
+        new ISchedulingRule[requests.size()]);
+    IWorkspace workspace = ResourcesPlugin.getWorkspace();
+    workspace.run(new IWorkspaceRunnable() {
+      public void run(IProgressMonitor monitor) throws CoreException
+      {
+        SubMonitor progress = SubMonitor.convert(monitor,
+            "Synchronize bundle classpath", requests.size());
+        for (Map.Entry<IProject, Integer> e : requests.entrySet()) {
+          try {
+            // Throws OperationCanceledException if canceled
+            synch(e.getKey(), e.getValue().intValue(), progress.split(1));
+          } catch (CoreException ce) {
+            // Continue with the other projects
+            OsgiPlugin.log(ce.getStatus());
+          }
+        }
+      }
+    }, MultiRule.combine(rules), IWorkspace.AVOID_UPDATE, monitor);
+  }
+
+  private static void synch(IProject project, int kind, IProgressMonitor monitor)
+      throws CoreException
+  {
+    try {
+      if (!project.isOpen() || !project.hasNature(Osgi.NATURE_ID)
+          || isClasspathSynched(project)) {
+        return;
+      }
+      if ((kind & SYNCH_MANIFEST) != 0) {
+        new SynchManifestRunnable(project).run(monitor);
+      } else if ((kind & SYNCH_CLASSPATH) != 0) {
+        new SynchClasspathRunnable(project).run(monitor);
+      }
+    } finally {
+      monitor.done();
+    }
+  }
+
+  private static boolean isClasspathSynched(IProject project)
+      throws CoreException
+  {
+    boolean synchClasspath = false;
+    
+    // Get references to project
+    IJavaProject javaProject = JavaCore.create(project);
+    BundleProject bundleProject = new BundleProject(javaProject);
+
+    // Check if bundle classpath is out of synch
+    Map contents = bundleProject.getBundlePackDescription().getContentsMap(false);
+    String[] bundleClassPath = bundleProject.getBundleManifest().getBundleClassPath();
+    if (bundleClassPath.length == 0) {
+      bundleClassPath = new String[] {"."};
+    }
+    IClasspathEntry [] rawClassPath = javaProject.getRawClasspath();
+    
+    int idx = 0;
+    int prevEntryKind = -1;
+    for (int i=0; i<rawClassPath.length; i++) {
+      IClasspathEntry entry = rawClassPath[i];
+
+      // Check if source entry, if multiple source entries exist
+      // they must not exist any lib entries in between otherwise
+      // the classpath in the bundle manifest can not be created
+      // correctly
+      if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE && 
+          prevEntryKind != IClasspathEntry.CPE_SOURCE) {
+        prevEntryKind = IClasspathEntry.CPE_SOURCE;
+        if (idx == 0 && bundleClassPath.length == 0) {
+          continue;
+        } else if (idx > bundleClassPath.length-1) {
+          // Check array bounds
+          synchClasspath = true;
+          break;
+        } else if (!".".equals(bundleClassPath[idx])) {
+          synchClasspath = true;
+          break;
+        } else {
+          idx = idx +1;
+        }
+      } else if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
+        prevEntryKind = IClasspathEntry.CPE_LIBRARY;
+        // Check that library is a member of this project
+        IResource lib = project.findMember(entry.getPath().removeFirstSegments(1));
+        if (lib != null) {
+          // Check array bounds
+          if (idx > bundleClassPath.length-1) {
+            synchClasspath = true;
+            break;
+          }
+          
+          IPath path = (IPath) contents.get(bundleClassPath[idx]);
+          if (!entry.getPath().equals(path)) {
+            synchClasspath = true;
+            break;
+          }
+          idx = idx+1;
+        }
+      }
+    }
+
+    if(idx != bundleClassPath.length) {
+      synchClasspath = true; 
+    }
+    
+    return !synchClasspath;
+  }
+}
@@ -46,6 +46,7 @@ public interface IOsgiLaunchConfigurationConstants {
   public String ATTR_FRAMEWORK    = PACKAGE+"install_name";
   public String ATTR_INSTANCE_DIR = PACKAGE+"instance_dir";
   public String ATTR_CLEAR_CACHE  = PACKAGE+"instance_init";
+  public String ATTR_UPDATE_BUNDLES = PACKAGE+"instance_update_bundles";
   public String ATTR_START_LEVEL  = PACKAGE+"startlevel";
   public String ATTR_PROPERTIES   = PACKAGE+"instance_properties";
 
@@ -53,6 +54,9 @@ public interface IOsgiLaunchConfigurationConstants {
   public String ATTR_BUNDLES            = PACKAGE+"bundles";
   public String ATTR_BUNDLE_PROJECTS    = PACKAGE+"bundle_projects";
 
+  // Launch attributes
+  public String ATTR_LAUNCH_TIMINGS     = PACKAGE+"launch_timings";
+
   // Error codes
   public int ERR_UNSPECIFIED_MAIN_CLASS       = 0;
   public int ERR_UNSPECIFIED_VENDOR_NAME      = 1;
@@ -58,15 +58,18 @@ import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
 import org.eclipse.jdt.launching.IVMInstall;
 import org.eclipse.jdt.launching.IVMRunner;
 import org.eclipse.jdt.launching.VMRunnerConfiguration;
+import org.knopflerfish.eclipse.core.BundleCache;
 import org.knopflerfish.eclipse.core.IFrameworkConfiguration;
 import org.knopflerfish.eclipse.core.IFrameworkDefinition;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.IOsgiLibrary;
 import org.knopflerfish.eclipse.core.Osgi;
-import org.knopflerfish.eclipse.core.OsgiBundle;
 import org.knopflerfish.eclipse.core.Property;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.pkg.ProjectRegistry;
 import org.knopflerfish.eclipse.core.preferences.FrameworkPreference;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
+import org.knopflerfish.eclipse.core.project.BundlePackager;
 import org.knopflerfish.eclipse.core.project.BundleProject;
 import org.knopflerfish.eclipse.core.project.ProjectUtil;
 
@@ -91,15 +94,18 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
                      ILaunch launch,
                      IProgressMonitor monitor) throws CoreException
   {
+    PhaseTimer timer = new PhaseTimer();
 
     // Verify framework distribution
     FrameworkPreference distribution = verifyFrameworkDistribution(configuration);
 
     // Verify directory used for this OSGi configuration
     File instanceDir = verifyInstanceDirectory(configuration);
+    timer.phase("Verify framework and instance directory");
 
     // Bundles
     Map<IOsgiBundle, BundleLaunchInfo> bundleMap = verifyBundles(configuration);
+    timer.phase("Read bundles (" + bundleMap.size() + ")");
     Map<IJavaProject, BundleLaunchInfo> projectMap = verifyProjects(configuration);
 
     // Create configuration
@@ -125,6 +131,8 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
 
     // Check if bundle cache shall be cleared
     conf.clearBundleCache(getStartClean(configuration));
+    conf.setUpdateBundles(configuration.getAttribute(
+        IOsgiLaunchConfigurationConstants.ATTR_UPDATE_BUNDLES, false));
 
     // Set initial start level
     conf.setStartLevel(getStartLevel(configuration));
@@ -137,18 +145,31 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
       }
     }
 
-    // Add projects to be launched
+    // Add projects to be launched, wait for JARs still being packaged
+    if (projectMap != null && !projectMap.isEmpty()) {
+      try {
+        BundlePackager.join(monitor);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
     if (projectMap != null) {
       for (Map.Entry<IJavaProject, BundleLaunchInfo> entry : projectMap
           .entrySet()) {
         IJavaProject project = entry.getKey();
         try {
-          BundleProject bundleProject = new BundleProject(project);
+          // Use manifest from workspace registry if available
+          String name = project.getProject().getName();
+          BundleManifest manifest = ProjectRegistry.getDefault()
+              .getBundleManifest(name);
+          if (manifest == null) {
+            manifest = new BundleProject(project).getBundleManifest();
+          }
           IFolder folder = root.getFolder(project.getOutputLocation());
           File jarFile = new File(folder.getLocation().toString(),
-              ProjectUtil.createFileName(bundleProject));
-          IOsgiBundle bundle = new OsgiBundle(jarFile);
+              ProjectUtil.createFileName(name, manifest));
+          IOsgiBundle bundle = BundleCache.getBundle(jarFile);
           conf.addBundle(bundle, entry.getValue());
         } catch (IOException e) {
           abort("Error reading JAR file for bundle project ["
@@ -158,12 +179,16 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
       }
     }
 
+    timer.phase("Read bundle projects ("
+        + (projectMap == null ? 0 : projectMap.size()) + ")");
+
     try {
       conf.create();
     } catch (IOException e) {
       abort("Failed to create framework configuration.", e,
           IOsgiLaunchConfigurationConstants.ERR_CREATE_CONFIGURATION);
     }
+    timer.phase("Write framework configuration");
     runConfig.setWorkingDirectory(conf.getWorkingDirectory().getAbsolutePath());
 
     // Set program and VM arguments 
@@ -175,6 +200,7 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
 
     // Verify JRE installation
     IVMInstall vm = verifyVMInstall(configuration);
+    timer.phase("Prepare VM");
     /*
     ISourceLookupDirector sourceLocator = new BundleLookupDirector();
     sourceLocator.setSourcePathComputer(getLaunchManager()
@@ -184,9 +210,14 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
     launch.setSourceLocator(sourceLocator);
     */
 
+    // Timings are shown in the console of the launched process
+    launch.setAttribute(IOsgiLaunchConfigurationConstants.ATTR_LAUNCH_TIMINGS,
+        timer.toString());
+
     // Launch the configuration
     IVMRunner runner = vm.getVMRunner(mode);
     runner.run(runConfig, launch, monitor);
+    conf.launched();
   }
 
   public FrameworkPreference verifyFrameworkDistribution(ILaunchConfiguration configuration)
@@ -259,7 +290,8 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
     Map<IOsgiBundle, BundleLaunchInfo> bundles = new HashMap<IOsgiBundle, BundleLaunchInfo>();
     for (Map.Entry<String, String> entry : map.entrySet()) {
       try {
-        OsgiBundle bundle = new OsgiBundle(new File(entry.getKey()));
+        // Only bundles changed since last launch are opened
+        IOsgiBundle bundle = BundleCache.getBundle(new File(entry.getKey()));
         BundleLaunchInfo info = new BundleLaunchInfo(entry.getValue());
         bundles.put(bundle, info);
       } catch (Exception e) {
@@ -398,4 +430,47 @@ public class OsgiLaunchDelegate extends AbstractJavaLaunchConfigurationDelegate
     }
     return 1;
   }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+
+  /**
+   * Measures the time spent in each phase of a launch.
+   */
+  private static class PhaseTimer {
+    private final long start = System.currentTimeMillis();
+    private long last = start;
+    private final StringBuffer buf = new StringBuffer();
+
+    /**
+     * Ends the current phase.
+     */
+    void phase(String name)
+    {
+      long now = System.currentTimeMillis();
+      append(name, now - last);
+      last = now;
+    }
+
+    public String toString()
+    {
+      StringBuffer report = new StringBuffer("Launch preparation:\n");
+      report.append(buf);
+      int len = buf.length();
+      append("Total", last - start);
+      report.append(buf.substring(len));
+      buf.setLength(len);
+      return report.toString();
+    }
+
+    private void append(String name, long time)
+    {
+      buf.append("  ");
+      buf.append(name);
+      buf.append(": ");
+      buf.append(time);
+      buf.append(" ms\n");
+    }
+  }
 }
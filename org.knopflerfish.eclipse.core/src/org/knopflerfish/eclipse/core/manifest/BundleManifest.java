@@ -38,10 +38,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
+import org.knopflerfish.eclipse.core.Interner;
 import org.osgi.framework.Version;
 
 /**
@@ -76,6 +79,10 @@ public class BundleManifest extends Manifest {
   public static final String BUILT_FROM = "Built-From";
   public static final String BUILD_DATE = "Build-Date";
 
+  // Parsed header values, the raw value is kept to detect changes made
+  // directly to the main attributes
+  private final Map<String, ParsedHeader> parsedHeaders = new ConcurrentHashMap<String, ParsedHeader>();
+
   public BundleManifest()
   {
     super();
@@ -145,7 +152,7 @@ public class BundleManifest extends Manifest {
     String s = getAttribute(BUNDLE_VERSION);
     Version version = Version.emptyVersion;
     try {
-      version = Version.parseVersion(s);
+      version = Interner.parseVersion(s);
     } catch (IllegalArgumentException e) {
     }
     return version;
@@ -223,6 +230,10 @@ public class BundleManifest extends Manifest {
   public String[] getCategories()
   {
     String attr = getAttribute(BUNDLE_CATEGORY);
+    String[] parsed = (String[]) getParsedHeader(BUNDLE_CATEGORY, attr);
+    if (parsed != null) {
+      return parsed.clone();
+    }
     List<String> categories = new ArrayList<String>();
     if (attr != null) {
       StringTokenizer st = new StringTokenizer(attr, ",");
@@ -231,7 +242,9 @@ public class BundleManifest extends Manifest {
       }
     }
 
-    return categories.toArray(new String[categories.size()]);
+    parsed = categories.toArray(new String[categories.size()]);
+    setParsedHeader(BUNDLE_CATEGORY, attr, parsed);
+    return parsed.clone();
   }
 
   public void setCategories(String[] value)
@@ -253,6 +266,10 @@ public class BundleManifest extends Manifest {
   public String[] getBundleClassPath()
   {
     String attr = getAttribute(BUNDLE_CLASSPATH);
+    String[] parsed = (String[]) getParsedHeader(BUNDLE_CLASSPATH, attr);
+    if (parsed != null) {
+      return parsed.clone();
+    }
     List<String> classPath = new ArrayList<String>();
     if (attr != null) {
       StringTokenizer st = new StringTokenizer(attr, ",");
@@ -261,7 +278,9 @@ public class BundleManifest extends Manifest {
       }
     }
 
-    return classPath.toArray(new String[classPath.size()]);
+    parsed = classPath.toArray(new String[classPath.size()]);
+    setParsedHeader(BUNDLE_CLASSPATH, attr, parsed);
+    return parsed.clone();
   }
 
   public void setBundleClassPath(String[] value)
@@ -282,11 +301,18 @@ public class BundleManifest extends Manifest {
 
   public PackageDescription[] getImportedPackages()
   {
-
+    String attr = getAttribute(IMPORT_PACKAGE);
+    PackageDescription[] parsed = (PackageDescription[]) getParsedHeader(
+        IMPORT_PACKAGE, attr);
+    if (parsed != null) {
+      return copy(parsed);
+    }
     List<PackageDescription> importedPackages = PackageDescription.parseNames(
-        getAttribute(IMPORT_PACKAGE), true);
-    return importedPackages.toArray(new PackageDescription[importedPackages
+        attr, true);
+    parsed = importedPackages.toArray(new PackageDescription[importedPackages
         .size()]);
+    setParsedHeader(IMPORT_PACKAGE, attr, parsed);
+    return copy(parsed);
   }
 
   public void setImportedPackages(PackageDescription[] value)
@@ -337,10 +363,23 @@ public class BundleManifest extends Manifest {
 
   public PackageDescription[] getExportedPackages()
   {
+    return copy(getParsedExportedPackages());
+  }
+
+  private PackageDescription[] getParsedExportedPackages()
+  {
+    String attr = getAttribute(EXPORT_PACKAGE);
+    PackageDescription[] parsed = (PackageDescription[]) getParsedHeader(
+        EXPORT_PACKAGE, attr);
+    if (parsed != null) {
+      return parsed;
+    }
     List<PackageDescription> exportedPackages = PackageDescription.parseNames(
-        getAttribute(EXPORT_PACKAGE), false);
-    return exportedPackages.toArray(new PackageDescription[exportedPackages
+        attr, false);
+    parsed = exportedPackages.toArray(new PackageDescription[exportedPackages
         .size()]);
+    setParsedHeader(EXPORT_PACKAGE, attr, parsed);
+    return parsed;
   }
 
   public void setExportedPackages(PackageDescription[] value)
@@ -365,6 +404,12 @@ public class BundleManifest extends Manifest {
     if (attr == null)
       return new NativeCodeClause[0];
 
+    NativeCodeClause[] parsed = (NativeCodeClause[]) getParsedHeader(
+        BUNDLE_NATIVECODE, attr);
+    if (parsed != null) {
+      return copy(parsed);
+    }
+
     List<NativeCodeClause> nativeCodeClauses = new ArrayList<NativeCodeClause>();
     StringTokenizer st = new StringTokenizer(attr, ",");
     while (st.hasMoreTokens()) {
@@ -374,8 +419,10 @@ public class BundleManifest extends Manifest {
       }
     }
 
-    return nativeCodeClauses.toArray(new NativeCodeClause[nativeCodeClauses
+    parsed = nativeCodeClauses.toArray(new NativeCodeClause[nativeCodeClauses
         .size()]);
+    setParsedHeader(BUNDLE_NATIVECODE, attr, parsed);
+    return copy(parsed);
   }
 
   public String[] getExecutionEnvironments()
@@ -413,7 +460,7 @@ public class BundleManifest extends Manifest {
    ***************************************************************************/
   public boolean hasExportedPackage(PackageDescription pd)
   {
-    PackageDescription[] exportedPackages = getExportedPackages();
+    PackageDescription[] exportedPackages = getParsedExportedPackages();
     for (int i = 0; i < exportedPackages.length; i++) {
       if (exportedPackages[i].isCompatible(pd))
         return true;
@@ -447,5 +494,55 @@ public class BundleManifest extends Manifest {
     } else {
       attr.putValue(key, value);
     }
+    parsedHeaders.remove(key);
+  }
+
+  /****************************************************************************
+   * Parsed header cache
+   ***************************************************************************/
+  // Cached elements are mutable, callers always get copies
+  private static PackageDescription[] copy(PackageDescription[] packages)
+  {
+    PackageDescription[] copy = new PackageDescription[packages.length];
+    for (int i = 0; i < packages.length; i++) {
+      copy[i] = new PackageDescription(packages[i]);
+    }
+    return copy;
+  }
+
+  private static NativeCodeClause[] copy(NativeCodeClause[] clauses)
+  {
+    NativeCodeClause[] copy = new NativeCodeClause[clauses.length];
+    for (int i = 0; i < clauses.length; i++) {
+      copy[i] = new NativeCodeClause(clauses[i]);
+    }
+    return copy;
+  }
+
+  private Object getParsedHeader(String key, String value)
+  {
+    ParsedHeader header = parsedHeaders.get(key);
+    if (header == null || value == null || !value.equals(header.value)) {
+      return null;
+    }
+    return header.parsed;
+  }
+
+  private void setParsedHeader(String key, String value, Object parsed)
+  {
+    if (value != null) {
+      parsedHeaders.put(key, new ParsedHeader(value, parsed));
+    }
+  }
+
+  private static class ParsedHeader {
+    final String value;
+    final Object parsed;
+
+    ParsedHeader(String value, Object parsed)
+    {
+      this.value = value;
+      this.parsed = parsed;
+    }
   }
 }
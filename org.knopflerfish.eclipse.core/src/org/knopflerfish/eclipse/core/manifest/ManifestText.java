@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.manifest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model of the text of a manifest file, used to edit main attributes without
+ * changing the rest of the text.
+ * <p>
+ * The position of every main attribute, including its continuation lines,
+ * is indexed once when the model is created. Changes made with
+ * {@link #setAttribute(String, String)} are collected and applied in one
+ * pass when the text is requested, so any number of changes costs time
+ * proportional to the size of the text.
+ * </p>
+ * <p>
+ * Attribute names are matched case insensitively, as in
+ * {@link java.util.jar.Attributes}. New attributes are added last in the
+ * main section, in the order they were first set.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class ManifestText {
+
+  private static final int MAX_LINE_LENGTH_EXCL_NEWLINE = 70;
+  private static final String NEWLINE = "\r\n";
+
+  private final String text;
+  // Main attributes in text order
+  private final List<Header> headers = new ArrayList<Header>();
+  // Lower case name -> first main attribute with that name
+  private final Map<String, Header> headersByName = new HashMap<String, Header>();
+  // Offset of the line ending the main section, or text length
+  private int mainEnd;
+
+  // Lower case name -> change
+  private final Map<String, Change> changes = new LinkedHashMap<String, Change>();
+
+  /**
+   * Creates a model of the given manifest text.
+   *
+   * @param text manifest text
+   */
+  public ManifestText(String text)
+  {
+    this.text = text == null ? "" : text;
+    parse();
+  }
+
+  /**
+   * Returns the line number of the given main attribute in the text this
+   * model was created from.
+   *
+   * @param attr attribute name
+   * @return line number, first line is 1, or -1 if attribute is not found
+   */
+  public int getAttributeLine(String attr)
+  {
+    Header header = headersByName.get(key(attr));
+    return header == null ? -1 : header.line;
+  }
+
+  /**
+   * Sets a main attribute. The attribute is removed if the value is null or
+   * empty.
+   *
+   * @param attr attribute name
+   * @param value attribute value
+   */
+  public void setAttribute(String attr, String value)
+  {
+    String key = key(attr);
+    Change change = changes.get(key);
+    if (change == null) {
+      changes.put(key, new Change(attr, value));
+    } else {
+      change.value = value;
+    }
+  }
+
+  /**
+   * Removes a main attribute.
+   *
+   * @param attr attribute name
+   */
+  public void removeAttribute(String attr)
+  {
+    setAttribute(attr, null);
+  }
+
+  /**
+   * Returns the manifest text with all changes applied.
+   *
+   * @return manifest text
+   */
+  public String getText()
+  {
+    if (changes.isEmpty()) {
+      return text;
+    }
+
+    StringBuffer buf = new StringBuffer(text.length() + 256);
+    int pos = 0;
+    for (Iterator<Header> i = headers.iterator(); i.hasNext();) {
+      Header header = i.next();
+      String key = key(header.name);
+      Change change = changes.get(key);
+      if (change == null || headersByName.get(key) != header) {
+        continue;
+      }
+      buf.append(text, pos, header.start);
+      if (hasValue(change.value)) {
+        buf.append(createAttributeLine(change.name, change.value));
+      }
+      pos = header.end;
+    }
+    buf.append(text, pos, mainEnd);
+
+    // Add new attributes last in main section
+    boolean first = true;
+    for (Iterator<Map.Entry<String, Change>> i = changes.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<String, Change> entry = i.next();
+      Change change = entry.getValue();
+      if (headersByName.containsKey(entry.getKey()) || !hasValue(change.value)) {
+        continue;
+      }
+      if (first && buf.length() > 0 && !isNewline(buf.charAt(buf.length() - 1))) {
+        buf.append(NEWLINE);
+      }
+      first = false;
+      buf.append(createAttributeLine(change.name, change.value));
+    }
+    buf.append(text, mainEnd, text.length());
+    return buf.toString();
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void parse()
+  {
+    int len = text.length();
+    int pos = 0;
+    int line = 1;
+    Header header = null;
+    mainEnd = len;
+
+    while (pos < len) {
+      // Find end of line, lines end with CR, LF or CR LF
+      int eol = pos;
+      while (eol < len && !isNewline(text.charAt(eol))) {
+        eol++;
+      }
+      int next = eol;
+      if (next < len && text.charAt(next) == '\r') {
+        next++;
+      }
+      if (next < len && text.charAt(next) == '\n') {
+        next++;
+      }
+
+      if (eol == pos) {
+        // Empty line ends main section
+        mainEnd = pos;
+        break;
+      } else if (text.charAt(pos) == ' ') {
+        // Continuation line
+        if (header != null) {
+          header.end = next;
+        }
+      } else {
+        int colon = pos;
+        while (colon < eol && text.charAt(colon) != ':') {
+          colon++;
+        }
+        String name = text.substring(pos, colon).trim();
+        header = new Header(name, pos, next, line);
+        headers.add(header);
+        String key = key(name);
+        if (!headersByName.containsKey(key)) {
+          headersByName.put(key, header);
+        }
+      }
+      pos = next;
+      line++;
+    }
+  }
+
+  /**
+   * Concatenates a name and value into a manifest attribute line.
+   */
+  private static String createAttributeLine(String name, String value)
+  {
+    StringBuffer buf = new StringBuffer();
+    buf.append(name);
+    buf.append(": ");
+    // Line length not allowed to exceed 72 bytes including \r\n
+    int lineLength = buf.length();
+    int offset = 0;
+    int restLength = value.length();
+    while (restLength > 0) {
+      if (lineLength+restLength > MAX_LINE_LENGTH_EXCL_NEWLINE) {
+        String s = value.substring(offset, offset+MAX_LINE_LENGTH_EXCL_NEWLINE-lineLength);
+        offset += s.length();
+        restLength = restLength - s.length();
+        buf.append(s);
+        buf.append("\r\n ");
+        lineLength = 1;
+      } else {
+        String s = value.substring(offset);
+        offset += s.length();
+        restLength = restLength - s.length();
+        buf.append(s);
+        buf.append("\r\n");
+      }
+    }
+    return buf.toString();
+  }
+
+  private static boolean isNewline(char c)
+  {
+    return c == '\r' || c == '\n';
+  }
+
+  private static boolean hasValue(String value)
+  {
+    return value != null && value.trim().length() > 0;
+  }
+
+  private static String key(String attr)
+  {
+    return attr.toLowerCase();
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class Header {
+    final String name;
+    final int start;
+    final int line;
+    // Offset after last continuation line, including line end
+    int end;
+
+    Header(String name, int start, int end, int line)
+    {
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.line = line;
+    }
+  }
+
+  private static class Change {
+    final String name;
+    String value;
+
+    Change(String name, String value)
+    {
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
@@ -34,10 +34,8 @@
 
 package org.knopflerfish.eclipse.core.manifest;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
 
 /**
  * @author Anders Rim�n, Gatespace Telematics
@@ -46,159 +44,40 @@ import java.io.StringReader;
  */
 public class ManifestUtil {
   
-  private static final int MAX_LINE_LENGTH_EXCL_NEWLINE = 70;
-  
   static public void removeAttribute(StringBuffer buf, String attr) {
-    BufferedReader reader = new BufferedReader(new StringReader(buf.toString()));
-    String line = null;
-    
-    try {
-      while ((line = reader.readLine()) != null) {
-        if (line.startsWith(attr)) {
-          int start = buf.indexOf(line);
-          int end = start + line.length();
-          if (end < buf.length() && buf.charAt(end) == '\r') {
-            end += 1;
-          }
-          if (end < buf.length() && buf.charAt(end) == '\n') {
-            end += 1;
-          }
-          buf.replace(start, end, "");
-          break;
-        }
-      }
-    } catch (IOException e) {
-      // ignore
-    }
+    ManifestText text = new ManifestText(buf.toString());
+    text.removeAttribute(attr);
+    buf.replace(0, buf.length(), text.getText());
   }
 
+  /**
+   * Returns the line number of a main attribute. Use {@link ManifestText} 
+   * when looking up several attributes in the same manifest.
+   * 
+   * @param buf manifest file contents
+   * @param attr attribute name
+   * @return line number, first line is 1, or -1 if attribute is not found
+   */
   static public int findAttributeLine(StringBuffer buf, String attr) {
-    // Find position of attribute
-    BufferedReader reader = new BufferedReader(new StringReader(buf.toString()));
-    int attrLine = -1;
-    int currentLine = 1;
-    
-    String line = null;
-    try {
-      while((line = reader.readLine()) != null && attrLine == -1) {
-        if (attrLine == -1 && line.startsWith(attr)) {
-          // Find start of manifest attribute
-          attrLine = currentLine;
-        }
-        currentLine++;
-      }
-    } catch (IOException e) {}
-    
-    return attrLine;
+    return new ManifestText(buf.toString()).getAttributeLine(attr);
   }
   
   /**
    * Adds a main attribute to a manifest file. The document passed shall 
-   * contain a manifest file.
+   * contain a manifest file. Use {@link ManifestText} when setting several
+   * attributes in the same manifest.
    * 
    * @param doc document containing a manifest file
    * @param name attribute name
    * @param value attribute value
    */
   static public StringBuffer setManifestAttribute(StringBuffer buf, String attr, String value) {
-    
-    // Find position of attribute
-    BufferedReader reader = new BufferedReader(new StringReader(buf.toString()));
-    int startPos = -1;
-    int endPos = -1;
-    String line = null;
-    try {
-      while((line = reader.readLine()) != null) {
-        if (startPos == -1 && line.startsWith(attr)) {
-          // Find start of manifest attribute
-          startPos = buf.indexOf(line);
-          endPos = startPos+line.length();
-          if (endPos < buf.length() && buf.charAt(endPos) == '\r') {
-            endPos += 1;
-          }
-          if (endPos < buf.length() && buf.charAt(endPos) == '\n') {
-            endPos += 1;
-          }
-        } else if (startPos != -1) {
-          // Find end of manifest attribute
-          if (line.startsWith(" ")) {
-            endPos += line.length();
-            if (endPos < buf.length() && buf.charAt(endPos) == '\r') {
-              endPos += 1;
-            }
-            if (endPos < buf.length() && buf.charAt(endPos) == '\n') {
-              endPos += 1;
-            }
-          } else {
-            break;
-          }
-        }
-      }
-    } catch (IOException e) {}
-    
-    if (startPos != -1) {
-      
-      // Check if attribute shall be added or removed
-      if (value != null && value.trim().length() > 0) {
-        // Replace attribute
-        buf.replace(startPos, endPos, createAttributeLine(attr, value));
-      } else  {
-        // Remove attribute
-        buf.replace(startPos, endPos, "");
-      }
-      
-    } else if (value != null && value.trim().length() > 0) {
-      // Append attribute
-      int idx = buf.indexOf("\r\n\r\n");
-      if (idx != -1) {
-        // Insert attribute
-        buf.insert(idx+2, createAttributeLine(attr, value));
-      } else {
-        // Add attribute to end
-        if (!buf.toString().endsWith("\r\n")) {
-          buf.append("\r\n");
-        }
-        buf.append(createAttributeLine(attr, value));
-      }
-    }
-    
+    ManifestText text = new ManifestText(buf.toString());
+    text.setAttribute(attr, value);
+    buf.replace(0, buf.length(), text.getText());
     return buf;
   }
   
-  /**
-   * Concatenates a name and value into a manifest attribute line.
-   *  
-   * @param name attribute name
-   * @param value attribute value
-   * @return concatenated attribute line
-   */
-  private static String createAttributeLine(String name, String value) {
-    StringBuffer buf = new StringBuffer();
-    buf.append(name);
-    buf.append(": ");
-    // Line length not allowed to exceed 72 bytes including \r\n
-    int lineLength = buf.length();
-    int offset = 0;
-    int restLength = value.length();
-    while (restLength > 0) {
-      if (lineLength+restLength > MAX_LINE_LENGTH_EXCL_NEWLINE) {
-        String s = value.substring(offset, offset+MAX_LINE_LENGTH_EXCL_NEWLINE-lineLength);
-        offset += s.length();
-        restLength = restLength - s.length();
-        buf.append(s);
-        buf.append("\r\n ");
-        lineLength = 1;
-      } else {
-        String s = value.substring(offset);
-        offset += s.length();
-        restLength = restLength - s.length();
-        buf.append(s);
-        buf.append("\r\n");
-      }
-    }
-    return buf.toString();
-  }
-  
   /**
    * Creates an manifes object from a document containing a manifest
    * file. If there is an error reading/parsing the document contents
@@ -60,6 +60,20 @@ public class NativeCodeClause {
     // Create empty native code clause
   }
 
+  /**
+   * Creates a copy of the given native code clause.
+   * 
+   * @param clause native code clause to copy
+   */
+  NativeCodeClause(NativeCodeClause clause)
+  {
+    nativePaths.addAll(clause.nativePaths);
+    processorDef.addAll(clause.processorDef);
+    osNameDef.addAll(clause.osNameDef);
+    osVersionDef.addAll(clause.osVersionDef);
+    languageDef.addAll(clause.languageDef);
+  }
+
   public NativeCodeClause(String s)
   {
     // Parse native code clause from string
@@ -37,6 +37,7 @@ package org.knopflerfish.eclipse.core.manifest;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.knopflerfish.eclipse.core.Interner;
 import org.knopflerfish.eclipse.core.Util;
 import org.knopflerfish.eclipse.core.VersionRange;
 import org.osgi.framework.Version;
@@ -51,6 +52,9 @@ public class PackageDescription {
   public static final String VERSION = "version";
   public static final String RESOLUTION = "resolution";
   public static final String OPTIONAL = "optional";
+  public static final String USES = "uses";
+
+  private static final String[] NO_USES = new String[0];
 
   private static final int EXPORT = 0;
   private static final int IMPORT = 1;
@@ -60,6 +64,7 @@ public class PackageDescription {
   private boolean optional;
   private Version version;
   private VersionRange versionRange;
+  private String[] uses = NO_USES;
 
   public PackageDescription(String name, Version version)
   {
@@ -88,6 +93,21 @@ public class PackageDescription {
     }
   }
 
+  /**
+   * Creates a copy of the given package description.
+   * 
+   * @param pd package description to copy
+   */
+  PackageDescription(PackageDescription pd)
+  {
+    this.type = pd.type;
+    this.packageName = pd.packageName;
+    this.optional = pd.optional;
+    this.version = pd.version;
+    this.versionRange = pd.versionRange;
+    this.uses = pd.uses.length == 0 ? NO_USES : pd.uses.clone();
+  }
+
   public String getPackageName()
   {
     return packageName;
@@ -124,6 +144,22 @@ public class PackageDescription {
     return optional;
   }
 
+  /**
+   * Returns the packages listed in the uses directive of an exported
+   * package.
+   * 
+   * @return array of package names, never null
+   */
+  public String[] getUses()
+  {
+    return uses;
+  }
+
+  public void setUses(String[] uses)
+  {
+    this.uses = uses == null ? NO_USES : uses;
+  }
+
   public boolean isCompatible(PackageDescription pd)
   {
     // Check package name
@@ -171,8 +207,9 @@ public class PackageDescription {
         }
 
         String spec = "0";
-        String name = words[0].trim();
+        String name = Interner.packageName(words[0].trim());
         boolean optional = false;
+        String[] uses = null;
 
         for (int j = 1; j < words.length; j++) {
           final String[] info = Util.splitwords(words[j], "=", '\"');
@@ -188,21 +225,35 @@ public class PackageDescription {
               if (RESOLUTION.equals(directive)
                   && OPTIONAL.equals(info[1].trim())) {
                 optional = true;
+              } else if (USES.equals(directive)) {
+                uses = parseUses(info[1]);
               }
             }
           }
         }
         if (range) {
-          packages.add(new PackageDescription(name, new VersionRange(spec),
-              optional));
+          packages.add(new PackageDescription(name, Interner
+              .parseVersionRange(spec), optional));
         } else {
-          packages.add(new PackageDescription(name, new Version(spec)));
+          PackageDescription pd = new PackageDescription(name, Interner
+              .parseVersion(spec));
+          pd.setUses(uses);
+          packages.add(pd);
         }
       }
     }
     return packages;
   }
 
+  private static String[] parseUses(String s)
+  {
+    final String[] names = Util.splitwords(s, ",", '\"');
+    for (int i = 0; i < names.length; i++) {
+      names[i] = Interner.packageName(names[i].trim());
+    }
+    return names;
+  }
+
   // ***************************************************************************
   // java.lang.Object methods
   // ***************************************************************************
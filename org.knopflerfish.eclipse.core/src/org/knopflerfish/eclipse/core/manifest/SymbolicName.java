@@ -48,6 +48,7 @@ public class SymbolicName {
   public static String SEPARATOR = ";";
   public static String HEADER_SINGELTON = "singelton";
   public static String HEADER_FRAGMENT_ATTACHMENT = "fragment-attachment";
+  public static String DIRECTIVE_SINGLETON = "singleton:";
 
   private String symbolicName;
   private Map<String, String> attributes = new HashMap<String, String>();
@@ -89,6 +90,20 @@ public class SymbolicName {
     return Boolean.valueOf(getAttribute(HEADER_SINGELTON)).booleanValue();
   }
 
+  /**
+   * Returns true if the bundle is a singleton, i.e. the singleton directive
+   * is set to true.
+   * 
+   * @return true if singleton
+   */
+  public boolean isSingleton()
+  {
+    // BundleManifest replaces ':' with '_' in symbolic names
+    return Boolean.valueOf(getAttribute(DIRECTIVE_SINGLETON)).booleanValue()
+        || Boolean.valueOf(getAttribute(DIRECTIVE_SINGLETON.replace(':', '_')))
+            .booleanValue() || isSingelton();
+  }
+
   public String getFragmentAttachment()
   {
     return getAttribute(HEADER_FRAGMENT_ATTACHMENT);
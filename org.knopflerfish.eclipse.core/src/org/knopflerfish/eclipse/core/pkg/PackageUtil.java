@@ -39,15 +39,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.JavaCore;
-import org.knopflerfish.eclipse.core.IBundleProject;
 import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.knopflerfish.eclipse.core.IBundleRepositoryType;
 import org.knopflerfish.eclipse.core.IFrameworkDefinition;
@@ -109,23 +102,7 @@ public class PackageUtil {
   }
   
   public static PackageDescription[] getProjectExportedPackages() {
-    ArrayList packages = new ArrayList();
-
-    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    IProject [] projects = root.getProjects();
-    for(int i=0; projects != null && i<projects.length; i++) {
-      try {
-        if (projects[i].hasNature(Osgi.NATURE_ID)) {
-          IJavaProject javaProject = JavaCore.create(projects[i]);
-          IBundleProject bundleProject = new BundleProject(javaProject);
-          packages.addAll(Arrays.asList(bundleProject.getBundleManifest().getExportedPackages()));
-        }
-      } catch (CoreException e) {
-        // Failed to check project nature.
-      }
-    }
-    
-    return (PackageDescription[]) packages.toArray(new PackageDescription[packages.size()]);
+    return ProjectRegistry.getDefault().getExportedPackages();
   }
   
   public static PackageDescription[] getRepositoryExportedPackages() {
@@ -170,26 +147,15 @@ public class PackageUtil {
   public static BuildPath[] getExportingProjectBundles(PackageDescription pd) {
     ArrayList bundleIds = new ArrayList(); 
     
-    // Workspace root
-    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    // Projects
-    IProject [] projects = root.getProjects();
+    ProjectRegistry registry = ProjectRegistry.getDefault();
+    String[] projects = registry.getExportingProjects(pd);
     IPath path = new Path(BundleContainer.CONTAINER_PATH);
-    for(int i=0; projects != null && i<projects.length; i++) {
-      try {
-        if (projects[i].hasNature(Osgi.NATURE_ID)) {
-          IJavaProject project = JavaCore.create(projects[i]);
-          IBundleProject bundleProject = new BundleProject(project);
-          BundleManifest manifest = bundleProject.getBundleManifest();
-          if (manifest.hasExportedPackage(pd)) {
-            BundleIdentity id = bundleProject.getId();
-            String  name = manifest.getName();
-            bundleIds.add(new BuildPath(path.append("/"+id.getSymbolicName().toString()), pd, id, name));
-          }
-        }
-      } catch (CoreException e) {
-        // Failed to check project nature.
-      }
+    for(int i=0; i<projects.length; i++) {
+      BundleIdentity id = registry.getBundleIdentity(projects[i]);
+      // Skip if Symbolic name is not set 
+      if (id == null || id.getSymbolicName() == null) continue;
+      String  name = registry.getBundleName(projects[i]);
+      bundleIds.add(new BuildPath(path.append("/"+id.getSymbolicName().toString()), pd, id, name));
     }
     
     return (BuildPath[]) bundleIds.toArray(new BuildPath[bundleIds.size()]);
@@ -256,31 +222,10 @@ public class PackageUtil {
 
   public static Version[] getProjectPackageVersions(String packageName)
   {
-    ArrayList<Version> versions = new ArrayList<Version>();
-
-    // Projects
-    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    IProject[] projects = root.getProjects();
-    PackageDescription pd = new PackageDescription(packageName, null);
-    for (int i = 0; projects != null && i < projects.length; i++) {
-      try {
-        if (projects[i].hasNature(Osgi.NATURE_ID)) {
-          IJavaProject project = JavaCore.create(projects[i]);
-          IBundleProject bundleProject = new BundleProject(project);
-          PackageDescription[] exportedPackages = bundleProject
-              .getBundleManifest().getExportedPackages();
-          for (int j = 0; j < exportedPackages.length; j++) {
-            if (exportedPackages[j].isCompatible(pd)) {
-              versions.add(exportedPackages[j].getVersion());
-            }
-          }
-        }
-      } catch (CoreException e) {
-        // Failed to check project nature.
-      }
+    if (packageName == null) {
+      return new Version[0];
     }
-
-    return versions.toArray(new Version[versions.size()]);
+    return ProjectRegistry.getDefault().getPackageVersions(packageName);
   }
 
   public static Version[] getRepositoryPackageVersions(String packageName)
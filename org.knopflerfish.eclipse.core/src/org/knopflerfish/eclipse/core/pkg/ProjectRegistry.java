@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.core.pkg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.JavaCore;
+import org.knopflerfish.eclipse.core.IBundleProject;
+import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.PackageIndex;
+import org.knopflerfish.eclipse.core.manifest.BundleIdentity;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.project.BundleProject;
+import org.osgi.framework.Version;
+
+/**
+ * Registry of the manifests of all bundle projects in the workspace.
+ * <p>
+ * The registry is built the first time it is used. After that a project is
+ * only read again when its manifest or description has changed, or when it
+ * has been opened, closed, added or removed. The changes are reported by
+ * the resource change listener of the core plug-in through
+ * {@link #resourceChanged(IResourceDelta)}.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class ProjectRegistry {
+
+  private static final ProjectRegistry registry = new ProjectRegistry();
+
+  // Project name -> entry, sorted by project name
+  private Map<String, Entry> entries = null;
+  private final Set<String> stale = new HashSet<String>();
+  private PackageIndex packageIndex = null;
+  private final Map<BundleManifest, Entry> entriesByManifest = new IdentityHashMap<BundleManifest, Entry>();
+  // Symbolic name -> entries
+  private final Map<String, List<Entry>> entriesBySymbolicName = new HashMap<String, List<Entry>>();
+  private long modificationStamp = 0;
+
+  /**
+   * Returns the workspace registry.
+   *
+   * @return registry
+   */
+  public static ProjectRegistry getDefault()
+  {
+    return registry;
+  }
+
+  /**
+   * Marks the projects affected by the given workspace delta as changed.
+   * Changed projects are read again the next time the registry is used.
+   *
+   * @param delta workspace delta
+   */
+  public synchronized void resourceChanged(IResourceDelta delta)
+  {
+    if (entries == null || delta == null) {
+      return;
+    }
+
+    IResourceDelta[] projectDeltas = delta.getAffectedChildren();
+    for (int i = 0; i < projectDeltas.length; i++) {
+      IResourceDelta projectDelta = projectDeltas[i];
+      if (projectDelta.getKind() != IResourceDelta.CHANGED
+          || (projectDelta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0
+          || projectDelta.findMember(new Path(IBundleProject.MANIFEST_FILE)) != null) {
+        stale.add(projectDelta.getResource().getName());
+        modificationStamp++;
+      }
+    }
+  }
+
+  /**
+   * Marks the given project as changed, e.g. when a builder has found that
+   * its manifest has changed before the workspace delta has been reported.
+   *
+   * @param name project name
+   */
+  public synchronized void refresh(String name)
+  {
+    if (entries == null) {
+      return;
+    }
+    stale.add(name);
+    modificationStamp++;
+  }
+
+  /**
+   * Returns a stamp that is changed every time a bundle project may have
+   * changed. Can be used to invalidate data derived from the registry.
+   *
+   * @return modification stamp
+   */
+  public synchronized long getModificationStamp()
+  {
+    return modificationStamp;
+  }
+
+  /**
+   * Returns all packages exported by bundle projects.
+   *
+   * @return array of exported packages
+   */
+  public synchronized PackageDescription[] getExportedPackages()
+  {
+    update();
+    return packageIndex.getExportedPackages();
+  }
+
+  /**
+   * Returns the bundle projects exporting a package compatible with the
+   * given package.
+   *
+   * @param pd package
+   * @return array of project names
+   */
+  public synchronized String[] getExportingProjects(PackageDescription pd)
+  {
+    update();
+    BundleManifest[] manifests = packageIndex.getExportingBundles(pd);
+    String[] names = new String[manifests.length];
+    for (int i = 0; i < manifests.length; i++) {
+      names[i] = entriesByManifest.get(manifests[i]).name;
+    }
+    return names;
+  }
+
+  /**
+   * Returns the identity of the given bundle project.
+   *
+   * @param name project name
+   * @return identity or null if no bundle project with the given name exist
+   */
+  public synchronized BundleIdentity getBundleIdentity(String name)
+  {
+    update();
+    Entry entry = entries.get(name);
+    if (entry == null || entry.manifest == null) {
+      return null;
+    }
+    return new BundleIdentity(entry.manifest.getSymbolicName(),
+        entry.manifest.getVersion());
+  }
+
+  /**
+   * Returns the bundle manifest of the given bundle project. The manifest is
+   * shared and must not be modified.
+   *
+   * @param name project name
+   * @return manifest or null if no bundle project with the given name exist
+   */
+  public synchronized BundleManifest getBundleManifest(String name)
+  {
+    update();
+    Entry entry = entries.get(name);
+    return entry == null ? null : entry.manifest;
+  }
+
+  /**
+   * Returns the bundle name of the given bundle project.
+   *
+   * @param name project name
+   * @return bundle name or null if not set or no bundle project with the
+   *         given name exist
+   */
+  public synchronized String getBundleName(String name)
+  {
+    update();
+    Entry entry = entries.get(name);
+    return entry == null || entry.manifest == null ? null : entry.manifest.getName();
+  }
+
+  /**
+   * Returns the names of all bundle projects with the given symbolic name.
+   *
+   * @param symbolicName symbolic name
+   * @return array of project names
+   */
+  public synchronized String[] getProjects(String symbolicName)
+  {
+    update();
+    List<String> names = new ArrayList<String>();
+    List<Entry> l = entriesBySymbolicName.get(symbolicName);
+    if (l != null) {
+      for (Entry entry : l) {
+        names.add(entry.name);
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Returns the names of all bundle projects with the given symbolic name
+   * and version.
+   *
+   * @param id bundle identity
+   * @return array of project names
+   */
+  public synchronized String[] getProjects(BundleIdentity id)
+  {
+    update();
+    List<String> names = new ArrayList<String>();
+    List<Entry> l = id.getSymbolicName() == null ? null
+        : entriesBySymbolicName.get(id.getSymbolicName().getSymbolicName());
+    if (l != null) {
+      for (Entry entry : l) {
+        if (entry.manifest != null
+            && id.getBundleVersion().equals(entry.manifest.getVersion())) {
+          names.add(entry.name);
+        }
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Returns all versions of the given package exported by bundle projects.
+   *
+   * @param packageName package name
+   * @return array of versions
+   */
+  public synchronized Version[] getPackageVersions(String packageName)
+  {
+    update();
+    return packageIndex.getPackageVersions(packageName);
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void update()
+  {
+    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+    if (entries == null) {
+      // Read all bundle projects
+      entries = new TreeMap<String, Entry>();
+      IProject[] projects = root.getProjects();
+      for (int i = 0; projects != null && i < projects.length; i++) {
+        load(projects[i]);
+      }
+      stale.clear();
+      packageIndex = null;
+    } else if (!stale.isEmpty()) {
+      // Read changed projects
+      for (String name : stale) {
+        entries.remove(name);
+        load(root.getProject(name));
+      }
+      stale.clear();
+      packageIndex = null;
+    }
+
+    if (packageIndex == null) {
+      packageIndex = new PackageIndex();
+      entriesByManifest.clear();
+      entriesBySymbolicName.clear();
+      for (Entry entry : entries.values()) {
+        if (entry.manifest == null) {
+          continue;
+        }
+        packageIndex.addBundle(entry.manifest);
+        entriesByManifest.put(entry.manifest, entry);
+        if (entry.manifest.getSymbolicName() != null) {
+          String symbolicName = entry.manifest.getSymbolicName().getSymbolicName();
+          List<Entry> l = entriesBySymbolicName.get(symbolicName);
+          if (l == null) {
+            l = new ArrayList<Entry>(1);
+            entriesBySymbolicName.put(symbolicName, l);
+          }
+          l.add(entry);
+        }
+      }
+    }
+  }
+
+  private void load(IProject project)
+  {
+    try {
+      if (project.isOpen() && project.hasNature(Osgi.NATURE_ID)) {
+        BundleProject bundleProject = new BundleProject(JavaCore
+            .create(project));
+        BundleManifest manifest = bundleProject.getBundleManifest();
+        if (manifest == null) {
+          // Manifest could not be parsed, register project without headers
+          manifest = new BundleManifest();
+        }
+        entries.put(project.getName(), new Entry(project.getName(), manifest));
+      }
+    } catch (CoreException e) {
+      // Failed to check project nature.
+    }
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class Entry {
+    final String name;
+    final BundleManifest manifest;
+
+    Entry(String name, BundleManifest manifest)
+    {
+      this.name = name;
+      this.manifest = manifest;
+    }
+  }
+}
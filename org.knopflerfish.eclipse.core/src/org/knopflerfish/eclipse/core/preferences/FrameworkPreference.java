@@ -101,6 +101,62 @@ public class FrameworkPreference {
     load(node);
   }
 
+  /**
+   * Creates a copy of the given framework. Libraries and bundles are copied
+   * using the manifests already read, no jar files are opened.
+   *
+   * @param framework framework to copy
+   */
+  public FrameworkPreference(FrameworkPreference framework)
+  {
+    name = framework.name;
+    specificationVersion = framework.specificationVersion;
+    location = framework.location;
+    type = framework.type;
+    defaultDefinition = framework.defaultDefinition;
+    defaultSettings = framework.defaultSettings;
+    mainClass = framework.mainClass;
+
+    // Runtime libraries
+    for (IOsgiLibrary lib : framework.runtimeLibs) {
+      OsgiLibrary library = new OsgiLibrary(new File(lib.getPath()), lib
+          .getManifest());
+      library.setSource(lib.getSource());
+      library.setUserDefined(lib.isUserDefined());
+      runtimeLibs.add(library);
+    }
+
+    // Bundles
+    for (Map.Entry<String, List<IOsgiBundle>> entry : framework.bundles
+        .entrySet()) {
+      List<IOsgiBundle> l = new ArrayList<IOsgiBundle>();
+      for (IOsgiBundle b : entry.getValue()) {
+        OsgiBundle bundle = new OsgiBundle(new File(b.getPath()), b
+            .getManifest());
+        bundle.setSource(b.getSource());
+        bundle.setUserDefined(b.isUserDefined());
+        l.add(bundle);
+      }
+      bundles.put(entry.getKey(), l);
+    }
+
+    // System Property Groups
+    for (PropertyGroup group : framework.propertyGroups) {
+      PropertyGroup propertyGroup = new PropertyGroup(group.getName());
+      Property[] properties = group.getProperties();
+      for (int i = 0; i < properties.length; i++) {
+        Property property = new Property(properties[i].getName());
+        property.setType(properties[i].getType());
+        property.setValue(properties[i].getValue());
+        property.setDefaultValue(properties[i].getDefaultValue());
+        property.setDescription(properties[i].getDescription());
+        property.setAllowedValues(properties[i].getAllowedValues());
+        propertyGroup.addSystemProperty(property);
+      }
+      addSystemPropertyGroup(propertyGroup);
+    }
+  }
+
   private void load(Preferences node) throws BackingStoreException
   {
     // Load preferences
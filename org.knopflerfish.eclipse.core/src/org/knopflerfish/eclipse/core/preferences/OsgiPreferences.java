@@ -35,11 +35,20 @@
 package org.knopflerfish.eclipse.core.preferences;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.INodeChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.NodeChangeEvent;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
+import org.knopflerfish.eclipse.core.project.classpath.BundleResolutionCache;
 import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
@@ -55,6 +64,17 @@ public class OsgiPreferences {
   public static final String PREFERENCE_FRAMEWORKS_NODE   = "frameworks";
   public static final String PREFERENCE_ENVIRONMENTS_NODE = "environments";
   
+  // Preference keys
+  public static final String PREFERENCE_PARALLEL_PACKAGING = "parallelPackaging";
+  public static final String PREFERENCE_SKIP_UNCHANGED_JARS = "skipUnchangedJars";
+  public static final String PREFERENCE_REPRODUCIBLE_BUILD_DATE = "reproducibleBuildDate";
+  
+  // Frameworks read from preferences, cleared when the preferences change
+  private static final Object frameworksLock = new Object();
+  private static Map<String, FrameworkPreference> frameworks = null;
+  private static int frameworksGeneration = 0;
+  private static final FrameworksListener frameworksListener = new FrameworksListener();
+  
   /****************************************************************************
    * Bundle repository preferences methods
    ***************************************************************************/
@@ -120,6 +140,9 @@ public class OsgiPreferences {
         repos[i].save(repoNode);
       }
       node.flush();
+      
+      // Bundles may now resolve to other repositories
+      BundleResolutionCache.clear();
     } catch (BackingStoreException e) {
       IStatus status =
         new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK, 
@@ -134,13 +157,11 @@ public class OsgiPreferences {
    ***************************************************************************/
   public static FrameworkPreference[] getFrameworks() {
     
-    Preferences node = new InstanceScope().getNode(PREFERENCE_ROOT_NODE).node(PREFERENCE_FRAMEWORKS_NODE);
     ArrayList frameworks = new ArrayList();
     
     try {
-      String [] children = node.childrenNames();
-      for (int i=0; i<children.length; i++) {
-        frameworks.add(new FrameworkPreference(node.node(children[i])));
+      for (Iterator i=getCachedFrameworks().values().iterator(); i.hasNext(); ) {
+        frameworks.add(new FrameworkPreference((FrameworkPreference) i.next()));
       }
     } catch (BackingStoreException e) {
       IStatus status =
@@ -155,10 +176,10 @@ public class OsgiPreferences {
   public static FrameworkPreference getFramework(String name) {
     if (name == null || name.length() == 0) return null;
     
-    Preferences node = new InstanceScope().getNode(PREFERENCE_ROOT_NODE).node(PREFERENCE_FRAMEWORKS_NODE);
     try  {
-      if (node.nodeExists(name)) {
-        return new FrameworkPreference(node.node(name));
+      FrameworkPreference framework = (FrameworkPreference) getCachedFrameworks().get(name);
+      if (framework != null) {
+        return new FrameworkPreference(framework);
       }
     } catch (BackingStoreException e) {
       IStatus status =
@@ -170,11 +191,18 @@ public class OsgiPreferences {
   }
   
   public static FrameworkPreference getDefaultFramework() {
-    FrameworkPreference[] frameworks = getFrameworks();
-    for (int i=0; i<frameworks.length; i++) {
-      if (frameworks[i].isDefaultDefinition()) {
-        return frameworks[i];
+    try  {
+      for (Iterator i=getCachedFrameworks().values().iterator(); i.hasNext(); ) {
+        FrameworkPreference framework = (FrameworkPreference) i.next();
+        if (framework.isDefaultDefinition()) {
+          return new FrameworkPreference(framework);
+        }
       }
+    } catch (BackingStoreException e) {
+      IStatus status =
+        new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK, 
+            "Failure reading frameworks from preferences", e);
+      OsgiPlugin.log(status);
     }
     return null;
   }
@@ -201,6 +229,61 @@ public class OsgiPreferences {
         new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK, 
             "Failure saving frameworks to preferences", e);
       OsgiPlugin.log(status);
+    } finally {
+      clearCachedFrameworks();
+    }
+  }
+  
+  /**
+   * Returns the frameworks read from preferences. The frameworks are only
+   * read again if the preferences have changed since last time. The
+   * returned frameworks must not be changed, copies are returned to
+   * callers.
+   */
+  private static Map getCachedFrameworks() throws BackingStoreException {
+    int generation;
+    synchronized (frameworksLock) {
+      if (frameworks != null) {
+        return frameworks;
+      }
+      generation = frameworksGeneration;
+    }
+    
+    // Read preferences without holding the lock, listen for changes before
+    // reading to not miss any
+    IEclipsePreferences node = (IEclipsePreferences) new InstanceScope().getNode(PREFERENCE_ROOT_NODE).node(PREFERENCE_FRAMEWORKS_NODE);
+    addFrameworksListener(node);
+    Map<String, FrameworkPreference> m = new LinkedHashMap<String, FrameworkPreference>();
+    String [] children = node.childrenNames();
+    for (int i=0; i<children.length; i++) {
+      m.put(children[i], new FrameworkPreference(node.node(children[i])));
+    }
+    
+    synchronized (frameworksLock) {
+      // Only cache if preferences have not changed while reading
+      if (generation == frameworksGeneration) {
+        frameworks = m;
+      }
+    }
+    return m;
+  }
+  
+  private static void clearCachedFrameworks() {
+    synchronized (frameworksLock) {
+      frameworks = null;
+      frameworksGeneration++;
+    }
+  }
+  
+  private static void addFrameworksListener(IEclipsePreferences node) throws BackingStoreException {
+    // Preference change events are only sent to listeners of the changed
+    // node, listen on all framework nodes. Adding a listener twice has no
+    // effect.
+    node.addPreferenceChangeListener(frameworksListener);
+    node.addNodeChangeListener(frameworksListener);
+    String [] children = node.childrenNames();
+    for (int i=0; i<children.length; i++) {
+      addFrameworksListener((IEclipsePreferences) node.node(children[i]));
     }
   }
   
@@ -280,4 +363,85 @@ public class OsgiPreferences {
       OsgiPlugin.log(status);
     }
   }
+  
+  /****************************************************************************
+   * Build preferences methods
+   ***************************************************************************/
+  
+  /**
+   * Returns true if bundle JARs of several projects shall be packaged in
+   * parallel by the bundle builder.
+   * 
+   * @return true if packaging is done in parallel
+   */
+  public static boolean isParallelPackaging() {
+    return new InstanceScope().getNode(PREFERENCE_ROOT_NODE).getBoolean(PREFERENCE_PARALLEL_PACKAGING, false);
+  }
+  
+  public static void setParallelPackaging(boolean parallel) {
+    setBuildPreference(PREFERENCE_PARALLEL_PACKAGING, parallel);
+  }
+  
+  /**
+   * Returns true if the bundle builder shall leave a bundle JAR untouched
+   * when the digest of its contents and manifest is the same as when the
+   * JAR was written. Incremental builds skip writing JARs without changed
+   * files regardless of this preference; the digest also covers full builds
+   * and files rewritten with the same contents.
+   * 
+   * @return true if unchanged JARs are not written
+   */
+  public static boolean isSkipUnchangedJars() {
+    return new InstanceScope().getNode(PREFERENCE_ROOT_NODE).getBoolean(PREFERENCE_SKIP_UNCHANGED_JARS, false);
+  }
+  
+  public static void setSkipUnchangedJars(boolean skip) {
+    setBuildPreference(PREFERENCE_SKIP_UNCHANGED_JARS, skip);
+  }
+  
+  /**
+   * Returns true if the build date of bundle JARs shall be the modification
+   * time of the newest packaged file, or the time when an entry was last
+   * added or removed if later, instead of the time of the build.
+   * 
+   * @return true if build date is reproducible
+   */
+  public static boolean isReproducibleBuildDate() {
+    return new InstanceScope().getNode(PREFERENCE_ROOT_NODE).getBoolean(PREFERENCE_REPRODUCIBLE_BUILD_DATE, false);
+  }
+  
+  public static void setReproducibleBuildDate(boolean reproducible) {
+    setBuildPreference(PREFERENCE_REPRODUCIBLE_BUILD_DATE, reproducible);
+  }
+  
+  private static void setBuildPreference(String key, boolean value) {
+    Preferences node = new InstanceScope().getNode(PREFERENCE_ROOT_NODE);
+    try {
+      node.putBoolean(key, value);
+      node.flush();
+    } catch (BackingStoreException e) {
+      IStatus status =
+        new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK, 
+            "Failure saving build settings to preferences", e);
+      OsgiPlugin.log(status);
+    }
+  }
+  
+  /****************************************************************************
+   * Private classes
+   ***************************************************************************/
+  private static class FrameworksListener implements IPreferenceChangeListener, INodeChangeListener {
+    
+    public void preferenceChange(PreferenceChangeEvent event) {
+      clearCachedFrameworks();
+    }
+    
+    public void added(NodeChangeEvent event) {
+      clearCachedFrameworks();
+    }
+    
+    public void removed(NodeChangeEvent event) {
+      clearCachedFrameworks();
+    }
+  }
 }
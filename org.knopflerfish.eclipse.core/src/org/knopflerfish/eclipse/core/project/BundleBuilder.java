@@ -35,11 +35,18 @@
 package org.knopflerfish.eclipse.core.project;
 
 import java.io.File;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IWorkspaceRunnable;
@@ -47,9 +54,11 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
-import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
+import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
 
 /**
  * @author Anders Rim�n, Gatespace Telematics
@@ -58,6 +67,14 @@ import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
  */
 public class BundleBuilder extends IncrementalProjectBuilder {
   
+  // Last built bundle JAR, used to update the JAR on incremental builds
+  private BuiltJar builtJar = null;
+  
+  // Validates the manifest incrementally, keeps the last validated manifest
+  private ManifestValidator validator = null;
+  // Digest of JAR contents, used to skip writing unchanged JARs
+  private JarDigest jarDigest = null;
+  
   /* (non-Javadoc)
    * @see org.eclipse.core.internal.events.InternalBuilder#build(int, java.util.Map, org.eclipse.core.runtime.IProgressMonitor)
    */
@@ -71,34 +88,71 @@ public class BundleBuilder extends IncrementalProjectBuilder {
     IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
     IFolder folder = root.getFolder(javaProject.getOutputLocation());
     File outDir = new File(folder.getLocation().toString());
+    
+    // Wait for JAR still being packaged from previous build, apply result
+    if (jarDigest == null) {
+      jarDigest = new JarDigest(project);
+    }
+    try {
+      BuiltJar packaged = (BuiltJar) BundlePackager.join(project);
+      if (packaged != null) {
+        setBuiltJar(packaged);
+      }
+    } catch (CoreException e) {
+      // Reported as problem marker by packager, export JAR again
+      setBuiltJar(null);
+    }
 
     switch(kind) {
     case AUTO_BUILD:
     case FULL_BUILD:
     case INCREMENTAL_BUILD:
       // Check if any errors
+      if (validator == null) {
+        validator = new ManifestValidator(bundleProject);
+      }
+      final IResourceDelta delta = kind == FULL_BUILD ? null : getDelta(project);
       try {
         IWorkspace workspace = ResourcesPlugin.getWorkspace();
         workspace.run(new IWorkspaceRunnable() {
           public void run(IProgressMonitor monitor) throws CoreException {
-            bundleProject.checkManifest();
+            validator.validate(delta);
           }
         }, null, IWorkspace.AVOID_UPDATE, null);
       } catch (Throwable t) {}
       
-      // Build bundle JAR
+      // Build bundle JAR, bring the contents up to date with the build delta
+      BundleContentsIndex.getDefault().update(project, kind == FULL_BUILD ? null : delta);
       String name = ProjectUtil.createFileName(bundleProject);
-      File jarFile = new File(outDir, name);
-      try {
-        bundlePackDescription.export(bundleProject, jarFile.getAbsolutePath());
+      final File jarFile = new File(outDir, name);
+      IFile file = folder.getFile(name);
+      final Map contents = bundlePackDescription.getContentsMap(true);
+      final Set changed = kind != FULL_BUILD && isBuiltJar(jarFile) ? getChangedFiles() : null;
+      if (OsgiPreferences.isParallelPackaging()) {
+        // Write JAR while other projects are built, refreshed when done and
+        // result applied when joined next build
+        final BundlePackDescription packDescription = bundlePackDescription;
+        final BuiltJar previous = builtJar;
+        BundlePackager.schedule(project, file, new Callable<BuiltJar>() {
+          public BuiltJar call() throws CoreException {
+            return buildJar(bundleProject, packDescription, jarFile, contents, changed, previous);
+          }
+        });
+      } else {
+        try {
+          setBuiltJar(buildJar(bundleProject, bundlePackDescription, jarFile, contents, changed, builtJar));
+        } catch (CoreException e) {
+          setBuiltJar(null);
+          throw e;
+        }
+        BundlePackager.updateMarker(project, Status.OK_STATUS);
+        
         // Refresh the resource hierarchy
-        IFile file = folder.getFile(name);
         file.refreshLocal(1, null);
-      } catch (Throwable t) {
-        OsgiPlugin.throwCoreException("Failed to build JAR file for project "+getProject().getName(), t);
       }
       break;
     case CLEAN_BUILD:
+      builtJar = null;
       // Remove JAR files in output directory
       File[] children = outDir.listFiles();
       if (children != null) {
@@ -112,4 +166,122 @@ public class BundleBuilder extends IncrementalProjectBuilder {
     }
     return null;
   }
+  
+  /****************************************************************************
+   * Private worker methods
+   ***************************************************************************/
+  
+  /**
+   * Writes the bundle JAR. The existing JAR is updated if the set of changed
+   * files is known, otherwise the JAR is exported. Called from a packager
+   * thread when packaging in parallel, so the builder state is not touched;
+   * the returned JAR is applied with <code>setBuiltJar</code> by the builder.
+   */
+  private BuiltJar buildJar(BundleProject bundleProject, BundlePackDescription bundlePackDescription, 
+                            File jarFile, Map contents, Set changed, BuiltJar previous) throws CoreException {
+    try {
+      // Skip writing if contents and manifest are the same as in existing JAR
+      boolean skipUnchanged = OsgiPreferences.isSkipUnchangedJars();
+      boolean reproducibleDate = OsgiPreferences.isReproducibleBuildDate();
+      String digest = null;
+      Date buildDate = new Date();
+      if (skipUnchanged) {
+        digest = jarDigest.compute(bundleProject, contents);
+        if (reproducibleDate) {
+          buildDate = new Date(jarDigest.getLastModified());
+        }
+        if (jarDigest.isWritten(jarFile, digest)) {
+          return new BuiltJar(jarFile, contents, false, digest);
+        }
+      } else if (reproducibleDate) {
+        // Only modification times needed, files are not hashed
+        buildDate = new Date(jarDigest.computeLastModified(contents));
+      }
+      
+      boolean updated = changed != null && previous != null
+        && bundlePackDescription.update(bundleProject, jarFile, previous.contents, contents, changed, buildDate);
+      if (!updated) {
+        bundlePackDescription.export(bundleProject, jarFile.getAbsolutePath(), contents, buildDate);
+      }
+      return new BuiltJar(jarFile, contents, true, skipUnchanged ? digest : null);
+    } catch (Throwable t) {
+      throw new CoreException(new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK,
+          "Failed to build JAR file for project "+bundleProject.getJavaProject().getProject().getName(), t));
+    }
+  }
+  
+  private boolean isBuiltJar(File jarFile) {
+    return builtJar != null && builtJar.isCurrent(jarFile);
+  }
+  
+  /**
+   * Sets the last built JAR and stores its digest if written, or clears
+   * both if the JAR failed to build.
+   */
+  private void setBuiltJar(BuiltJar jar) {
+    builtJar = jar;
+    if (jar == null) {
+      jarDigest.setWritten(null, null);
+    } else if (jar.written) {
+      jarDigest.setWritten(jar.file, jar.digest);
+    }
+  }
+  
+  /**
+   * Returns the full paths of all files in the project that have been added,
+   * removed or whose contents have changed since the last build, or null if
+   * no delta is available.
+   */
+  private Set getChangedFiles() throws CoreException {
+    IResourceDelta delta = getDelta(getProject());
+    if (delta == null) return null;
+    
+    final Set changed = new HashSet();
+    delta.accept(new IResourceDeltaVisitor() {
+      public boolean visit(IResourceDelta delta) throws CoreException {
+        if (delta.getResource().getType() == IResource.FILE) {
+          if (delta.getKind() != IResourceDelta.CHANGED 
+              || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+            changed.add(delta.getResource().getFullPath());
+          }
+        }
+        return true;
+      }
+    });
+    return changed;
+  }
+  
+  /****************************************************************************
+   * Private classes
+   ***************************************************************************/
+  
+  /**
+   * Bundle JAR written by <code>buildJar</code>, together with the contents
+   * written and the size and modification time of the JAR when written.
+   */
+  private static class BuiltJar {
+    final File file;
+    final long length;
+    final long modified;
+    final Map contents;
+    // True if the JAR was written, false if skipped as unchanged
+    final boolean written;
+    // Digest to store for written JAR, may be null
+    final String digest;
+    
+    BuiltJar(File file, Map contents, boolean written, String digest) {
+      this.file = file;
+      this.length = file.length();
+      this.modified = file.lastModified();
+      this.contents = contents;
+      this.written = written;
+      this.digest = digest;
+    }
+    
+    boolean isCurrent(File jarFile) {
+      return jarFile.equals(file) 
+        && jarFile.length() == length 
+        && jarFile.lastModified() == modified;
+    }
+  }
 }
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Index of the contents of the bundle JAR of every bundle project, i.e. the
+ * files selected by the resources of the bundle pack description.
+ * <p>
+ * The contents of a project are found by walking the resource tree the first
+ * time they are asked for. After that the index is kept up to date using
+ * resource deltas, only the added and removed files are looked at. The
+ * contents are found again if the resources of the pack description change.
+ * </p>
+ * <p>
+ * Workspace deltas are reported by the resource change listener of the core
+ * plug-in through {@link #resourceChanged(IResourceDelta)}. The bundle
+ * builder also updates the index with its build delta, since the workspace
+ * delta is reported after the build. Applying the same delta several times
+ * is harmless, files are checked against the current workspace state.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class BundleContentsIndex {
+
+  private static final String SEPARATOR = "/";
+
+  private static final BundleContentsIndex index = new BundleContentsIndex();
+
+  // Project name -> contents
+  private final Map<String, ProjectContents> contents = new HashMap<String, ProjectContents>();
+
+  /**
+   * Returns the workspace index.
+   *
+   * @return index
+   */
+  public static BundleContentsIndex getDefault()
+  {
+    return index;
+  }
+
+  /**
+   * Updates the index with the given workspace delta.
+   *
+   * @param delta workspace delta
+   */
+  public synchronized void resourceChanged(IResourceDelta delta)
+  {
+    if (delta == null || contents.isEmpty()) {
+      return;
+    }
+
+    IResourceDelta[] projectDeltas = delta.getAffectedChildren();
+    for (int i = 0; i < projectDeltas.length; i++) {
+      update(projectDeltas[i]);
+    }
+  }
+
+  /**
+   * Updates the contents of a project with the given project delta, e.g. a
+   * build delta.
+   *
+   * @param delta project delta, if null the contents of the project are
+   *          found again the next time they are used
+   * @param project project
+   */
+  synchronized void update(IProject project, IResourceDelta delta)
+  {
+    if (delta == null) {
+      contents.remove(project.getName());
+    } else {
+      update(delta);
+    }
+  }
+
+  /**
+   * Returns the contents of the given project.
+   *
+   * @param project project
+   * @param resources resources of bundle pack description
+   * @param invert if true the map is keyed by the full path of the files and
+   *          the values are the JAR entry names, otherwise the map is keyed
+   *          by the entry names
+   * @return a new map with the contents
+   */
+  synchronized Map getContents(IProject project,
+                               BundleResource[] resources,
+                               boolean invert)
+  {
+    String signature = getSignature(resources);
+    ProjectContents pc = contents.get(project.getName());
+    if (pc == null || !pc.signature.equals(signature)) {
+      pc = new ProjectContents(project, resources, signature);
+      contents.put(project.getName(), pc);
+    }
+    return new HashMap(pc.getMap(invert));
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void update(IResourceDelta projectDelta)
+  {
+    String name = projectDelta.getResource().getName();
+    ProjectContents pc = contents.get(name);
+    if (pc == null) {
+      return;
+    }
+    if (projectDelta.getKind() != IResourceDelta.CHANGED
+        || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0) {
+      contents.remove(name);
+      return;
+    }
+    try {
+      pc.update(projectDelta);
+    } catch (CoreException e) {
+      contents.remove(name);
+    }
+  }
+
+  private static String getSignature(BundleResource[] resources)
+  {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < resources.length; i++) {
+      buf.append(resources[i].getSource());
+      buf.append('\n');
+      buf.append(resources[i].getDestination());
+      buf.append('\n');
+      buf.append(resources[i].getPattern() == null ? null : resources[i]
+          .getPattern().pattern());
+      buf.append('\n');
+    }
+    return buf.toString();
+  }
+
+  private static boolean isChanged(IResourceDelta delta)
+  {
+    return delta.getKind() != IResourceDelta.CHANGED
+        || (delta.getFlags() & (IResourceDelta.TYPE | IResourceDelta.REPLACED)) != 0;
+  }
+
+  private static boolean isSkipped(IFolder folder)
+  {
+    // Skip subversion and CVS directories
+    String folderName = folder.getName();
+    return ".svn".equalsIgnoreCase(folderName)
+        || "CVS".equalsIgnoreCase(folderName);
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+
+  /**
+   * Contents of one project.
+   */
+  private static class ProjectContents {
+    final IProject project;
+    final String signature;
+    final Source[] sources;
+    // Merged maps, null if they must be created again
+    Map<IPath, String> invertedMap = null;
+    Map<String, IPath> map = null;
+
+    ProjectContents(IProject project, BundleResource[] resources, String signature)
+    {
+      this.project = project;
+      this.signature = signature;
+      List<Source> l = new ArrayList<Source>(resources.length);
+      for (int i = 0; i < resources.length; i++) {
+        IPath src = resources[i].getSource();
+        if (src == null) continue;
+        l.add(new Source(project.getFullPath().append(src.removeFirstSegments(1)),
+            resources[i].getDestination(), resources[i].getPattern()));
+      }
+      sources = l.toArray(new Source[l.size()]);
+      for (int i = 0; i < sources.length; i++) {
+        sources[i].load();
+      }
+    }
+
+    Map getMap(boolean invert)
+    {
+      if (invertedMap == null) {
+        // Later resources override earlier ones
+        invertedMap = new HashMap<IPath, String>();
+        map = new HashMap<String, IPath>();
+        for (int i = 0; i < sources.length; i++) {
+          for (Map.Entry<IPath, String> entry : sources[i].files.entrySet()) {
+            invertedMap.put(entry.getKey(), entry.getValue());
+            map.put(entry.getValue(), entry.getKey());
+          }
+        }
+      }
+      return invert ? invertedMap : map;
+    }
+
+    void update(IResourceDelta projectDelta) throws CoreException
+    {
+      for (int i = 0; i < sources.length; i++) {
+        if (sources[i].update(projectDelta)) {
+          invertedMap = null;
+          map = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Files selected by one resource of the pack description.
+   */
+  private static class Source {
+    final IPath path;
+    final String destination;
+    final Pattern pattern;
+    // Full path -> JAR entry name
+    final Map<IPath, String> files = new HashMap<IPath, String>();
+    boolean changed;
+
+    Source(IPath path, String destination, Pattern pattern)
+    {
+      this.path = path;
+      this.destination = destination;
+      this.pattern = pattern;
+    }
+
+    void load()
+    {
+      files.clear();
+      IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+      if (resource == null) return;
+      try {
+        if (resource.getType() == IResource.FILE) {
+          addFile((IFile) resource, destination);
+        } else if (resource.getType() == IResource.FOLDER) {
+          addDir((IFolder) resource, destination);
+        }
+      } catch (Throwable t) {}
+    }
+
+    /**
+     * Applies the given project delta.
+     *
+     * @return true if the files have changed
+     */
+    boolean update(IResourceDelta projectDelta) throws CoreException
+    {
+      changed = false;
+
+      // Find delta of source, reload if any parent is added or removed
+      IResourceDelta delta = projectDelta;
+      IPath relPath = path.removeFirstSegments(1);
+      for (int i = 0; i < relPath.segmentCount() && delta != null; i++) {
+        if (isChanged(delta)) {
+          break;
+        }
+        delta = delta.findMember(new Path(relPath.segment(i)));
+      }
+      if (delta == null) {
+        return false;
+      }
+      if (isChanged(delta)) {
+        int oldSize = files.size();
+        load();
+        return oldSize != 0 || !files.isEmpty();
+      }
+      if (delta.getResource().getType() != IResource.FOLDER) {
+        return false;
+      }
+
+      final IPath root = delta.getResource().getFullPath();
+      delta.accept(new IResourceDeltaVisitor() {
+        public boolean visit(IResourceDelta delta) throws CoreException {
+          IResource resource = delta.getResource();
+          if (resource.getFullPath().equals(root)) {
+            return true;
+          }
+          if (resource.getType() == IResource.FOLDER) {
+            if (isSkipped((IFolder) resource)) {
+              return false;
+            }
+            if (isChanged(delta)) {
+              updateDir((IFolder) resource);
+              return false;
+            }
+            return true;
+          } else if (resource.getType() == IResource.FILE) {
+            if (isChanged(delta)) {
+              updateFile((IFile) resource);
+            }
+          }
+          return false;
+        }
+      });
+      return changed;
+    }
+
+    private void updateDir(IFolder folder) throws CoreException
+    {
+      IPath folderPath = folder.getFullPath();
+      for (Iterator<IPath> i = files.keySet().iterator(); i.hasNext();) {
+        if (folderPath.isPrefixOf(i.next())) {
+          i.remove();
+          changed = true;
+        }
+      }
+      if (folder.exists()) {
+        int oldSize = files.size();
+        addDir(folder, getEntryName(folderPath));
+        changed |= files.size() != oldSize;
+      }
+    }
+
+    private void updateFile(IFile file)
+    {
+      if (files.remove(file.getFullPath()) != null) {
+        changed = true;
+      }
+      if (file.exists()) {
+        int oldSize = files.size();
+        addFile(file, getEntryName(file.getFullPath()));
+        changed |= files.size() != oldSize;
+      }
+    }
+
+    private String getEntryName(IPath fullPath)
+    {
+      String dir = destination == null ? "" : destination;
+      if (dir.length() > 0 && !dir.endsWith(SEPARATOR)) {
+        dir += SEPARATOR;
+      }
+      return dir + fullPath.removeFirstSegments(path.segmentCount()).toString();
+    }
+
+    private void addDir(IFolder folder, String path) throws CoreException
+    {
+      if (folder == null) return;
+      IResource[] resources = folder.members();
+
+      if (resources  == null) return;
+      if (path == null) path = "";
+      if (path.length() > 0 && !path.endsWith(SEPARATOR)) {
+        path += SEPARATOR;
+      }
+
+      StringBuffer buf = new StringBuffer(path);
+      int pathLen = path.length();
+      for (int i=0; i<resources.length; i++) {
+        buf.setLength(pathLen);
+        if (resources[i] instanceof IFolder) {
+          if (!isSkipped((IFolder) resources[i])) {
+            buf.append(resources[i].getName());
+            buf.append(SEPARATOR);
+            addDir((IFolder) resources[i], buf.toString());
+          }
+        } else if (resources[i] instanceof IFile) {
+          buf.append(resources[i].getName());
+          addFile((IFile) resources[i], buf.toString());
+        }
+      }
+    }
+
+    private void addFile(IFile file, String path)
+    {
+      if (file == null) return;
+
+      // Check pattern
+      if (pattern != null) {
+        String name = file.getName();
+        if (!pattern.matcher(name).matches()) return;
+      }
+
+      if (path == null || path.trim().length() == 0) {
+        path = file.getName();
+      }
+
+      if (path.startsWith(SEPARATOR)){
+        path = path.substring(1);
+      }
+      files.put(file.getFullPath(), path);
+    }
+  }
+}
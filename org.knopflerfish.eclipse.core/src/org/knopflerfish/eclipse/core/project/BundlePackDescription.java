@@ -41,9 +41,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -57,8 +57,6 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -77,8 +75,6 @@ import org.w3c.dom.NodeList;
  */
 public class BundlePackDescription {
   
-  private static final String SEPARATOR = "/";
-  
   // Tags
   private static String TAG_BUNDLEJAR = "bundlejar";
   private static String TAG_RESOURCE = "resource";
@@ -171,28 +167,34 @@ public class BundlePackDescription {
     }
   }
   
+  /**
+   * Returns the contents of the bundle JAR. The contents are served from the
+   * {@link BundleContentsIndex}, the resource tree is only walked the first
+   * time or when the resources of this description have changed.
+   * 
+   * @param invert if true the map is keyed by the full path of the files, 
+   * otherwise by the JAR entry names
+   * @return contents map
+   */
   public Map getContentsMap(boolean invert) {
-    // Add contents
-    BundleResource[] resources = getResources();
-    HashMap map = new HashMap();
-    for(int i=0; i<resources.length; i++) {
-      IPath src = resources[i].getSource();
-      IResource resource = project.findMember(src.removeFirstSegments(1));
-      if (resource == null) continue;
-      if (resource.getType() == IResource.FILE) {
-        try {
-          addFileToMap(map, (IFile) resource, resources[i].getDestination(), resources[i].getPattern(), invert);
-        } catch (Throwable t) {} 
-      } else if(resource.getType() == IResource.FOLDER) {
-        try {
-          addDirToMap(map, (IFolder) resource, resources[i].getDestination(), resources[i].getPattern(), invert);
-        } catch (Throwable t) {} 
-      }
-    }
-    return map;
+    return BundleContentsIndex.getDefault().getContents(project, getResources(), invert);
   }
   
   public File export(IBundleProject bundleProject, String path) throws CoreException {
+    return export(bundleProject, path, getContentsMap(true), new Date());
+  }
+  
+  /**
+   * Exports the bundle JAR with the given contents.
+   * 
+   * @param bundleProject bundle project
+   * @param path path of JAR file
+   * @param contents contents map, as returned by <code>getContentsMap(true)</code>
+   * @param buildDate build date put in manifest
+   * @return JAR file
+   * @throws CoreException if the JAR file can not be written
+   */
+  File export(IBundleProject bundleProject, String path, Map contents, Date buildDate) throws CoreException {
     JarOutputStream jos = null;
     InputStream is = null;
     File jarFile = null;
@@ -216,14 +218,12 @@ public class BundlePackDescription {
       // Create manifest output stream
       BundleManifest manifest = new BundleManifest(bundleProject.getBundleManifest());
       // Put build attributes
-      Date date = new Date();
-      manifest.getMainAttributes().putValue(BundleManifest.BUILD_DATE, date.toString());
+      manifest.getMainAttributes().putValue(BundleManifest.BUILD_DATE, buildDate.toString());
 
       try {
         jos = new JarOutputStream(new FileOutputStream(jarFile), manifest);
         
         // Add contents
-        Map contents = getContentsMap(true);
         for(Iterator i=contents.entrySet().iterator(); i.hasNext();) {
           Map.Entry entry = (Map.Entry) i.next();
           IPath src = (IPath) entry.getKey();
@@ -253,6 +253,88 @@ public class BundlePackDescription {
     
   }
   
+  /**
+   * Updates a bundle JAR previously exported from this pack description.
+   * <p>
+   * Entries which have the same source as when the JAR was exported and
+   * whose source is not in the set of changed files are copied from the
+   * existing JAR without being recompressed. New and changed entries are
+   * read from the workspace. The JAR is not written at all if neither the
+   * contents, the changed files nor the manifest have changed.
+   * </p>
+   * 
+   * @param bundleProject bundle project
+   * @param jarFile existing bundle JAR
+   * @param oldContents contents map used when the existing JAR was written
+   * @param contents current contents map
+   * @param changed full paths of files changed since the existing JAR was 
+   * written
+   * @param buildDate build date put in manifest
+   * @return true if the JAR is up to date, false if the JAR could not be
+   * updated and must be exported
+   */
+  boolean update(IBundleProject bundleProject, File jarFile, Map oldContents, Map contents, Set changed, Date buildDate) {
+    IPath manifestPath = project.getFile(IBundleProject.MANIFEST_FILE).getFullPath();
+    if (!changed.contains(manifestPath) && contents.equals(oldContents)) {
+      boolean modified = false;
+      for(Iterator i=changed.iterator(); i.hasNext() && !modified;) {
+        modified = contents.containsKey(i.next());
+      }
+      if (!modified) return true;
+    }
+    
+    File tmpFile = new File(jarFile.getPath()+".tmp");
+    JarUpdater updater = null;
+    boolean success = false;
+    try {
+      updater = new JarUpdater(jarFile, tmpFile);
+      
+      // Manifest is always written, build date is updated
+      BundleManifest manifest = new BundleManifest(bundleProject.getBundleManifest());
+      manifest.getMainAttributes().putValue(BundleManifest.BUILD_DATE, buildDate.toString());
+      updater.putManifest(manifest);
+      
+      for(Iterator i=contents.entrySet().iterator(); i.hasNext();) {
+        Map.Entry entry = (Map.Entry) i.next();
+        IPath src = (IPath) entry.getKey();
+        String name = (String) entry.getValue();
+        
+        // Copy unchanged entries
+        if (!changed.contains(src) && name.equals(oldContents.get(src)) 
+            && updater.copyEntry(name)) {
+          continue;
+        }
+        
+        IResource resource = project.findMember(src.removeFirstSegments(1));
+        if (resource == null || resource.getType() != IResource.FILE) continue;
+        File file = new File(resource.getRawLocation().toString());
+        if (!file.isFile()) continue;
+        FileInputStream fis = new FileInputStream(file);
+        try {
+          updater.putEntry(name, fis);
+        } finally {
+          fis.close();
+        }
+      }
+      updater.finish();
+      updater.close();
+      updater = null;
+      
+      // Replace existing JAR
+      if (jarFile.delete() && tmpFile.renameTo(jarFile)) {
+        success = true;
+      }
+    } catch (Throwable t) {
+      // Fall back to export
+    } finally {
+      if (updater != null) {
+        updater.close();
+      }
+      tmpFile.delete();
+    }
+    return success;
+  }
+  
   /****************************************************************************
    * Private worker methods
    ***************************************************************************/
@@ -317,56 +399,4 @@ public class BundlePackDescription {
       //jos.closeEntry();
     }
   }
-  
-  private void addDirToMap(Map map, IFolder folder, String path, Pattern pattern, boolean invert) throws CoreException {
-    if (folder == null) return;
-    IResource[] resources = folder.members();
-    
-    if (resources  == null) return;
-    if (path == null) path = "";
-    if (path.length() > 0 && !path.endsWith(SEPARATOR)) {
-      path += SEPARATOR;
-    }
-    
-    StringBuffer buf = new StringBuffer(path);
-    int pathLen = path.length();
-    for (int i=0; i<resources.length; i++) {
-      buf.setLength(pathLen);
-      if (resources[i] instanceof IFolder) {
-        // Skip subversion and CVS directories
-        String folderName = resources[i].getName();
-        if(!".svn".equalsIgnoreCase(folderName) && !"CVS".equalsIgnoreCase(folderName)) {
-          buf.append(resources[i].getName());
-          buf.append(SEPARATOR);
-          addDirToMap(map, (IFolder) resources[i], buf.toString(), pattern, invert);
-        }
-      } else if (resources[i] instanceof IFile) {
-        buf.append(resources[i].getName());
-        addFileToMap(map, (IFile) resources[i], buf.toString(), pattern, invert);
-      }
-    }
-  }
-  
-  private void addFileToMap(Map map, IFile file, String path, Pattern pattern, boolean invert) { 
-    if (file == null) return;
-    
-    // Check pattern
-    if (pattern != null) {
-      String name = file.getName();
-      if (!pattern.matcher(name).matches()) return;
-    }
-    
-    if (path == null || path.trim().length() == 0) {
-      path = file.getName();
-    }
-    
-    if (path.startsWith(SEPARATOR)){
-      path = path.substring(1);
-    }
-    if (invert) {
-      map.put(file.getFullPath(), path);
-    } else {
-      map.put(path, file.getFullPath());
-    }
-  }
 }
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+
+/**
+ * Packages bundle JARs of several projects in parallel.
+ * <p>
+ * When parallel packaging is enabled in the preferences the bundle builder
+ * only collects what shall be written and hands the packaging over to a
+ * bounded pool of worker threads, one thread per processor. The builder
+ * then continues with the next project while the JAR is written. Packaging
+ * tasks of different projects are independent, at most one task per project
+ * is pending.
+ * </p>
+ * <p>
+ * Tasks read the class files and resources of their project without holding
+ * a scheduling rule. To keep the next build from changing them while a JAR
+ * is written, each workspace build waits for all running tasks before any
+ * builder runs.
+ * </p>
+ * <p>
+ * The result of a task is kept until the builder joins the task of the
+ * project, at the start of the next build of the project. The workspace is
+ * refreshed once when all pending tasks are done, by a single job refreshing
+ * all written JAR files and marking projects whose JAR failed to be written
+ * with a problem marker. Use {@link #join(IProgressMonitor)} to wait until
+ * all bundle JARs are written and refreshed.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class BundlePackager {
+
+  /**
+   * Job family of the job refreshing packaged JAR files.
+   */
+  public static final Object FAMILY = BundlePackager.class;
+
+  private static final int THREADS = Math.max(1, Runtime.getRuntime()
+      .availableProcessors());
+  private static final long POLL_INTERVAL = 100;
+
+  private static final ThreadPoolExecutor executor;
+  static {
+    executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new PackagerThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        new BuildListener(), IResourceChangeEvent.PRE_BUILD);
+  }
+
+  // Project name -> packaging task not yet joined by the builder
+  private static final Map<String, Future<?>> pending = new HashMap<String, Future<?>>();
+  // Number of packaging tasks not yet done
+  private static int running = 0;
+  // Files to refresh when all tasks are done
+  private static final Set<IFile> refreshFiles = new LinkedHashSet<IFile>();
+  // Project -> packaging status, markers updated when all tasks are done
+  private static final Map<IProject, IStatus> results = new LinkedHashMap<IProject, IStatus>();
+
+  /**
+   * Schedules packaging of a bundle JAR. Any pending task of the same
+   * project must have been joined first.
+   *
+   * @param project bundle project
+   * @param file JAR file written by the task, refreshed when all tasks are
+   *          done
+   * @param task packaging task, its result is returned when joined
+   */
+  static <T> void schedule(final IProject project, final IFile file, Callable<T> task)
+  {
+    FutureTask<T> future = new FutureTask<T>(task) {
+      protected void done()
+      {
+        BundlePackager.done(project, this, file);
+      }
+    };
+    synchronized (pending) {
+      pending.put(project.getName(), future);
+      running++;
+    }
+    executor.execute(future);
+  }
+
+  /**
+   * Waits for the pending packaging task of the given project, if any, and
+   * returns its result. The task is removed when joined.
+   *
+   * @param project bundle project
+   * @return result of the task, or null if no task is pending
+   * @throws CoreException if the task failed
+   */
+  static Object join(IProject project) throws CoreException
+  {
+    Future<?> future;
+    synchronized (pending) {
+      future = pending.remove(project.getName());
+    }
+    if (future == null) {
+      return null;
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          // The task must be done before the builder continues
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      throw toCoreException(e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Waits until all pending bundle JARs have been written and refreshed in
+   * the workspace.
+   *
+   * @param monitor progress monitor, may be null
+   * @throws InterruptedException if interrupted while waiting
+   * @throws OperationCanceledException if the monitor is canceled
+   */
+  public static void join(IProgressMonitor monitor) throws InterruptedException
+  {
+    synchronized (pending) {
+      while (running > 0) {
+        if (monitor != null && monitor.isCanceled()) {
+          throw new OperationCanceledException();
+        }
+        pending.wait(POLL_INTERVAL);
+      }
+    }
+    Job.getJobManager().join(FAMILY, monitor);
+  }
+
+  /**
+   * Updates the packaging problem marker of a project.
+   *
+   * @param project bundle project
+   * @param status packaging status, a marker is created if not OK
+   * @throws CoreException if the marker could not be updated
+   */
+  static void updateMarker(IProject project, IStatus status) throws CoreException
+  {
+    if (!project.isAccessible()) {
+      return;
+    }
+    project.deleteMarkers(BundleProject.MARKER_PACKAGING, false, IResource.DEPTH_ZERO);
+    if (!status.isOK()) {
+      IMarker marker = project.createMarker(BundleProject.MARKER_PACKAGING);
+      marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+      String message = status.getMessage();
+      if (status.getException() != null && status.getException().getMessage() != null) {
+        message = message + ": " + status.getException().getMessage();
+      }
+      marker.setAttribute(IMarker.MESSAGE, message);
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static void done(IProject project, Future<?> future, IFile file)
+  {
+    IStatus status = Status.OK_STATUS;
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      // Not waiting, task is done
+    } catch (ExecutionException e) {
+      status = toCoreException(e).getStatus();
+    }
+    synchronized (pending) {
+      running--;
+      refreshFiles.add(file);
+      results.put(project, status);
+      if (running == 0) {
+        new RefreshJob(refreshFiles.toArray(new IFile[refreshFiles.size()]),
+            new LinkedHashMap<IProject, IStatus>(results)).schedule();
+        refreshFiles.clear();
+        results.clear();
+        pending.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until all running tasks are done, without waiting for the refresh.
+   */
+  private static void waitForTasks()
+  {
+    boolean interrupted = false;
+    synchronized (pending) {
+      while (running > 0) {
+        try {
+          pending.wait();
+        } catch (InterruptedException e) {
+          // The tasks must be done before the build continues
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static CoreException toCoreException(ExecutionException e)
+  {
+    if (e.getCause() instanceof CoreException) {
+      return (CoreException) e.getCause();
+    }
+    return new CoreException(new Status(IStatus.ERROR,
+        "org.knopflerfish.eclipse.core", IStatus.OK,
+        "Failed to package bundle JAR", e.getCause()));
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+
+  /**
+   * Refreshes packaged JAR files and updates the packaging problem markers of
+   * their projects.
+   */
+  private static class RefreshJob extends WorkspaceJob {
+    private final IFile[] files;
+    private final Map<IProject, IStatus> results;
+
+    RefreshJob(IFile[] files, Map<IProject, IStatus> results)
+    {
+      super("Refreshing bundle JARs");
+      this.files = files;
+      this.results = results;
+      setSystem(true);
+
+      IResourceRuleFactory ruleFactory = ResourcesPlugin.getWorkspace()
+          .getRuleFactory();
+      ISchedulingRule rule = null;
+      for (int i = 0; i < files.length; i++) {
+        rule = MultiRule.combine(rule, ruleFactory.refreshRule(files[i]));
+      }
+      for (IProject project : results.keySet()) {
+        rule = MultiRule.combine(rule, ruleFactory.markerRule(project));
+      }
+      setRule(rule);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.eclipse.core.runtime.jobs.Job#belongsTo(java.lang.Object)
+     */
+    public boolean belongsTo(Object family)
+    {
+      return family == FAMILY;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.eclipse.core.resources.WorkspaceJob#runInWorkspace(org.eclipse.core.runtime.IProgressMonitor)
+     */
+    public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException
+    {
+      monitor.beginTask(getName(), files.length + results.size());
+      try {
+        for (int i = 0; i < files.length; i++) {
+          if (monitor.isCanceled()) {
+            return Status.CANCEL_STATUS;
+          }
+          files[i].refreshLocal(IResource.DEPTH_ZERO, null);
+          monitor.worked(1);
+        }
+        for (Map.Entry<IProject, IStatus> entry : results.entrySet()) {
+          updateMarker(entry.getKey(), entry.getValue());
+          monitor.worked(1);
+        }
+      } finally {
+        monitor.done();
+      }
+      return Status.OK_STATUS;
+    }
+  }
+
+  /**
+   * Waits for running packaging tasks before a workspace build starts.
+   */
+  private static class BuildListener implements IResourceChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
+     */
+    public void resourceChanged(IResourceChangeEvent event)
+    {
+      waitForTasks();
+    }
+  }
+
+  private static class PackagerThreadFactory implements ThreadFactory {
+    private int count = 0;
+
+    public synchronized Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r, "Bundle packager " + (++count));
+      t.setDaemon(true);
+      t.setPriority(Thread.NORM_PRIORITY - 1);
+      return t;
+    }
+  }
+}
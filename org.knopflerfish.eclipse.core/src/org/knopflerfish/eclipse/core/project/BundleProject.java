@@ -44,13 +44,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -79,9 +77,7 @@ import org.knopflerfish.eclipse.core.IBundleProject;
 import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
 import org.knopflerfish.eclipse.core.manifest.BundleIdentity;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
-import org.knopflerfish.eclipse.core.manifest.ManifestUtil;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
-import org.knopflerfish.eclipse.core.manifest.SymbolicName;
 import org.knopflerfish.eclipse.core.preferences.EnvironmentPreference;
 import org.knopflerfish.eclipse.core.preferences.FrameworkPreference;
 import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
@@ -112,6 +108,7 @@ public class BundleProject implements IBundleProject {
   public static final String MARKER_IMPORT_PACKAGES  = "org.knopflerfish.eclipse.core.packageImports";
   public static final String MARKER_DYNAMIC_IMPORT_PACKAGES  = "org.knopflerfish.eclipse.core.packageDynamicImports";
   public static final String MARKER_SYMBOLICNAME_AND_VERSION_CLASH = "org.knopflerfish.eclipse.core.symbolicNameVersionClash";
+  public static final String MARKER_PACKAGING = "org.knopflerfish.eclipse.core.packaging";
   
   private final IProject project;
   private final IJavaProject javaProject;
@@ -783,188 +780,25 @@ public class BundleProject implements IBundleProject {
    ***************************************************************************/
   
   public void checkManifest() throws CoreException {
-    
-    IFile manifestFile = javaProject.getProject().getFile(MANIFEST_FILE);
-    
-    InputStream is = null;
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    try {
-      try {
-        is = manifestFile.getContents(true);
-        
-        byte [] buf = new byte[256];
-        int numRead = 0;
-        while( (numRead = is.read(buf)) != -1) {
-          baos.write(buf, 0, numRead);
-        }
-      } finally {
-        if (is != null) is.close();
-        baos.flush();
-        baos.close();
-      }
-    } catch (Throwable t) {
-      IStatus status =
-        new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK, 
-            "Failure reading manifest contents", t);
-      OsgiPlugin.log(status);
-    }
-    StringBuffer manifestContents = new StringBuffer(baos.toString());
-    BundleManifest manifest = getBundleManifest();
-    
-    // Check Bundle activator
-    updateMarker(MARKER_BUNDLE_ACTIVATOR, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_ACTIVATOR), 
-        checkManifestBundleActivator(manifest), 
-        IMarker.SEVERITY_ERROR,
-        manifestFile);
-    
-    // Check Bundle name
-    updateMarker(MARKER_BUNDLE_NAME, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_NAME), 
-        checkManifestBundleName(manifest), 
-        IMarker.SEVERITY_WARNING,
-        manifestFile);
-    
-    // Check Bundle symbolic name
-    SymbolicName symbolicName = manifest.getSymbolicName();
-    String error = null;
-    int severity = IMarker.SEVERITY_WARNING;
-    manifestFile.deleteMarkers(MARKER_BUNDLE_SYMBOLICNAME, false, IResource.DEPTH_INFINITE);
-    if (symbolicName == null || symbolicName.getSymbolicName().trim().length() == 0) {
-      error = "Symbolic name must be set.";
-      severity = IMarker.SEVERITY_ERROR;
-    } else {
-      IStatus status = JavaConventions.validatePackageName(symbolicName.getSymbolicName());
-      if (status.getSeverity() == IStatus.ERROR) {
-        error = "Symbolic name is not a valid package name.";
-        severity = manifest.isR4() ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING;
-      }
-    }
-    updateMarker(MARKER_BUNDLE_SYMBOLICNAME, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_SYMBOLIC_NAME), 
-        error, 
-        severity,
-        manifestFile);
-    
-    // Check Bundle version
-    updateMarker(MARKER_BUNDLE_VERSION, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_VERSION), 
-        checkManifestBundleVersion(manifest), 
-        IMarker.SEVERITY_ERROR,
-        manifestFile);
-    
-    manifestFile.deleteMarkers(MARKER_SYMBOLICNAME_AND_VERSION_CLASH, false, IResource.DEPTH_INFINITE);
-    if (manifest.isR4()) {
-      // Check uniqueness
-      IBundleProject[] projects = ProjectUtil.getBundleProjects();
-      for (int i = 0; i < projects.length; i++) {
-        if (!projects[i].getProject().getName().equals(getProject().getName()) && 
-            getId().equals(projects[i].getId())) {
-          String errorMsg = "Bundle-ManifestVersion set to 2 requires SymbolicName and Version to be unique.";
-          
-          updateMarker(MARKER_SYMBOLICNAME_AND_VERSION_CLASH,
-              ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_MANIFESTVERSION),
-              errorMsg,
-              IMarker.SEVERITY_ERROR,
-              manifestFile);
-        }
-      }
-    }
-    
-    // Check Bundle update location
-    updateMarker(MARKER_BUNDLE_UPDATELOCATION, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_UPDATELOCATION), 
-        checkManifestUpdateLocation(manifest), 
-        IMarker.SEVERITY_WARNING,
-        manifestFile);
-    
-    // Check Bundle doc url
-    updateMarker(MARKER_BUNDLE_DOCURL, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_DOCURL), 
-        checkManifestDocUrl(manifest), 
-        IMarker.SEVERITY_WARNING,
-        manifestFile);
-    
-    // Check Execution Environment
-    updateMarker(MARKER_BUNDLE_EXEC_ENV, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_EXEC_ENV), 
-        checkManifestExecutionEnvironment(manifest), 
-        IMarker.SEVERITY_WARNING,
-        manifestFile);
-    
-    // Check Bundle classpath
-    updateMarker(MARKER_BUNDLE_CLASSPATH, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.BUNDLE_CLASSPATH), 
-        checkManifestBundleClassPath(manifest), 
-        IMarker.SEVERITY_ERROR,
-        manifestFile);
-    
-    // Check Exports
-    updateMarker(MARKER_EXPORT_PACKAGES, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.EXPORT_PACKAGE), 
-        checkPackageExports(manifest), 
-        IMarker.SEVERITY_ERROR,
-        manifestFile);
-    
-    // Check Dynamic Imports
-    updateMarker(MARKER_DYNAMIC_IMPORT_PACKAGES, 
-        ManifestUtil.findAttributeLine(manifestContents, BundleManifest.DYNAMIC_IMPORT_PACKAGE), 
-        checkPackageDynamicImports(manifest), 
-        IMarker.SEVERITY_ERROR,
-        manifestFile);
-    
-    // Check Imports, get needed packages and check against manifest
-    // Warn if imports are done that are not needed
-    // Error if imports other to java. are done and are not specified in manifest.
-    List neededPackageNames = Arrays.asList(getReferencedPackageNames());
-    PackageDescription[] importedPackages = manifest.getImportedPackages();
-    ArrayList importedPackageNames = new ArrayList();
-    for (int i=0; i<importedPackages.length; i++) {
-      importedPackageNames.add(importedPackages[i].getPackageName());
-    }
-    
-    error = null;
-    severity = IMarker.SEVERITY_WARNING;
-    int line = ManifestUtil.findAttributeLine(manifestContents, BundleManifest.IMPORT_PACKAGE); 
-    manifestFile.deleteMarkers(MARKER_IMPORT_PACKAGES, false, IResource.DEPTH_INFINITE);
-    for(int i=0; i<neededPackageNames.size();i++) {
-      String name = (String) neededPackageNames.get(i);
-      if (!importedPackageNames.contains(name)) {
-        IMarker marker = manifestFile.createMarker(MARKER_IMPORT_PACKAGES);
-        if (marker.exists()) {
-          marker.setAttribute(IMarker.MESSAGE, "The package "+name+" is used but not imported in manifest.");
-          marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
-          if (line != -1) {
-            marker.setAttribute(IMarker.LINE_NUMBER, line);
-          }
-        }
-        
-      }
-    }
-    for(int i=0; i<importedPackageNames.size();i++) {
-      String name = (String) importedPackageNames.get(i);
-      if (!neededPackageNames.contains(name)) {
-        IMarker marker = manifestFile.createMarker(MARKER_IMPORT_PACKAGES);
-        if (marker.exists()) {
-          marker.setAttribute(IMarker.MESSAGE, "The package "+name+" is imported in manifest but is never directly referenced in the source code.");
-          marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-          if (line != -1) {
-            marker.setAttribute(IMarker.LINE_NUMBER, line);
-          }
-        }
-        
-      }
-    }
+    new ManifestValidator(this).validate(null);
   }
   
   public String checkManifestBundleActivator(BundleManifest manifest) throws CoreException {
     // Check that bundle activator class exists
     String activator = manifest.getActivator();
     if (activator != null) {
-      IType[] types = getBundleActivators();
-      for(int i=0; i<types.length;i++) {
-        if (activator.trim().equals(types[i].getFullyQualifiedName())) {
-          return null;
+      // Look up activator directly instead of searching all implementors
+      IType type = javaProject.findType(activator.trim());
+      if (type != null && type.isClass()) {
+        IPackageFragmentRoot root = (IPackageFragmentRoot) type.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        if (root != null && root.getKind() == IPackageFragmentRoot.K_SOURCE &&
+            javaProject.equals(root.getAncestor(IJavaElement.JAVA_PROJECT))) {
+          IType[] interfaces = type.newSupertypeHierarchy(null).getAllSuperInterfaces(type);
+          for(int i=0; i<interfaces.length;i++) {
+            if ("org.osgi.framework.BundleActivator".equals(interfaces[i].getFullyQualifiedName())) {
+              return null;
+            }
+          }
         }
       }
       //Could not find activator
@@ -1088,25 +922,6 @@ public class BundleProject implements IBundleProject {
     return null;
   }
   
-  private void updateMarker(String type, int line, String error, int severity, IFile file) throws CoreException {
-    
-    if (error != null) {
-      IMarker[] existingMarkers = file.findMarkers(type, false, IResource.DEPTH_INFINITE);
-      if (existingMarkers == null || existingMarkers.length == 0) { 
-        IMarker marker = file.createMarker(type);
-        if (marker.exists()) {
-          marker.setAttribute(IMarker.MESSAGE, error);
-          marker.setAttribute(IMarker.SEVERITY, severity);
-          if (line != -1) {
-            marker.setAttribute(IMarker.LINE_NUMBER, line);
-          }
-        }
-      }
-    } else {
-      file.deleteMarkers(type, false, IResource.DEPTH_INFINITE);
-    }
-  }
-  
   /****************************************************************************
    * Private worker methods
    ***************************************************************************/
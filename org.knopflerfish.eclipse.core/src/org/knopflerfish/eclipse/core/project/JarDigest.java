@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.QualifiedName;
+import org.knopflerfish.eclipse.core.IBundleProject;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+
+/**
+ * Digest of the inputs of a bundle JAR, i.e. the entry names, the contents
+ * of the packaged files and the manifest without build date.
+ * <p>
+ * The digest of the last written JAR is stored as a persistent property of
+ * the project together with the size and modification time of the JAR. The
+ * bundle builder uses it to skip writing a JAR which would get the same
+ * contents as the existing one.
+ * </p>
+ * <p>
+ * File hashes are cached by size and modification time, so only files that
+ * have changed since the last digest are read.
+ * </p>
+ * <p>
+ * The last modification time of the contents is the time of the newest of
+ * the manifest and the packaged files, or the time when the set of entry
+ * names last changed if later, so that removing an entry also gives a new
+ * time. The entry names are digested and stored together with the time they
+ * changed as a persistent property of the project.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class JarDigest {
+
+  private static final QualifiedName DIGEST_PROPERTY = new QualifiedName(
+      "org.knopflerfish.eclipse.core", "jarDigest");
+  private static final QualifiedName ENTRIES_PROPERTY = new QualifiedName(
+      "org.knopflerfish.eclipse.core", "jarEntries");
+  private static final String ALGORITHM = "SHA-1";
+  private static final String SEPARATOR = "\n";
+
+  private final IProject project;
+  // Packaged file -> file hash
+  private final Map<File, FileHash> hashes = new HashMap<File, FileHash>();
+  private long lastModified;
+
+  JarDigest(IProject project)
+  {
+    this.project = project;
+  }
+
+  /**
+   * Computes the digest of the given contents.
+   *
+   * @param bundleProject bundle project
+   * @param contents contents map, as returned by
+   *          <code>getContentsMap(true)</code>
+   * @return digest as hex string
+   * @throws IOException if a file can not be read
+   */
+  synchronized String compute(IBundleProject bundleProject, Map contents) throws IOException
+  {
+    MessageDigest md = createDigest();
+
+    // Manifest without build date
+    BundleManifest manifest = new BundleManifest(bundleProject.getBundleManifest());
+    manifest.getMainAttributes().remove(new Attributes.Name(BundleManifest.BUILD_DATE));
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    manifest.write(bout);
+    md.update(bout.toByteArray());
+    lastModified = getManifestModified();
+
+    Map<String, File> entries = getEntries(contents);
+    Map<File, FileHash> usedHashes = new HashMap<File, FileHash>();
+    for (Map.Entry<String, File> entry : entries.entrySet()) {
+      File file = entry.getValue();
+      FileHash hash = hashes.get(file);
+      long length = file.length();
+      long modified = file.lastModified();
+      if (hash == null || hash.length != length || hash.modified != modified) {
+        hash = new FileHash(length, modified, hash(file));
+      }
+      usedHashes.put(file, hash);
+      lastModified = Math.max(lastModified, modified);
+
+      md.update(entry.getKey().getBytes("UTF-8"));
+      md.update((byte) 0);
+      md.update(hash.hash);
+    }
+    lastModified = Math.max(lastModified, getEntriesModified(entries.keySet()));
+
+    // Only keep hashes of current contents
+    hashes.clear();
+    hashes.putAll(usedHashes);
+
+    return toHex(md.digest());
+  }
+
+  /**
+   * Computes the latest modification time of the manifest and the files of
+   * the given contents, without reading the files as when computing the
+   * digest.
+   *
+   * @param contents contents map, as returned by
+   *          <code>getContentsMap(true)</code>
+   * @return modification time in milliseconds
+   * @throws IOException if the entry names can not be digested
+   */
+  synchronized long computeLastModified(Map contents) throws IOException
+  {
+    lastModified = getManifestModified();
+    Map<String, File> entries = getEntries(contents);
+    for (File file : entries.values()) {
+      lastModified = Math.max(lastModified, file.lastModified());
+    }
+    lastModified = Math.max(lastModified, getEntriesModified(entries.keySet()));
+    return lastModified;
+  }
+
+  /**
+   * Returns the latest modification time of the manifest, the files and the
+   * entry names included in the last computed digest or modification time.
+   *
+   * @return modification time in milliseconds
+   */
+  synchronized long getLastModified()
+  {
+    return lastModified;
+  }
+
+  /**
+   * Returns true if the given JAR file is unchanged since it was written
+   * with the given digest.
+   *
+   * @param jarFile bundle JAR
+   * @param digest digest of contents to write
+   * @return true if the JAR need not be written
+   */
+  boolean isWritten(File jarFile, String digest)
+  {
+    try {
+      return jarFile.isFile()
+          && getStamp(jarFile, digest).equals(project.getPersistentProperty(DIGEST_PROPERTY));
+    } catch (CoreException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Stores the digest of a written JAR file.
+   *
+   * @param jarFile bundle JAR
+   * @param digest digest of written contents, or null if the digest shall
+   *          be cleared
+   */
+  void setWritten(File jarFile, String digest)
+  {
+    try {
+      project.setPersistentProperty(DIGEST_PROPERTY,
+          digest == null ? null : getStamp(jarFile, digest));
+    } catch (CoreException e) {
+      // Digest is computed and JAR written again next build
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private long getManifestModified()
+  {
+    IFile manifestFile = project.getFile(IBundleProject.MANIFEST_FILE);
+    if (manifestFile.getLocation() == null) {
+      return 0;
+    }
+    return manifestFile.getLocation().toFile().lastModified();
+  }
+
+  /**
+   * Returns the packaged files by entry name, sorted by name. Entries whose
+   * source is not an existing file are left out.
+   */
+  private Map<String, File> getEntries(Map contents)
+  {
+    Map<String, File> entries = new TreeMap<String, File>();
+    for (Iterator i = contents.entrySet().iterator(); i.hasNext();) {
+      Map.Entry entry = (Map.Entry) i.next();
+      IPath src = (IPath) entry.getKey();
+      IResource resource = project.findMember(src.removeFirstSegments(1));
+      if (resource == null || resource.getType() != IResource.FILE) continue;
+      File file = new File(resource.getRawLocation().toString());
+      if (!file.isFile()) continue;
+      entries.put((String) entry.getValue(), file);
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the time when the set of entry names last changed, or 0 if not
+   * known to have changed.
+   */
+  private long getEntriesModified(Set<String> names) throws IOException
+  {
+    MessageDigest md = createDigest();
+    for (String name : names) {
+      md.update(name.getBytes("UTF-8"));
+      md.update((byte) 0);
+    }
+    String digest = toHex(md.digest());
+    try {
+      String stamp = project.getPersistentProperty(ENTRIES_PROPERTY);
+      long modified = 0;
+      if (stamp != null) {
+        int i = stamp.indexOf(SEPARATOR);
+        if (i != -1 && stamp.substring(0, i).equals(digest)) {
+          return Long.parseLong(stamp.substring(i + 1));
+        }
+        modified = System.currentTimeMillis();
+      }
+      project.setPersistentProperty(ENTRIES_PROPERTY, digest + SEPARATOR + modified);
+      return modified;
+    } catch (CoreException e) {
+      // Change of entries not reflected in modification time
+      return 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static String getStamp(File jarFile, String digest)
+  {
+    return digest + SEPARATOR + jarFile.getName() + SEPARATOR
+        + jarFile.length() + SEPARATOR + jarFile.lastModified();
+  }
+
+  private static MessageDigest createDigest() throws IOException
+  {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      IOException ioe = new IOException("Digest algorithm " + ALGORITHM + " not available");
+      ioe.initCause(e);
+      throw ioe;
+    }
+  }
+
+  private static byte[] hash(File file) throws IOException
+  {
+    MessageDigest md = createDigest();
+    InputStream is = new FileInputStream(file);
+    try {
+      byte [] buf = new byte[8192];
+      int numRead = 0;
+      while ( (numRead = is.read(buf)) != -1) {
+        md.update(buf, 0, numRead);
+      }
+    } finally {
+      is.close();
+    }
+    return md.digest();
+  }
+
+  private static String toHex(byte[] bytes)
+  {
+    StringBuffer buf = new StringBuffer(bytes.length * 2);
+    for (int i = 0; i < bytes.length; i++) {
+      buf.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+      buf.append(Character.forDigit(bytes[i] & 0xf, 16));
+    }
+    return buf.toString();
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class FileHash {
+    final long length;
+    final long modified;
+    final byte[] hash;
+
+    FileHash(long length, long modified, byte[] hash)
+    {
+      this.length = length;
+      this.modified = modified;
+      this.hash = hash;
+    }
+  }
+}
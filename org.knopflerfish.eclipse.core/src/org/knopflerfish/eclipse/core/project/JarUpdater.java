@@ -0,0 +1,503 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.knopflerfish.eclipse.core.ManifestReader;
+
+/**
+ * Writes a new JAR file based on an existing JAR file.
+ * <p>
+ * Entries copied from the existing JAR file are copied as raw compressed
+ * data, i.e. they are neither inflated nor deflated again. Only entries
+ * added with {@link #putEntry(String, InputStream)} are compressed.
+ * </p>
+ * <p>
+ * ZIP64 archives are not supported. An {@link IOException} is thrown if the
+ * existing JAR file is a ZIP64 archive or if the new JAR file would need to
+ * be one, in which case the JAR file should be written using a
+ * {@link java.util.jar.JarOutputStream} instead.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class JarUpdater {
+
+  private static final int LOC_SIG = 0x04034b50;
+  private static final int EXT_SIG = 0x08074b50;
+  private static final int CEN_SIG = 0x02014b50;
+  private static final int END_SIG = 0x06054b50;
+
+  private static final int LOC_HDR = 30;
+  private static final int EXT_HDR = 16;
+  private static final int CEN_HDR = 46;
+  private static final int END_HDR = 22;
+  private static final int END_MAXLEN = 0xFFFF + END_HDR;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final int FLAG_ENCRYPTED = 0x01;
+  private static final int FLAG_DESCRIPTOR = 0x08;
+  private static final int FLAG_UTF8 = 0x0800;
+
+  private static final int MAX_ENTRIES = 0xFFFF;
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+  private final RandomAccessFile source;
+  // Entries in existing JAR file, name -> entry
+  private final Map<String, Entry> sourceEntries = new HashMap<String, Entry>();
+
+  private OutputStream out;
+  private long written = 0;
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private final Set<String> names = new HashSet<String>();
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CRC32 crc = new CRC32();
+  private final byte[] buf = new byte[8192];
+  private final byte[] hdr = new byte[CEN_HDR];
+
+  /**
+   * Creates an updater copying entries from the given JAR file to the given
+   * target file. The target file must not be the same as the source file.
+   *
+   * @param sourceFile existing JAR file
+   * @param targetFile new JAR file
+   * @throws IOException if the existing JAR file can not be read or the
+   *           target file can not be created
+   */
+  JarUpdater(File sourceFile, File targetFile) throws IOException
+  {
+    source = new RandomAccessFile(sourceFile, "r");
+    try {
+      readCentralDirectory();
+      out = new BufferedOutputStream(new FileOutputStream(targetFile));
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the manifest. Shall be called before any other entries are
+   * written.
+   *
+   * @param manifest manifest
+   * @throws IOException if writing fails
+   */
+  void putManifest(Manifest manifest) throws IOException
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    manifest.write(bout);
+    putEntry(ManifestReader.MANIFEST_NAME, new ByteArrayInputStream(bout
+        .toByteArray()));
+  }
+
+  /**
+   * Copies the entry with the given name from the existing JAR file without
+   * recompressing it.
+   *
+   * @param name entry name
+   * @return true if the entry was copied, false if the existing JAR file has
+   *         no such entry or if an entry with the same name has already been
+   *         written
+   * @throws IOException if copying fails
+   */
+  boolean copyEntry(String name) throws IOException
+  {
+    Entry src = sourceEntries.get(name);
+    if (src == null || names.contains(name)) {
+      return false;
+    }
+
+    // Locate data using the local header
+    source.seek(src.offset);
+    source.readFully(hdr, 0, LOC_HDR);
+    if (getInt(hdr, 0) != LOC_SIG) {
+      throw new IOException("Invalid local header for entry " + name);
+    }
+    long dataPos = src.offset + LOC_HDR + getShort(hdr, 26) + getShort(hdr, 28);
+
+    Entry entry = new Entry(src.name, src.flag & ~FLAG_DESCRIPTOR, src.method,
+        src.time);
+    entry.crc = src.crc;
+    entry.csize = src.csize;
+    entry.size = src.size;
+    beginEntry(name, entry);
+
+    source.seek(dataPos);
+    long remaining = src.csize;
+    while (remaining > 0) {
+      int n = source.read(buf, 0, (int) Math.min(buf.length, remaining));
+      if (n < 0) {
+        throw new IOException("Unexpected end of entry " + name);
+      }
+      out.write(buf, 0, n);
+      remaining -= n;
+    }
+    written += src.csize;
+    return true;
+  }
+
+  /**
+   * Writes a new deflated entry with the data read from the given stream.
+   * The stream is not closed.
+   *
+   * @param name entry name
+   * @param in entry data
+   * @return true if the entry was written, false if an entry with the same
+   *         name has already been written
+   * @throws IOException if reading or writing fails
+   */
+  boolean putEntry(String name, InputStream in) throws IOException
+  {
+    if (names.contains(name)) {
+      return false;
+    }
+
+    // Sizes and checksum are written in a data descriptor after the data
+    byte[] nameBytes = name.getBytes("UTF-8");
+    int flag = FLAG_DESCRIPTOR;
+    if (nameBytes.length != name.length()) {
+      flag |= FLAG_UTF8;
+    }
+    Entry entry = new Entry(nameBytes, flag, DEFLATED,
+        toDosTime(System.currentTimeMillis()));
+    beginEntry(name, entry);
+
+    deflater.reset();
+    crc.reset();
+    byte[] deflated = new byte[buf.length];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      if (n == 0) {
+        continue;
+      }
+      crc.update(buf, 0, n);
+      deflater.setInput(buf, 0, n);
+      while (!deflater.needsInput()) {
+        writeDeflated(deflated);
+      }
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      writeDeflated(deflated);
+    }
+
+    entry.crc = crc.getValue();
+    entry.csize = deflater.getBytesWritten();
+    entry.size = deflater.getBytesRead();
+    if (entry.csize >= MAX_SIZE || entry.size >= MAX_SIZE) {
+      throw new IOException("Entry " + name + " requires ZIP64");
+    }
+    putInt(hdr, 0, EXT_SIG);
+    putInt(hdr, 4, (int) entry.crc);
+    putInt(hdr, 8, (int) entry.csize);
+    putInt(hdr, 12, (int) entry.size);
+    out.write(hdr, 0, EXT_HDR);
+    written += EXT_HDR;
+    return true;
+  }
+
+  /**
+   * Writes the central directory. No entries may be written after this
+   * method has been called.
+   *
+   * @throws IOException if writing fails
+   */
+  void finish() throws IOException
+  {
+    long cenOffset = written;
+    for (Entry entry : entries) {
+      putInt(hdr, 0, CEN_SIG);
+      putShort(hdr, 4, 20);
+      putShort(hdr, 6, entry.method == STORED ? 10 : 20);
+      putShort(hdr, 8, entry.flag);
+      putShort(hdr, 10, entry.method);
+      putInt(hdr, 12, entry.time);
+      putInt(hdr, 16, (int) entry.crc);
+      putInt(hdr, 20, (int) entry.csize);
+      putInt(hdr, 24, (int) entry.size);
+      putShort(hdr, 28, entry.name.length);
+      putShort(hdr, 30, 0);
+      putShort(hdr, 32, 0);
+      putShort(hdr, 34, 0);
+      putShort(hdr, 36, 0);
+      putInt(hdr, 38, 0);
+      putInt(hdr, 42, (int) entry.offset);
+      out.write(hdr, 0, CEN_HDR);
+      out.write(entry.name);
+      written += CEN_HDR + entry.name.length;
+    }
+    long cenSize = written - cenOffset;
+    if (written >= MAX_SIZE) {
+      throw new IOException("JAR file requires ZIP64");
+    }
+
+    putInt(hdr, 0, END_SIG);
+    putShort(hdr, 4, 0);
+    putShort(hdr, 6, 0);
+    putShort(hdr, 8, entries.size());
+    putShort(hdr, 10, entries.size());
+    putInt(hdr, 12, (int) cenSize);
+    putInt(hdr, 16, (int) cenOffset);
+    putShort(hdr, 20, 0);
+    out.write(hdr, 0, END_HDR);
+    written += END_HDR;
+    out.flush();
+  }
+
+  /**
+   * Closes both the existing and the new JAR file.
+   */
+  void close()
+  {
+    deflater.end();
+    try {
+      source.close();
+    } catch (IOException e) {
+    }
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void readCentralDirectory() throws IOException
+  {
+    // Find end of central directory record
+    long length = source.length();
+    int len = (int) Math.min(length, END_MAXLEN);
+    if (len < END_HDR) {
+      throw new IOException("Not a JAR file");
+    }
+    byte[] end = new byte[len];
+    source.seek(length - len);
+    source.readFully(end);
+    int pos = -1;
+    for (int i = len - END_HDR; i >= 0; i--) {
+      if (getInt(end, i) == END_SIG) {
+        pos = i;
+        break;
+      }
+    }
+    if (pos == -1) {
+      throw new IOException("Not a JAR file");
+    }
+    int count = getShort(end, pos + 10);
+    long cenSize = getUInt(end, pos + 12);
+    long cenOff = getUInt(end, pos + 16);
+    if (count == 0xFFFF || cenOff == MAX_SIZE || cenSize == MAX_SIZE
+        || cenOff + cenSize > length) {
+      throw new IOException("ZIP64 or corrupt JAR file");
+    }
+
+    byte[] cen = new byte[(int) cenSize];
+    source.seek(cenOff);
+    source.readFully(cen);
+    int p = 0;
+    for (int i = 0; i < count; i++) {
+      if (p + CEN_HDR > cen.length || getInt(cen, p) != CEN_SIG) {
+        throw new IOException("Corrupt central directory");
+      }
+      int flag = getShort(cen, p + 8);
+      int method = getShort(cen, p + 10);
+      int nameLen = getShort(cen, p + 28);
+      int extraLen = getShort(cen, p + 30);
+      int commentLen = getShort(cen, p + 32);
+      if (p + CEN_HDR + nameLen > cen.length) {
+        throw new IOException("Corrupt central directory");
+      }
+      byte[] name = new byte[nameLen];
+      System.arraycopy(cen, p + CEN_HDR, name, 0, nameLen);
+
+      // Encrypted entries and unknown methods are never copied
+      if ((flag & FLAG_ENCRYPTED) == 0
+          && (method == STORED || method == DEFLATED)) {
+        Entry entry = new Entry(name, flag, method, getInt(cen, p + 12));
+        entry.crc = getUInt(cen, p + 16);
+        entry.csize = getUInt(cen, p + 20);
+        entry.size = getUInt(cen, p + 24);
+        entry.offset = getUInt(cen, p + 42);
+        if (entry.csize == MAX_SIZE || entry.size == MAX_SIZE
+            || entry.offset == MAX_SIZE) {
+          throw new IOException("ZIP64 JAR file");
+        }
+        sourceEntries.put(toString(name), entry);
+      }
+      p += CEN_HDR + nameLen + extraLen + commentLen;
+    }
+  }
+
+  private void beginEntry(String name, Entry entry) throws IOException
+  {
+    if (entries.size() >= MAX_ENTRIES || written >= MAX_SIZE) {
+      throw new IOException("JAR file requires ZIP64");
+    }
+    entry.offset = written;
+
+    boolean descriptor = (entry.flag & FLAG_DESCRIPTOR) != 0;
+    putInt(hdr, 0, LOC_SIG);
+    putShort(hdr, 4, entry.method == STORED ? 10 : 20);
+    putShort(hdr, 6, entry.flag);
+    putShort(hdr, 8, entry.method);
+    putInt(hdr, 10, entry.time);
+    putInt(hdr, 14, descriptor ? 0 : (int) entry.crc);
+    putInt(hdr, 18, descriptor ? 0 : (int) entry.csize);
+    putInt(hdr, 22, descriptor ? 0 : (int) entry.size);
+    putShort(hdr, 26, entry.name.length);
+    putShort(hdr, 28, 0);
+    out.write(hdr, 0, LOC_HDR);
+    out.write(entry.name);
+    written += LOC_HDR + entry.name.length;
+
+    entries.add(entry);
+    names.add(name);
+  }
+
+  private void writeDeflated(byte[] b) throws IOException
+  {
+    int n = deflater.deflate(b);
+    if (n > 0) {
+      out.write(b, 0, n);
+      written += n;
+    }
+  }
+
+  private static String toString(byte[] name)
+  {
+    try {
+      return new String(name, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is always supported
+      return new String(name);
+    }
+  }
+
+  /**
+   * Converts a Java time to an MS-DOS date and time, date in the high 16
+   * bits and time in the low 16 bits.
+   */
+  private static int toDosTime(long time)
+  {
+    Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis(time);
+    int year = cal.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return ((year - 1980) << 25) | ((cal.get(Calendar.MONTH) + 1) << 21)
+        | (cal.get(Calendar.DAY_OF_MONTH) << 16)
+        | (cal.get(Calendar.HOUR_OF_DAY) << 11)
+        | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+  }
+
+  private static int getShort(byte[] b, int off)
+  {
+    return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+  }
+
+  private static int getInt(byte[] b, int off)
+  {
+    return getShort(b, off) | (getShort(b, off + 2) << 16);
+  }
+
+  private static long getUInt(byte[] b, int off)
+  {
+    return getInt(b, off) & 0xFFFFFFFFL;
+  }
+
+  private static void putShort(byte[] b, int off, int v)
+  {
+    b[off] = (byte) v;
+    b[off + 1] = (byte) (v >> 8);
+  }
+
+  private static void putInt(byte[] b, int off, int v)
+  {
+    putShort(b, off, v);
+    putShort(b, off + 2, v >> 16);
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class Entry {
+    final byte[] name;
+    final int flag;
+    final int method;
+    final int time;
+    long crc;
+    long csize;
+    long size;
+    long offset;
+
+    Entry(byte[] name, int flag, int method, int time)
+    {
+      this.name = name;
+      this.flag = flag;
+      this.method = method;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.JavaConventions;
+import org.knopflerfish.eclipse.core.IBundleProject;
+import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
+import org.knopflerfish.eclipse.core.manifest.BundleIdentity;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.ManifestText;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.manifest.SymbolicName;
+import org.knopflerfish.eclipse.core.pkg.ProjectRegistry;
+
+/**
+ * Validates the manifest of a bundle project and updates the problem
+ * markers of the manifest file.
+ * <p>
+ * The validator remembers the manifest it last validated. When validating
+ * a build delta only the checks depending on what has changed are run,
+ * e.g. the package imports are only checked again if the imports in the
+ * manifest or the Java sources have changed. Checks only depending on the
+ * manifest are run every time the manifest has changed, since the marker
+ * lines may have moved.
+ * </p>
+ * <p>
+ * The uniqueness of symbolic name and version is checked using the
+ * workspace {@link ProjectRegistry}. When the identity of the bundle
+ * changes, the projects with the old or new identity are checked again.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class ManifestValidator {
+
+  // Changed parts of the project
+  private static final int MANIFEST         = 1;
+  private static final int PACK_DESCRIPTION = 2;
+  private static final int SOURCE           = 4;
+  private static final int STRUCTURE        = 8;
+  private static final int ALL              = 15;
+
+  private static final String MSG_NOT_UNIQUE = "Bundle-ManifestVersion set to 2 requires SymbolicName and Version to be unique.";
+
+  private final BundleProject bundleProject;
+
+  // Last validated manifest and identity
+  private BundleManifest validatedManifest = null;
+  private BundleIdentity validatedId = null;
+
+  ManifestValidator(BundleProject bundleProject)
+  {
+    this.bundleProject = bundleProject;
+  }
+
+  /**
+   * Validates the manifest.
+   *
+   * @param delta changes since last validation, or null if all checks shall
+   *          be run
+   * @throws CoreException if markers can not be updated
+   */
+  void validate(IResourceDelta delta) throws CoreException
+  {
+    int changes = ALL;
+    if (delta != null && validatedManifest != null) {
+      changes = getChanges(delta);
+    }
+    if (changes == 0) {
+      return;
+    }
+
+    IProject project = bundleProject.getProject();
+    IFile manifestFile = project.getFile(IBundleProject.MANIFEST_FILE);
+    if ((changes & MANIFEST) != 0) {
+      // Builder runs before the workspace delta is reported
+      ProjectRegistry.getDefault().refresh(project.getName());
+    }
+
+    // Read manifest once, used both for attributes and line numbers
+    byte[] bytes = readManifest(manifestFile);
+    ManifestText manifestText = new ManifestText(new String(bytes));
+    BundleManifest manifest;
+    try {
+      manifest = new BundleManifest(new ByteArrayInputStream(bytes));
+    } catch (IOException e) {
+      IStatus status =
+        new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK,
+            "Failed to get manifest for project " + project.getName(), e);
+      OsgiPlugin.log(status);
+      manifest = new BundleManifest();
+    }
+
+    if ((changes & MANIFEST) != 0) {
+      checkManifestAttributes(manifestFile, manifest, manifestText);
+    }
+
+    // Check Bundle activator
+    if ((changes & (SOURCE | STRUCTURE)) != 0
+        || isChanged(manifest, BundleManifest.BUNDLE_ACTIVATOR)) {
+      updateMarker(BundleProject.MARKER_BUNDLE_ACTIVATOR,
+          manifestText.getAttributeLine(BundleManifest.BUNDLE_ACTIVATOR),
+          bundleProject.checkManifestBundleActivator(manifest),
+          IMarker.SEVERITY_ERROR,
+          manifestFile);
+    } else if ((changes & MANIFEST) != 0) {
+      updateMarkerLine(BundleProject.MARKER_BUNDLE_ACTIVATOR,
+          manifestText.getAttributeLine(BundleManifest.BUNDLE_ACTIVATOR),
+          manifestFile);
+    }
+
+    // Check Bundle classpath
+    if ((changes & (PACK_DESCRIPTION | STRUCTURE)) != 0
+        || isChanged(manifest, BundleManifest.BUNDLE_CLASSPATH)) {
+      updateMarker(BundleProject.MARKER_BUNDLE_CLASSPATH,
+          manifestText.getAttributeLine(BundleManifest.BUNDLE_CLASSPATH),
+          bundleProject.checkManifestBundleClassPath(manifest),
+          IMarker.SEVERITY_ERROR,
+          manifestFile);
+    } else if ((changes & MANIFEST) != 0) {
+      updateMarkerLine(BundleProject.MARKER_BUNDLE_CLASSPATH,
+          manifestText.getAttributeLine(BundleManifest.BUNDLE_CLASSPATH),
+          manifestFile);
+    }
+
+    // Check Exports
+    if ((changes & STRUCTURE) != 0
+        || isChanged(manifest, BundleManifest.EXPORT_PACKAGE)
+        || isChanged(manifest, BundleManifest.BUNDLE_CLASSPATH)) {
+      updateMarker(BundleProject.MARKER_EXPORT_PACKAGES,
+          manifestText.getAttributeLine(BundleManifest.EXPORT_PACKAGE),
+          bundleProject.checkPackageExports(manifest),
+          IMarker.SEVERITY_ERROR,
+          manifestFile);
+    } else if ((changes & MANIFEST) != 0) {
+      updateMarkerLine(BundleProject.MARKER_EXPORT_PACKAGES,
+          manifestText.getAttributeLine(BundleManifest.EXPORT_PACKAGE),
+          manifestFile);
+    }
+
+    // Check Imports
+    if ((changes & (SOURCE | STRUCTURE)) != 0
+        || isChanged(manifest, BundleManifest.IMPORT_PACKAGE)) {
+      checkImports(manifestFile, manifest, manifestText);
+    } else if ((changes & MANIFEST) != 0) {
+      updateMarkerLine(BundleProject.MARKER_IMPORT_PACKAGES,
+          manifestText.getAttributeLine(BundleManifest.IMPORT_PACKAGE),
+          manifestFile);
+    }
+
+    // Check uniqueness, also of the projects sharing the old or new identity
+    if ((changes & MANIFEST) != 0) {
+      BundleIdentity id = getIdentity(manifest);
+      checkUniqueness(manifestFile, manifest, manifestText, id);
+      if (changes == ALL || !equals(id, validatedId)) {
+        Set<String> affected = new HashSet<String>();
+        if (id != null) {
+          affected.addAll(Arrays.asList(ProjectRegistry.getDefault().getProjects(id)));
+        }
+        if (validatedId != null) {
+          affected.addAll(Arrays.asList(ProjectRegistry.getDefault().getProjects(validatedId)));
+        }
+        affected.remove(project.getName());
+        for (String name : affected) {
+          checkUniqueness(ResourcesPlugin.getWorkspace().getRoot().getProject(name));
+        }
+      }
+      validatedId = id;
+    }
+
+    validatedManifest = manifest;
+  }
+
+  /**
+   * Updates a marker of the given manifest file. An existing marker is
+   * updated with the given error and line.
+   *
+   * @param type marker type
+   * @param line line number or -1 if unknown
+   * @param error error message, or null if marker shall be removed
+   * @param severity marker severity
+   * @param file manifest file
+   * @throws CoreException if marker can not be updated
+   */
+  static void updateMarker(String type, int line, String error, int severity, IFile file) throws CoreException
+  {
+    if (error != null) {
+      IMarker[] existingMarkers = file.findMarkers(type, false, IResource.DEPTH_INFINITE);
+      IMarker marker;
+      if (existingMarkers == null || existingMarkers.length == 0) {
+        marker = file.createMarker(type);
+      } else {
+        marker = existingMarkers[0];
+      }
+      if (marker.exists()) {
+        marker.setAttribute(IMarker.MESSAGE, error);
+        marker.setAttribute(IMarker.SEVERITY, severity);
+        if (line != -1) {
+          marker.setAttribute(IMarker.LINE_NUMBER, line);
+        }
+      }
+    } else {
+      file.deleteMarkers(type, false, IResource.DEPTH_INFINITE);
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+
+  /**
+   * Moves existing markers of the given type to the given line, used when
+   * the manifest has changed but the check need not be run again.
+   */
+  private static void updateMarkerLine(String type, int line, IFile file) throws CoreException
+  {
+    IMarker[] markers = file.findMarkers(type, false, IResource.DEPTH_INFINITE);
+    for (int i = 0; markers != null && i < markers.length; i++) {
+      if (line != -1) {
+        markers[i].setAttribute(IMarker.LINE_NUMBER, line);
+      } else {
+        markers[i].setAttribute(IMarker.LINE_NUMBER, null);
+      }
+    }
+  }
+  private void checkManifestAttributes(IFile manifestFile,
+                                       BundleManifest manifest,
+                                       ManifestText manifestText) throws CoreException
+  {
+    // Check Bundle name
+    updateMarker(BundleProject.MARKER_BUNDLE_NAME,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_NAME),
+        bundleProject.checkManifestBundleName(manifest),
+        IMarker.SEVERITY_WARNING,
+        manifestFile);
+
+    // Check Bundle symbolic name
+    SymbolicName symbolicName = manifest.getSymbolicName();
+    String error = null;
+    int severity = IMarker.SEVERITY_WARNING;
+    manifestFile.deleteMarkers(BundleProject.MARKER_BUNDLE_SYMBOLICNAME, false, IResource.DEPTH_INFINITE);
+    if (symbolicName == null || symbolicName.getSymbolicName().trim().length() == 0) {
+      error = "Symbolic name must be set.";
+      severity = IMarker.SEVERITY_ERROR;
+    } else {
+      IStatus status = JavaConventions.validatePackageName(symbolicName.getSymbolicName());
+      if (status.getSeverity() == IStatus.ERROR) {
+        error = "Symbolic name is not a valid package name.";
+        severity = manifest.isR4() ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING;
+      }
+    }
+    updateMarker(BundleProject.MARKER_BUNDLE_SYMBOLICNAME,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_SYMBOLIC_NAME),
+        error,
+        severity,
+        manifestFile);
+
+    // Check Bundle version
+    updateMarker(BundleProject.MARKER_BUNDLE_VERSION,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_VERSION),
+        bundleProject.checkManifestBundleVersion(manifest),
+        IMarker.SEVERITY_ERROR,
+        manifestFile);
+
+    // Check Bundle update location
+    updateMarker(BundleProject.MARKER_BUNDLE_UPDATELOCATION,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_UPDATELOCATION),
+        bundleProject.checkManifestUpdateLocation(manifest),
+        IMarker.SEVERITY_WARNING,
+        manifestFile);
+
+    // Check Bundle doc url
+    updateMarker(BundleProject.MARKER_BUNDLE_DOCURL,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_DOCURL),
+        bundleProject.checkManifestDocUrl(manifest),
+        IMarker.SEVERITY_WARNING,
+        manifestFile);
+
+    // Check Execution Environment
+    updateMarker(BundleProject.MARKER_BUNDLE_EXEC_ENV,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_EXEC_ENV),
+        bundleProject.checkManifestExecutionEnvironment(manifest),
+        IMarker.SEVERITY_WARNING,
+        manifestFile);
+
+    // Check Dynamic Imports
+    updateMarker(BundleProject.MARKER_DYNAMIC_IMPORT_PACKAGES,
+        manifestText.getAttributeLine(BundleManifest.DYNAMIC_IMPORT_PACKAGE),
+        bundleProject.checkPackageDynamicImports(manifest),
+        IMarker.SEVERITY_ERROR,
+        manifestFile);
+  }
+
+  /**
+   * Checks imports, get needed packages and check against manifest. Warn if
+   * imports are done that are not needed. Error if imports other to java.
+   * are done and are not specified in manifest.
+   */
+  private void checkImports(IFile manifestFile,
+                            BundleManifest manifest,
+                            ManifestText manifestText) throws CoreException
+  {
+    List<String> neededPackageNames = Arrays.asList(bundleProject.getReferencedPackageNames());
+    PackageDescription[] importedPackages = manifest.getImportedPackages();
+    List<String> importedPackageNames = new ArrayList<String>();
+    for (int i=0; i<importedPackages.length; i++) {
+      importedPackageNames.add(importedPackages[i].getPackageName());
+    }
+
+    int line = manifestText.getAttributeLine(BundleManifest.IMPORT_PACKAGE);
+    manifestFile.deleteMarkers(BundleProject.MARKER_IMPORT_PACKAGES, false, IResource.DEPTH_INFINITE);
+    for(int i=0; i<neededPackageNames.size();i++) {
+      String name = neededPackageNames.get(i);
+      if (!importedPackageNames.contains(name)) {
+        createImportMarker(manifestFile, line, IMarker.SEVERITY_ERROR,
+            "The package "+name+" is used but not imported in manifest.");
+      }
+    }
+    for(int i=0; i<importedPackageNames.size();i++) {
+      String name = importedPackageNames.get(i);
+      if (!neededPackageNames.contains(name)) {
+        createImportMarker(manifestFile, line, IMarker.SEVERITY_WARNING,
+            "The package "+name+" is imported in manifest but is never directly referenced in the source code.");
+      }
+    }
+  }
+
+  private static void createImportMarker(IFile manifestFile, int line, int severity, String message)
+      throws CoreException
+  {
+    IMarker marker = manifestFile.createMarker(BundleProject.MARKER_IMPORT_PACKAGES);
+    if (marker.exists()) {
+      marker.setAttribute(IMarker.MESSAGE, message);
+      marker.setAttribute(IMarker.SEVERITY, severity);
+      if (line != -1) {
+        marker.setAttribute(IMarker.LINE_NUMBER, line);
+      }
+    }
+  }
+
+  private static void checkUniqueness(IProject project) throws CoreException
+  {
+    if (!project.isOpen() || !project.hasNature(Osgi.NATURE_ID)) {
+      return;
+    }
+    IFile manifestFile = project.getFile(IBundleProject.MANIFEST_FILE);
+    if (!manifestFile.exists()) {
+      return;
+    }
+    byte[] bytes = readManifest(manifestFile);
+    try {
+      BundleManifest manifest = new BundleManifest(new ByteArrayInputStream(bytes));
+      checkUniqueness(manifestFile, manifest, new ManifestText(new String(bytes)),
+          getIdentity(manifest));
+    } catch (IOException e) {
+      // Reported when the project is built
+    }
+  }
+
+  private static void checkUniqueness(IFile manifestFile,
+                                      BundleManifest manifest,
+                                      ManifestText manifestText,
+                                      BundleIdentity id) throws CoreException
+  {
+    String error = null;
+    if (manifest.isR4() && id != null) {
+      String[] projects = ProjectRegistry.getDefault().getProjects(id);
+      for (int i = 0; i < projects.length; i++) {
+        if (!projects[i].equals(manifestFile.getProject().getName())) {
+          error = MSG_NOT_UNIQUE;
+          break;
+        }
+      }
+    }
+    updateMarker(BundleProject.MARKER_SYMBOLICNAME_AND_VERSION_CLASH,
+        manifestText.getAttributeLine(BundleManifest.BUNDLE_MANIFESTVERSION),
+        error,
+        IMarker.SEVERITY_ERROR,
+        manifestFile);
+  }
+
+  private static BundleIdentity getIdentity(BundleManifest manifest)
+  {
+    if (manifest.getSymbolicName() == null) {
+      return null;
+    }
+    return new BundleIdentity(manifest.getSymbolicName(), manifest.getVersion());
+  }
+
+  private static boolean equals(Object o1, Object o2)
+  {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+
+  private boolean isChanged(BundleManifest manifest, String attribute)
+  {
+    return validatedManifest == null
+        || !equals(manifest.getAttribute(attribute),
+            validatedManifest.getAttribute(attribute));
+  }
+
+  private int getChanges(IResourceDelta delta) throws CoreException
+  {
+    final IPath manifestPath = bundleProject.getProject().getFile(
+        IBundleProject.MANIFEST_FILE).getFullPath();
+    final IPath packPath = bundleProject.getProject().getFile(
+        IBundleProject.BUNDLE_PACK_FILE).getFullPath();
+    final IPath classpathPath = bundleProject.getProject().getFile(
+        IBundleProject.CLASSPATH_FILE).getFullPath();
+    final IPath outputPath = bundleProject.getJavaProject().getOutputLocation();
+
+    final int[] changes = new int[] {0};
+    delta.accept(new IResourceDeltaVisitor() {
+      public boolean visit(IResourceDelta delta) throws CoreException {
+        IResource res = delta.getResource();
+        IPath path = res.getFullPath();
+        if (path.equals(outputPath)) {
+          // Built classes and bundle JAR
+          return false;
+        }
+        boolean contentChanged = delta.getKind() != IResourceDelta.CHANGED
+          || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0;
+        if (res.getType() == IResource.FOLDER) {
+          if (delta.getKind() != IResourceDelta.CHANGED) {
+            changes[0] |= STRUCTURE;
+          }
+        } else if (res.getType() == IResource.FILE && contentChanged) {
+          if (path.equals(manifestPath)) {
+            changes[0] |= MANIFEST;
+          } else if (path.equals(packPath)) {
+            changes[0] |= PACK_DESCRIPTION;
+          } else if (path.equals(classpathPath)) {
+            changes[0] |= STRUCTURE;
+          } else {
+            if (delta.getKind() != IResourceDelta.CHANGED) {
+              changes[0] |= STRUCTURE;
+            }
+            if ("java".equals(path.getFileExtension())) {
+              changes[0] |= SOURCE;
+            }
+          }
+        }
+        return true;
+      }
+    });
+    return changes[0];
+  }
+
+  private static byte[] readManifest(IFile manifestFile)
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    if (!manifestFile.exists()) {
+      return baos.toByteArray();
+    }
+    InputStream is = null;
+    try {
+      try {
+        is = manifestFile.getContents(true);
+
+        byte [] buf = new byte[256];
+        int numRead = 0;
+        while( (numRead = is.read(buf)) != -1) {
+          baos.write(buf, 0, numRead);
+        }
+      } finally {
+        if (is != null) is.close();
+      }
+    } catch (Throwable t) {
+      IStatus status =
+        new Status(IStatus.ERROR, "org.knopflerfish.eclipse.core", IStatus.OK,
+            "Failure reading manifest contents", t);
+      OsgiPlugin.log(status);
+    }
+    return baos.toByteArray();
+  }
+}
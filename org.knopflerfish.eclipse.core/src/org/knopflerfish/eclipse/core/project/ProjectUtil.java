@@ -48,6 +48,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.JavaCore;
 import org.knopflerfish.eclipse.core.IBundleProject;
 import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.osgi.framework.Version;
 
 /**
@@ -66,8 +67,22 @@ public class ProjectUtil {
    * @return filename
    */
   public static String createFileName(IBundleProject project) {
-    StringBuffer buf = new StringBuffer(project.getJavaProject().getProject().getName());
-    Version version = project.getBundleManifest().getVersion();
+    return createFileName(project.getJavaProject().getProject().getName(),
+        project.getBundleManifest());
+  }
+
+  /**
+   * Creates a bundle filename based on project name and
+   * the version in the given manifest.
+   * 
+   * @param projectName name of bundle project.
+   * @param manifest manifest of bundle project.
+   * 
+   * @return filename
+   */
+  public static String createFileName(String projectName, BundleManifest manifest) {
+    StringBuffer buf = new StringBuffer(projectName);
+    Version version = manifest.getVersion();
     if (version != null) {
       buf.append("-");
       buf.append(version.toString());
@@ -75,7 +90,6 @@ public class ProjectUtil {
     buf.append(".jar");
     
     return buf.toString();
-    
   }
 
   /**
@@ -34,31 +34,12 @@
 
 package org.knopflerfish.eclipse.core.project.classpath;
 
-import java.util.ArrayList;
-
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.IClasspathContainer;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.JavaCore;
-import org.knopflerfish.eclipse.core.IBundleProject;
-import org.knopflerfish.eclipse.core.IBundleRepository;
-import org.knopflerfish.eclipse.core.IBundleRepositoryType;
-import org.knopflerfish.eclipse.core.IOsgiBundle;
-import org.knopflerfish.eclipse.core.IOsgiLibrary;
-import org.knopflerfish.eclipse.core.Osgi;
-import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
-import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.manifest.SymbolicName;
-import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
-import org.knopflerfish.eclipse.core.preferences.RepositoryPreference;
-import org.knopflerfish.eclipse.core.project.BundleProject;
 
 /**
  * @author Anders Rimn, Gatespace Telematics
@@ -94,83 +75,14 @@ public class BundleContainer implements IClasspathContainer {
     IClasspathEntry ice = ClasspathUtil.findClasspathEntry(project, path);
     packages = ClasspathUtil.getPackages(ice);
     
-    // Check if workspace contains bundle
-    try {
-      IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-      IProject [] projects = root.getProjects();
-      for(int i=0; projects != null && i<projects.length; i++) {
-        if (projects[i].isOpen() && projects[i].hasNature(Osgi.NATURE_ID)) {
-          IJavaProject javaProject = JavaCore.create(projects[i]);
-          IBundleProject bundleProject = new BundleProject(javaProject);
-          BundleManifest manifest = bundleProject.getBundleManifest();
-          if (symbolicName.equals(bundleProject.getId().getSymbolicName())) {
-            // Check that project exports the needed packages
-            boolean hasPackages = true;
-            if (packages != null) {
-              for (int j=0; j<packages.length; j++) {
-                if (!manifest.hasExportedPackage(packages[j])) {
-                  hasPackages = false;
-                }
-              }
-            }
-            if (!hasPackages) continue;
-            
-            // Found project exporting the needed packages, create
-            // classpath entry
-            name = manifest.getName();
-            IClasspathEntry entry = 
-              JavaCore.newProjectEntry(javaProject.getPath());
-            return new IClasspathEntry[] {entry};
-          }
-        }
-      }
-    } catch (CoreException e) {
-      OsgiPlugin.log(e.getStatus());
-    }
-
-    // Check if repository contains bundle
-    RepositoryPreference[] repositoryPref = OsgiPreferences.getBundleRepositories();
-    for (int i=0; i<repositoryPref.length; i++) {
-      if (!repositoryPref[i].isActive()) continue;
-      
-      IBundleRepositoryType repositoryType = Osgi.getBundleRepositoryType(repositoryPref[i].getType());
-      if (repositoryType == null) continue;
-      
-      IBundleRepository repository = repositoryType.createRepository(repositoryPref[i].getConfig());
-      if (repository == null) continue;
-
-      IOsgiLibrary[] libraries = repository.getBundleLibraries(symbolicName, packages);
-      if (libraries == null || libraries.length == 0) continue;
-
-      ArrayList entries = new ArrayList();
-      boolean libsOk = true;
-      for(int j=0; j<libraries.length; j++) {
-        if (libraries[j] instanceof IOsgiBundle) {
-          name = ((IOsgiBundle) libraries[j]).getBundleManifest().getName();
-        }
-        Path path = new Path(libraries[j].getPath());
-        if (!path.toFile().exists()) {
-          libsOk = false;
-          break;
-        }
-        Path src = null;
-        if (libraries[j].getSource() != null) {
-          try {
-            src = new Path(libraries[j].getSource());
-            if (!src.toFile().exists()) {
-              src = null;
-            }
-          } catch (Exception ignore) {
-          }
-        }
-        if (libsOk) {
-          entries.add(JavaCore.newLibraryEntry(path, src, null, false));
-        }
-      }
-      return (IClasspathEntry[]) entries.toArray(new IClasspathEntry[entries.size()]);
+    // Resolution is shared by all containers for the same bundle and
+    // packages
+    BundleResolutionCache.Resolution resolution = BundleResolutionCache
+        .resolve(symbolicName, packages);
+    if (resolution.name != null) {
+      name = resolution.name;
     }
-
-    return new IClasspathEntry[] {}; 
+    return resolution.entries.clone();
   }
 
   /*
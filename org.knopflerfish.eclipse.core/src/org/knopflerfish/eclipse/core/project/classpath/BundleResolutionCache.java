@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.core.project.classpath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.JavaCore;
+import org.knopflerfish.eclipse.core.IBundleRepository;
+import org.knopflerfish.eclipse.core.IBundleRepositoryType;
+import org.knopflerfish.eclipse.core.IOsgiBundle;
+import org.knopflerfish.eclipse.core.IOsgiLibrary;
+import org.knopflerfish.eclipse.core.Osgi;
+import org.knopflerfish.eclipse.core.manifest.BundleManifest;
+import org.knopflerfish.eclipse.core.manifest.PackageDescription;
+import org.knopflerfish.eclipse.core.manifest.SymbolicName;
+import org.knopflerfish.eclipse.core.pkg.ProjectRegistry;
+import org.knopflerfish.eclipse.core.preferences.OsgiPreferences;
+import org.knopflerfish.eclipse.core.preferences.RepositoryPreference;
+
+/**
+ * Shared cache of resolved bundle containers.
+ * <p>
+ * A bundle container is resolved to either a bundle project in the
+ * workspace or to the libraries of a bundle in one of the active bundle
+ * repositories. The result only depends on the symbolic name and the
+ * required packages, so containers with the same bundle and packages in
+ * different projects share the same resolution.
+ * </p>
+ * <p>
+ * The cache is cleared when a bundle project in the workspace changes, see
+ * {@link ProjectRegistry#getModificationStamp()}, and when bundle
+ * repositories are changed or refreshed, see {@link #clear()}. Unresolved
+ * containers are not cached, and a resolution to repository libraries is
+ * dropped when one of the library files has been removed or modified.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+public class BundleResolutionCache {
+
+  private static final Map<String, Resolution> cache = new HashMap<String, Resolution>();
+  private static long modificationStamp = -1;
+
+  /**
+   * Removes all cached resolutions. Shall be called when bundle repositories
+   * have been changed or refreshed.
+   */
+  public static synchronized void clear()
+  {
+    cache.clear();
+  }
+
+  /**
+   * Resolves the bundle with the given symbolic name exporting the given
+   * packages.
+   *
+   * @param symbolicName symbolic name of bundle
+   * @param packages packages that the bundle must export, may be null
+   * @return resolution, never null
+   */
+  static Resolution resolve(SymbolicName symbolicName,
+                            PackageDescription[] packages)
+  {
+    ProjectRegistry registry = ProjectRegistry.getDefault();
+    long stamp = registry.getModificationStamp();
+    String key = getKey(symbolicName, packages);
+    synchronized (BundleResolutionCache.class) {
+      if (modificationStamp != stamp) {
+        cache.clear();
+        modificationStamp = stamp;
+      }
+      Resolution resolution = cache.get(key);
+      if (resolution != null && resolution.isCurrent()) {
+        return resolution;
+      }
+      cache.remove(key);
+    }
+
+    Resolution resolution = resolveProject(registry, symbolicName, packages);
+    if (resolution == null) {
+      resolution = resolveRepository(symbolicName, packages);
+    }
+
+    // Unresolved bundles may be added to a repository later
+    if (resolution.entries.length == 0) {
+      return resolution;
+    }
+    synchronized (BundleResolutionCache.class) {
+      if (modificationStamp == stamp) {
+        cache.put(key, resolution);
+      }
+    }
+    return resolution;
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static String getKey(SymbolicName symbolicName,
+                               PackageDescription[] packages)
+  {
+    StringBuilder buf = new StringBuilder(symbolicName.getSymbolicName());
+    for (int i = 0; packages != null && i < packages.length; i++) {
+      buf.append(',');
+      buf.append(packages[i].toString());
+    }
+    return buf.toString();
+  }
+
+  private static Resolution resolveProject(ProjectRegistry registry,
+                                           SymbolicName symbolicName,
+                                           PackageDescription[] packages)
+  {
+    // Check if workspace contains bundle
+    String[] projects = registry.getProjects(symbolicName.getSymbolicName());
+    for (int i = 0; i < projects.length; i++) {
+      BundleManifest manifest = registry.getBundleManifest(projects[i]);
+      if (manifest == null) {
+        continue;
+      }
+
+      // Check that project exports the needed packages
+      boolean hasPackages = true;
+      for (int j = 0; packages != null && j < packages.length; j++) {
+        if (!manifest.hasExportedPackage(packages[j])) {
+          hasPackages = false;
+          break;
+        }
+      }
+      if (!hasPackages) {
+        continue;
+      }
+
+      // Found project exporting the needed packages, create
+      // classpath entry
+      IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(
+          projects[i]);
+      IClasspathEntry entry = JavaCore.newProjectEntry(project.getFullPath());
+      return new Resolution(manifest.getName(), new IClasspathEntry[] {entry});
+    }
+    return null;
+  }
+
+  private static Resolution resolveRepository(SymbolicName symbolicName,
+                                              PackageDescription[] packages)
+  {
+    // Check if repository contains bundle
+    RepositoryPreference[] repositoryPref = OsgiPreferences.getBundleRepositories();
+    for (int i = 0; i < repositoryPref.length; i++) {
+      if (!repositoryPref[i].isActive()) continue;
+
+      IBundleRepositoryType repositoryType = Osgi.getBundleRepositoryType(repositoryPref[i].getType());
+      if (repositoryType == null) continue;
+
+      IBundleRepository repository = repositoryType.createRepository(repositoryPref[i].getConfig());
+      if (repository == null) continue;
+
+      IOsgiLibrary[] libraries = repository.getBundleLibraries(symbolicName, packages);
+      if (libraries == null || libraries.length == 0) continue;
+
+      String name = null;
+      List<IClasspathEntry> entries = new ArrayList<IClasspathEntry>();
+      for (int j = 0; j < libraries.length; j++) {
+        if (libraries[j] instanceof IOsgiBundle) {
+          name = ((IOsgiBundle) libraries[j]).getBundleManifest().getName();
+        }
+        Path path = new Path(libraries[j].getPath());
+        if (!path.toFile().exists()) {
+          break;
+        }
+        Path src = null;
+        if (libraries[j].getSource() != null) {
+          try {
+            src = new Path(libraries[j].getSource());
+            if (!src.toFile().exists()) {
+              src = null;
+            }
+          } catch (Exception ignore) {
+          }
+        }
+        entries.add(JavaCore.newLibraryEntry(path, src, null, false));
+      }
+      return new Resolution(name, entries.toArray(new IClasspathEntry[entries
+          .size()]));
+    }
+    return new Resolution(null, new IClasspathEntry[0]);
+  }
+
+  //***************************************************************************
+  // Inner classes
+  //***************************************************************************
+
+  /**
+   * Resolved bundle container.
+   */
+  static class Resolution {
+    final String name;
+    final IClasspathEntry[] entries;
+    // Modification time of library entries when resolved
+    private final long[] lastModified;
+
+    Resolution(String name, IClasspathEntry[] entries)
+    {
+      this.name = name;
+      this.entries = entries;
+      lastModified = new long[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        lastModified[i] = getLastModified(entries[i]);
+      }
+    }
+
+    /**
+     * Returns true if no library file has been removed or modified since
+     * this resolution was made.
+     */
+    boolean isCurrent()
+    {
+      for (int i = 0; i < entries.length; i++) {
+        if (getLastModified(entries[i]) != lastModified[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static long getLastModified(IClasspathEntry entry)
+    {
+      if (entry.getEntryKind() != IClasspathEntry.CPE_LIBRARY) {
+        return 0;
+      }
+      File f = entry.getPath().toFile();
+      return f.exists() ? f.lastModified() : -1;
+    }
+  }
+}
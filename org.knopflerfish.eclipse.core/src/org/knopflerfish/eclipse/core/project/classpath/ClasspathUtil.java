@@ -51,6 +51,7 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.knopflerfish.eclipse.core.Osgi;
 import org.knopflerfish.eclipse.core.internal.OsgiPlugin;
+import org.knopflerfish.eclipse.core.manifest.BundleIdentity;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.preferences.EnvironmentPreference;
 import org.knopflerfish.eclipse.core.preferences.FrameworkPreference;
@@ -199,6 +200,40 @@ public class ClasspathUtil {
     }
   }
 
+  /**
+   * Resolves the bundle containers of all bundle projects again, e.g. when
+   * bundles have been added to a bundle repository.
+   */
+  public static void updateBundleContainers() {
+    try {
+      IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+      IProject [] projects = root.getProjects();
+      for(int i=0; projects != null && i<projects.length; i++) {
+        if (!projects[i].isOpen() || !projects[i].hasNature(Osgi.NATURE_ID)) {
+          continue;
+        }
+        IJavaProject javaProject = JavaCore.create(projects[i]);
+        IClasspathEntry [] entries = javaProject.getRawClasspath();
+        for (int j=0; j<entries.length; j++) {
+          if (entries[j].getEntryKind() != IClasspathEntry.CPE_CONTAINER) {
+            continue;
+          }
+          IPath path = entries[j].getPath();
+          BundleIdentity id = BundleContainerInitializer.getBundleIdentity(path);
+          if (id == null) {
+            continue;
+          }
+          IClasspathContainer container =
+            new BundleContainer(path, id.getSymbolicName(), javaProject);
+          JavaCore.setClasspathContainer(path, new IJavaProject[] {javaProject},
+              new IClasspathContainer[] {container}, null);
+        }
+      }
+    } catch (CoreException e) {
+      OsgiPlugin.log(e.getStatus());
+    }
+  }
+
   public static void updateFrameworkContainers() {
     try {
       FrameworkPreference[] distributions = OsgiPreferences.getFrameworks();
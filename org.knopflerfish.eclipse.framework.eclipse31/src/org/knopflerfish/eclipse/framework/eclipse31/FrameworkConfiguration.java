@@ -205,6 +205,22 @@ public class FrameworkConfiguration implements IFrameworkConfiguration {
     this.startLevel = startLevel;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.knopflerfish.eclipse.core.IFrameworkConfiguration#setUpdateBundles(boolean)
+   */
+  public void setUpdateBundles(boolean update) {
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.knopflerfish.eclipse.core.IFrameworkConfiguration#launched()
+   */
+  public void launched() {
+  }
+
   /*****************************************************************************
    * Private utility methods
    ****************************************************************************/
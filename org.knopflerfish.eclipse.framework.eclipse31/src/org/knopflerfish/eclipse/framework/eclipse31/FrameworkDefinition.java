@@ -38,11 +38,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 
 import org.eclipse.core.runtime.Path;
+import org.knopflerfish.eclipse.core.BundleScanner;
 import org.knopflerfish.eclipse.core.IFrameworkConfiguration;
 import org.knopflerfish.eclipse.core.IFrameworkDefinition;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
@@ -164,15 +166,18 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     File root = getRootDir(dir);
     if (root != null) {
       File bundleDir = new File(root, PATH_BUNDLE_DIR);
-      ArrayList jars = getJars(bundleDir);
-      for (int i=0 ; i<jars.size(); i++) {
-        try {
-          OsgiBundle bundle = new OsgiBundle((File) jars.get(i));
-          bundles.add(bundle);
-        } catch(IOException e) {
-          // Failed to create bundle from file
-        }
-      }
+      List jars = getJars(bundleDir);
+      // Jars are checked and read in parallel, failed files are skipped
+      bundles.addAll(BundleScanner.processFiles(jars,
+          new BundleScanner.IFileProcessor() {
+            public Object process(File f) throws IOException {
+              // Can't use non jar plugins
+              if (!f.isFile()) {
+                return null;
+              }
+              return new OsgiBundle(f);
+            }
+          }, null));
     }
     
     return (IOsgiBundle[]) bundles.toArray(new IOsgiBundle[bundles.size()]);
@@ -340,14 +345,12 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     {
       throw new IllegalArgumentException();
     }
+    // Only the plugins directory itself is used, files are checked when
+    // processed
     ArrayList jars = new ArrayList();
-    File [] list = f.listFiles();
+    File [] list = f.listFiles(BundleScanner.JAR_FILES);
     for(int i=0; list != null && i<list.length; i++) {
-      f = list[i];
-      // Can't use non jar plugins
-      if (f.isFile() && f.getName().toLowerCase().endsWith("jar")) {
-        jars.add(f); 
-      }
+      jars.add(list[i]); 
     }
     return jars;
   }
@@ -34,9 +34,11 @@
 
 package org.knopflerfish.eclipse.framework.knopflerfish;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +69,9 @@ public class FrameworkConfiguration implements IFrameworkConfiguration
   private boolean                               clean;
   private int                                   startLevel             =
                                                                          DEFAULT_STARTLEVEL;
+  private boolean                               updateBundles;
+  // Bundles of this launch, saved when the framework has been started
+  private LaunchState                           launchState;
 
   public FrameworkConfiguration(File dir)
   {
@@ -91,79 +96,115 @@ public class FrameworkConfiguration implements IFrameworkConfiguration
     File restartFile = new File(workDir, "restart.xargs");
 
     // Start empty framework
+    File fwDir = new File(workDir, "fwdir");
     if (clean) {
       programArgs.add("-init");
       // Remove fwdir
-      File fwDir = new File(workDir, "fwdir");
       if (fwDir.exists() && fwDir.isDirectory()) {
         deleteDir(fwDir);
       }
     }
 
-    // Set framework dir
-    Property propFrameworkDir = new Property(PROPERTY_FRAMEWORK_DIR);
-    propFrameworkDir.setValue(workDir.getAbsolutePath() + "/fwdir");
-    writeProperty(initFile, propFrameworkDir, false);
-    writeProperty(restartFile, propFrameworkDir, false);
-
-    // System properties
-    if (systemProperties != null) {
-      for (Map.Entry<String, Property> element : systemProperties.entrySet()) {
-        writeProperty(initFile, element.getValue(), true);
-        writeProperty(restartFile, element.getValue(), true);
+    // Compare bundles with last launch. If the framework is restarted only
+    // the bundles that have changed are installed, updated or uninstalled.
+    // The state is only kept when it describes the bundles in the framework.
+    File stateFile = new File(workDir, LaunchState.FILE_NAME);
+    LaunchState previous = null;
+    LaunchState state = null;
+    boolean warm = false;
+    if (!updateBundles) {
+      // Framework bundles no longer match a saved state if launched clean
+      if (clean) {
+        stateFile.delete();
+      }
+    } else {
+      previous = LaunchState.load(stateFile);
+      state = new LaunchState();
+      for (List<BundleElement> l : bundles.values()) {
+        for (BundleElement e : l) {
+          state.add(e.getBundle().getPath(), getLaunchInfo(e), previous);
+        }
+      }
+      warm = !clean && previous != null && fwDir.isDirectory();
+      if (!clean && !warm) {
+        // Installed bundles unknown, apply changes from next clean launch
+        state = null;
+        stateFile.delete();
       }
     }
 
-    Property startLevelProp = new Property("org.osgi.framework.startlevel.beginning");
-    startLevelProp.setType(Property.FRAMEWORK_PROPERTY);
-    startLevelProp.setValue(Integer.toString(startLevel));
-    writeProperty(initFile, startLevelProp, true);
-    
-    writeCommand(initFile, "-init", "", true);
-   
-    // Add install entries
-    int currentLevel = -1;
-    for (Map.Entry<Integer, List<BundleElement>> element : bundles.entrySet()) {
-      Integer initLevel = element.getKey();
+    // Each file is written through one buffered writer
+    Writer initWriter = null;
+    Writer restartWriter = null;
+    try {
+      initWriter = new BufferedWriter(new FileWriter(initFile));
+      restartWriter = new BufferedWriter(new FileWriter(restartFile));
+
+      // Set framework dir
+      Property propFrameworkDir = new Property(PROPERTY_FRAMEWORK_DIR);
+      propFrameworkDir.setValue(workDir.getAbsolutePath() + "/fwdir");
+      writeProperty(initWriter, propFrameworkDir);
+      writeProperty(restartWriter, propFrameworkDir);
+
+      // System properties
+      if (systemProperties != null) {
+        for (Map.Entry<String, Property> element : systemProperties.entrySet()) {
+          writeProperty(initWriter, element.getValue());
+          writeProperty(restartWriter, element.getValue());
+        }
+      }
 
-      // Set initial start level
-      if (currentLevel != initLevel.intValue()) {
-        writeCommand(initFile, "-initlevel", initLevel.toString(), true);
-        currentLevel = initLevel.intValue();
+      // Apply bundle changes when restarting
+      if (warm) {
+        writeUpdateCommands(restartWriter, previous, state);
       }
 
-      // Add bundle install entries for this start level
-      List<BundleElement> l = element.getValue();
-      for (BundleElement e : l) {
-        writeCommand(initFile, "-install", "file:" + e.getBundle().getPath(),
-                     true);
+      Property startLevelProp = new Property("org.osgi.framework.startlevel.beginning");
+      startLevelProp.setType(Property.FRAMEWORK_PROPERTY);
+      startLevelProp.setValue(Integer.toString(startLevel));
+      writeProperty(initWriter, startLevelProp);
+    
+      writeCommand(initWriter, "-init", "");
+   
+      // Add install entries
+      int currentLevel = -1;
+      for (Map.Entry<Integer, List<BundleElement>> element : bundles.entrySet()) {
+        Integer initLevel = element.getKey();
+
+        // Set initial start level
+        if (currentLevel != initLevel.intValue()) {
+          writeCommand(initWriter, "-initlevel", initLevel.toString());
+          currentLevel = initLevel.intValue();
+        }
+
+        // Add bundle install entries for this start level
+        List<BundleElement> l = element.getValue();
+        for (BundleElement e : l) {
+          writeCommand(initWriter, "-install", "file:" + e.getBundle().getPath());
+        }
       }
-    }
-    // Start level must be set via property
-    // Setting it explicitly is not possible since KF 5.2.1, see issue #1
-    // writeCommand(initFile, "-startlevel", Integer.toString(startLevel), true);
+      // Start level must be set via property
+      // Setting it explicitly is not possible since KF 5.2.1, see issue #1
+      // writeCommand(initWriter, "-startlevel", Integer.toString(startLevel));
 
-    // Add start entries
-    for (Map.Entry<Integer, List<BundleElement>> element : bundles.entrySet()) {
+      // Add start entries
+      for (Map.Entry<Integer, List<BundleElement>> element : bundles.entrySet()) {
 
-      // Add bundle install entries for this start level
-      List<BundleElement> l = element.getValue();
-      for (BundleElement e : l) {
-        if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START) {
-          writeCommand(initFile, "-start", "file:" + e.getBundle().getPath(),
-                       true);
-        } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_EAGERLY) {
-          writeCommand(initFile, "-start_e", "file:" + e.getBundle().getPath(),
-                       true);
-        } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_TRANSIENTLY) {
-          writeCommand(initFile, "-start_pt",
-                       "file:" + e.getBundle().getPath(), true);
-        } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_EAGERLY_TRANSIENTLY) {
-          writeCommand(initFile, "-start_et",
-                       "file:" + e.getBundle().getPath(), true);
+        // Add bundle install entries for this start level
+        List<BundleElement> l = element.getValue();
+        for (BundleElement e : l) {
+          writeStartCommand(initWriter, e);
         }
       }
+    } finally {
+      if (initWriter != null) {
+        initWriter.close();
+      }
+      if (restartWriter != null) {
+        restartWriter.close();
+      }
     }
+    launchState = state;
 
     args.setProgramArguments((String[]) programArgs.toArray(new String[programArgs.size()]));
     return args;
@@ -233,54 +274,132 @@ public class FrameworkConfiguration implements IFrameworkConfiguration
     this.startLevel = startLevel;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.knopflerfish.eclipse.core.IFrameworkConfiguration#setUpdateBundles
+   * (boolean)
+   */
+  public void setUpdateBundles(boolean update)
+  {
+    this.updateBundles = update;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.knopflerfish.eclipse.core.IFrameworkConfiguration#launched()
+   */
+  public void launched()
+  {
+    if (launchState == null) {
+      return;
+    }
+    File stateFile = new File(workDir, LaunchState.FILE_NAME);
+    try {
+      launchState.save(stateFile);
+    } catch (IOException e) {
+      // Without state the next launch does not apply any changes
+      stateFile.delete();
+    }
+  }
+
   /****************************************************************************
    * Private utility methods
    ***************************************************************************/
-  private void writeCommand(File f, String cmd, String value, boolean append)
+  private void writeCommand(Writer writer, String cmd, String value)
     throws IOException
   {
-    FileWriter writer = null;
-    try {
-      writer = new FileWriter(f, append);
-      StringBuffer buf = new StringBuffer();
-      buf.append(cmd);
-      buf.append(" ");
-      buf.append(value);
-      buf.append("\n");
+    StringBuffer buf = new StringBuffer();
+    buf.append(cmd);
+    buf.append(" ");
+    buf.append(value);
+    buf.append("\n");
 
-      writer.write(buf.toString());
+    writer.write(buf.toString());
+  }
 
-    } finally {
-      if (writer != null) {
-        writer.close();
-      }
+  private void writeStartCommand(Writer writer, BundleElement e)
+    throws IOException
+  {
+    if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START) {
+      writeCommand(writer, "-start", "file:" + e.getBundle().getPath());
+    } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_EAGERLY) {
+      writeCommand(writer, "-start_e", "file:" + e.getBundle().getPath());
+    } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_TRANSIENTLY) {
+      writeCommand(writer, "-start_pt", "file:" + e.getBundle().getPath());
+    } else if (e.getLaunchInfo().getMode() == BundleLaunchInfo.MODE_START_EAGERLY_TRANSIENTLY) {
+      writeCommand(writer, "-start_et", "file:" + e.getBundle().getPath());
     }
   }
 
-  private void writeProperty(File f, Property property, boolean append)
-    throws IOException
+  private void writeUpdateCommands(Writer writer,
+                                   LaunchState previous,
+                                   LaunchState state) throws IOException
   {
-    FileWriter writer = null;
-    try {
-      writer = new FileWriter(f, append);
-      StringBuffer buf = new StringBuffer();
-      if (property.getType().equals(Property.FRAMEWORK_PROPERTY)) {
-        buf.append("-F");
-      } else {
-        buf.append("-D");
+    // Uninstall removed bundles. Bundles with changed start level or start
+    // mode are uninstalled and installed again, since xargs can not change
+    // the start level of an installed bundle.
+    for (String path : previous.getPaths()) {
+      if (!state.contains(path) || state.isLaunchInfoChanged(path, previous)) {
+        writeCommand(writer, "-uninstall", "file:" + path);
       }
-      buf.append(property.getName());
-      buf.append("=");
-      buf.append(property.getValue());
-      buf.append("\n");
+    }
 
-      writer.write(buf.toString());
+    // Update changed bundles
+    for (String path : state.getPaths()) {
+      if (previous.contains(path) && !state.isLaunchInfoChanged(path, previous)
+          && state.isChanged(path, previous)) {
+        writeCommand(writer, "-update", "file:" + path);
+      }
+    }
 
-    } finally {
-      if (writer != null) {
-        writer.close();
+    // Install added bundles
+    List<BundleElement> added = new ArrayList<BundleElement>();
+    int currentLevel = -1;
+    for (Map.Entry<Integer, List<BundleElement>> element : bundles.entrySet()) {
+      Integer initLevel = element.getKey();
+      for (BundleElement e : element.getValue()) {
+        String path = e.getBundle().getPath();
+        if (previous.contains(path) && !state.isLaunchInfoChanged(path, previous)) {
+          continue;
+        }
+        if (currentLevel != initLevel.intValue()) {
+          writeCommand(writer, "-initlevel", initLevel.toString());
+          currentLevel = initLevel.intValue();
+        }
+        writeCommand(writer, "-install", "file:" + e.getBundle().getPath());
+        added.add(e);
       }
     }
+
+    // Start added bundles, other bundles keep their persistent state
+    for (BundleElement e : added) {
+      writeStartCommand(writer, e);
+    }
+  }
+
+  private static String getLaunchInfo(BundleElement e)
+  {
+    return e.getLaunchInfo().getStartLevel() + ":" + e.getLaunchInfo().getMode();
+  }
+
+  private void writeProperty(Writer writer, Property property)
+    throws IOException
+  {
+    StringBuffer buf = new StringBuffer();
+    if (property.getType().equals(Property.FRAMEWORK_PROPERTY)) {
+      buf.append("-F");
+    } else {
+      buf.append("-D");
+    }
+    buf.append(property.getName());
+    buf.append("=");
+    buf.append(property.getValue());
+    buf.append("\n");
+
+    writer.write(buf.toString());
   }
 
   public static boolean deleteDir(File dir)
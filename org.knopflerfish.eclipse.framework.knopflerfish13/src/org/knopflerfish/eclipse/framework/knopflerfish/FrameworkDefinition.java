@@ -47,9 +47,11 @@ import java.util.Properties;
 import java.util.StringTokenizer;
 
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.knopflerfish.eclipse.core.BundleScanner;
 import org.knopflerfish.eclipse.core.IFrameworkConfiguration;
 import org.knopflerfish.eclipse.core.IFrameworkDefinition;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
@@ -224,11 +226,16 @@ public class FrameworkDefinition implements IFrameworkDefinition {
   }
 
   public IOsgiBundle[] getBundles(File dir, String path)
+  {
+    return getBundles(dir, path, null);
+  }
+
+  public IOsgiBundle[] getBundles(File dir, String path, IProgressMonitor monitor)
   {
     List<IOsgiBundle> bundles = new ArrayList<IOsgiBundle>();
 
     // Add bundles
-    File root = getRootDir(dir);
+    final File root = getRootDir(dir);
     
     // Default to PATH_JAR_DIR if not set
     if (path == null) {
@@ -236,26 +243,25 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     }
     if (root != null) {
       File jarDir = new File(root, path);
-      List<File> jars = getJars(jarDir);
-      for (int i = 0; i < jars.size(); i++) {
-        try {
-          OsgiBundle bundle = new OsgiBundle((File) jars.get(i));
-          // Find source
-          String builtFrom = null;
-          if (bundle.getBundleManifest() != null) {
-            builtFrom = bundle.getBundleManifest().getAttribute(
-                BundleManifest.BUILT_FROM);
-          }
-          if (builtFrom != null) {
-            // Try to find source directory
-            bundle.setSource(findSourceDir(builtFrom, root));
-          }
-
-          bundles.add(bundle);
-        } catch (IOException e) {
-          // Failed to create bundle from file
-        }
-      }
+      // Jars are read in parallel, failed files are skipped
+      bundles.addAll(BundleScanner.scan(jarDir, BundleScanner.JAR_FILES,
+          new BundleScanner.IFileProcessor<IOsgiBundle>() {
+            public IOsgiBundle process(File f) throws IOException
+            {
+              OsgiBundle bundle = new OsgiBundle(f);
+              // Find source
+              String builtFrom = null;
+              if (bundle.getBundleManifest() != null) {
+                builtFrom = bundle.getBundleManifest().getAttribute(
+                    BundleManifest.BUILT_FROM);
+              }
+              if (builtFrom != null) {
+                // Try to find source directory
+                bundle.setSource(findSourceDir(builtFrom, root));
+              }
+              return bundle;
+            }
+          }, monitor));
     }
 
     return bundles.toArray(new IOsgiBundle[bundles.size()]);
@@ -493,20 +499,6 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     return root;
   }
   
-  private List<File> getJars(File f)
-  {
-    List<File> jars = new ArrayList<File>();
-    if (f.isFile() && f.getName().toLowerCase().endsWith("jar")) {
-      jars.add(f);
-    } else if (f.isDirectory()) {
-      File[] list = f.listFiles();
-      for (int i = 0; list != null && i < list.length; i++) {
-        jars.addAll(getJars(list[i]));
-      }
-    }
-    return jars;
-  }
-
   /**
    * Read a file with package names and add them to a stringbuffer.
    */
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.framework.knopflerfish;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The bundles used in a launch, persisted in the instance directory.
+ * <p>
+ * Every bundle is stored with its size, modification time, a hash of its
+ * contents and its start level and start mode. The hash is only computed
+ * again if size or modification time has changed, i.e. unchanged bundles
+ * are never read.
+ * </p>
+ * 
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class LaunchState
+{
+  static final String FILE_NAME = "launch.state";
+
+  private static final String HEADER = "Bundles in last launch";
+
+  // Bundle path -> record
+  private final Map<String, Record> records = new TreeMap<String, Record>();
+
+  /**
+   * Loads the launch state from the given file.
+   * 
+   * @param f state file
+   * @return state or null if the file does not exist or can not be read
+   */
+  static LaunchState load(File f)
+  {
+    if (!f.isFile()) {
+      return null;
+    }
+
+    Properties props = new Properties();
+    InputStream in = null;
+    try {
+      in = new BufferedInputStream(new FileInputStream(f));
+      props.load(in);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    LaunchState state = new LaunchState();
+    for (Map.Entry<Object, Object> entry : props.entrySet()) {
+      Record record = Record.parse((String) entry.getValue());
+      if (record != null) {
+        state.records.put((String) entry.getKey(), record);
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Saves this launch state to the given file.
+   * 
+   * @param f state file
+   * @throws IOException if failure writing file
+   */
+  void save(File f) throws IOException
+  {
+    Properties props = new Properties();
+    for (Map.Entry<String, Record> entry : records.entrySet()) {
+      props.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+
+    OutputStream out = null;
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(f));
+      props.store(out, HEADER);
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Adds a bundle to this launch state. The content hash is taken from the
+   * previous state if the bundle is unchanged since then.
+   * 
+   * @param path bundle path
+   * @param launchInfo start level and start mode of bundle
+   * @param previous previous launch state, may be null
+   * @throws IOException if failure reading bundle
+   */
+  void add(String path, String launchInfo, LaunchState previous) throws IOException
+  {
+    File bundle = new File(path);
+    long length = bundle.length();
+    long lastModified = bundle.lastModified();
+
+    Record record = previous == null ? null : previous.records.get(path);
+    if (record == null || record.length != length
+        || record.lastModified != lastModified) {
+      record = new Record(length, lastModified, hash(bundle), launchInfo);
+    } else {
+      record = new Record(length, lastModified, record.hash, launchInfo);
+    }
+    records.put(path, record);
+  }
+
+  /**
+   * Returns the paths of all bundles in this launch state.
+   * 
+   * @return set of bundle paths
+   */
+  Set<String> getPaths()
+  {
+    return records.keySet();
+  }
+
+  /**
+   * Returns true if this launch state contains the given bundle.
+   * 
+   * @param path bundle path
+   * @return true if bundle exists in this state
+   */
+  boolean contains(String path)
+  {
+    return records.containsKey(path);
+  }
+
+  /**
+   * Returns true if the contents of the given bundle differ between this
+   * and the other launch state.
+   * 
+   * @param path bundle path
+   * @param other other launch state
+   * @return true if bundle contents has changed
+   */
+  boolean isChanged(String path, LaunchState other)
+  {
+    Record record = records.get(path);
+    Record otherRecord = other.records.get(path);
+    if (record == null || otherRecord == null) {
+      return true;
+    }
+    return !record.hash.equals(otherRecord.hash);
+  }
+
+  /**
+   * Returns true if the start level or start mode of the given bundle differ
+   * between this and the other launch state. States saved without start
+   * level and mode are treated as unchanged.
+   * 
+   * @param path bundle path
+   * @param other other launch state
+   * @return true if bundle start level or mode has changed
+   */
+  boolean isLaunchInfoChanged(String path, LaunchState other)
+  {
+    Record record = records.get(path);
+    Record otherRecord = other.records.get(path);
+    if (record == null || otherRecord == null || record.launchInfo == null
+        || otherRecord.launchInfo == null) {
+      return false;
+    }
+    return !record.launchInfo.equals(otherRecord.launchInfo);
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static String hash(File f) throws IOException
+  {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Failed to create digest, " + e.getMessage());
+    }
+
+    InputStream in = new FileInputStream(f);
+    try {
+      byte[] buf = new byte[8192];
+      int len;
+      while ((len = in.read(buf)) != -1) {
+        digest.update(buf, 0, len);
+      }
+    } finally {
+      in.close();
+    }
+
+    byte[] b = digest.digest();
+    StringBuffer buf = new StringBuffer(b.length * 2);
+    for (int i = 0; i < b.length; i++) {
+      buf.append(Character.forDigit((b[i] >> 4) & 0xF, 16));
+      buf.append(Character.forDigit(b[i] & 0xF, 16));
+    }
+    return buf.toString();
+  }
+
+  //***************************************************************************
+  // Private classes
+  //***************************************************************************
+  private static class Record
+  {
+    final long   length;
+    final long   lastModified;
+    final String hash;
+    final String launchInfo;
+
+    Record(long length, long lastModified, String hash, String launchInfo)
+    {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.launchInfo = launchInfo;
+    }
+
+    static Record parse(String s)
+    {
+      String[] tokens = s.split(",");
+      if (tokens.length != 3 && tokens.length != 4) {
+        return null;
+      }
+      try {
+        return new Record(Long.parseLong(tokens[0]),
+            Long.parseLong(tokens[1]), tokens[2],
+            tokens.length == 4 ? tokens[3] : null);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    public String toString()
+    {
+      return length + "," + lastModified + "," + hash
+          + (launchInfo == null ? "" : "," + launchInfo);
+    }
+  }
+}
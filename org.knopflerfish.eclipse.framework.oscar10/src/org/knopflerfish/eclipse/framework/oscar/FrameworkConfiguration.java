@@ -197,6 +197,20 @@ public class FrameworkConfiguration implements IFrameworkConfiguration {
     this.startLevel = startLevel;
   }
 
+  /*
+   *  (non-Javadoc)
+   * @see org.knopflerfish.eclipse.core.IFrameworkConfiguration#setUpdateBundles(boolean)
+   */
+  public void setUpdateBundles(boolean update) {
+  }
+
+  /*
+   *  (non-Javadoc)
+   * @see org.knopflerfish.eclipse.core.IFrameworkConfiguration#launched()
+   */
+  public void launched() {
+  }
+
   /****************************************************************************
    * Private utility methods
    ***************************************************************************/
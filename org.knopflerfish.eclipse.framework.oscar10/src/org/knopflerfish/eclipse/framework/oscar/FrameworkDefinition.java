@@ -43,6 +43,7 @@ import java.util.Properties;
 import java.util.StringTokenizer;
 
 import org.eclipse.core.runtime.Path;
+import org.knopflerfish.eclipse.core.BundleScanner;
 import org.knopflerfish.eclipse.core.IFrameworkConfiguration;
 import org.knopflerfish.eclipse.core.IFrameworkDefinition;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
@@ -157,15 +158,13 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     File root = getRootDir(dir);
     if (root != null) {
       File bundleDir = new File(root, PATH_BUNDLE_DIR);
-      ArrayList jars = getJars(bundleDir);
-      for (int i=0 ; i<jars.size(); i++) {
-        try {
-          OsgiBundle bundle = new OsgiBundle((File) jars.get(i));
-          bundles.add(bundle);
-        } catch(IOException e) {
-          // Failed to create bundle from file
-        }
-      }
+      // Jars are read in parallel, failed files are skipped
+      bundles.addAll(BundleScanner.scan(bundleDir, BundleScanner.JAR_FILES,
+          new BundleScanner.IFileProcessor() {
+            public Object process(File f) throws IOException {
+              return new OsgiBundle(f);
+            }
+          }, null));
     }
     
     return (IOsgiBundle[]) bundles.toArray(new IOsgiBundle[bundles.size()]);
@@ -287,17 +286,4 @@ public class FrameworkDefinition implements IFrameworkDefinition {
     
     return root;
   }
-
-  private ArrayList getJars(File f) { 
-    ArrayList jars = new ArrayList();
-    if (f.isFile() && f.getName().toLowerCase().endsWith("jar")) {
-      jars.add(f); 
-    } else if (f.isDirectory()) {
-      File [] list = f.listFiles();
-      for(int i=0; list != null && i<list.length; i++) {
-        jars.addAll(getJars(list[i]));
-      }
-    }
-    return jars;
-  }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.knopflerfish.eclipse.repository.directory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import org.knopflerfish.eclipse.core.ManifestReader;
+
+/**
+ * Persistent index of the files found in a directory repository.
+ * <p>
+ * Every file is stored together with its size, modification time and raw
+ * manifest. When the repository is scanned again only files that have been
+ * added or changed since the index was saved are opened, all other
+ * manifests are read from the index.
+ * </p>
+ * <p>
+ * {@link #getManifest(File)} may be called concurrently while scanning.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class BundleIndex {
+
+  private static final int INDEX_VERSION = 1;
+
+  private final String directory;
+  private final File indexFile;
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private boolean changed = false;
+
+  /**
+   * Creates an index for the given directory.
+   *
+   * @param directory repository directory
+   * @param indexFile file where index is persisted, may be null if the index
+   *          shall only be kept in memory
+   */
+  BundleIndex(String directory, File indexFile)
+  {
+    this.directory = directory;
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Returns the manifest for the given file. The manifest is read from the
+   * index if the file is unchanged since it was indexed, otherwise it is read
+   * from the file and the index is updated.
+   *
+   * @param f file
+   * @return manifest or null if file is not a jar file or has no manifest
+   */
+  Manifest getManifest(File f)
+  {
+    String path = f.getAbsolutePath();
+    long size = f.length();
+    long lastModified = f.lastModified();
+
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(path);
+    }
+    if (entry == null || entry.size != size
+        || entry.lastModified != lastModified) {
+      // Read file without holding the lock
+      entry = new Entry(size, lastModified, readManifest(f));
+      synchronized (this) {
+        entries.put(path, entry);
+        changed = true;
+      }
+    }
+
+    if (entry.manifest == null) {
+      return null;
+    }
+    try {
+      return new Manifest(new ByteArrayInputStream(entry.manifest));
+    } catch (IOException e) {
+      // Corrupt entry, read it again next time
+      synchronized (this) {
+        entries.remove(path);
+        changed = true;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Removes all entries from the index that are not in the given set of
+   * paths, e.g. files that have been removed from the repository.
+   *
+   * @param paths absolute paths of files to keep
+   */
+  synchronized void retain(Set<String> paths)
+  {
+    for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();) {
+      if (!paths.contains(i.next())) {
+        i.remove();
+        changed = true;
+      }
+    }
+  }
+
+  /**
+   * Loads the index from disk. If the index file does not exist or can not
+   * be read the index is left empty.
+   */
+  synchronized void load()
+  {
+    entries.clear();
+    changed = false;
+    if (indexFile == null || !indexFile.isFile()) {
+      return;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          indexFile)));
+      if (in.readInt() != INDEX_VERSION || !directory.equals(in.readUTF())) {
+        return;
+      }
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        byte[] manifest = null;
+        int len = in.readInt();
+        if (len >= 0) {
+          manifest = new byte[len];
+          in.readFully(manifest);
+        }
+        entries.put(path, new Entry(size, lastModified, manifest));
+      }
+    } catch (IOException e) {
+      // Ignore, index is rebuilt
+      entries.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Saves the index to disk if it has changed since it was loaded.
+   */
+  synchronized void save()
+  {
+    if (indexFile == null || !changed) {
+      return;
+    }
+
+    File tmpFile = new File(indexFile.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      indexFile.getParentFile().mkdirs();
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+          tmpFile)));
+      out.writeInt(INDEX_VERSION);
+      out.writeUTF(directory);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        Entry entry = e.getValue();
+        out.writeUTF(e.getKey());
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        if (entry.manifest == null) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(entry.manifest.length);
+          out.write(entry.manifest);
+        }
+      }
+      out.close();
+      out = null;
+
+      if (indexFile.exists()) {
+        indexFile.delete();
+      }
+      if (tmpFile.renameTo(indexFile)) {
+        changed = false;
+      }
+    } catch (IOException e) {
+      Status status = new Status(IStatus.ERROR,
+          "org.knopflerfish.eclipse.repository.directory", IStatus.OK,
+          "Failed to save bundle index " + indexFile, e);
+      RepositoryPlugin.log(status);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+        }
+      }
+      tmpFile.delete();
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private static byte[] readManifest(File f)
+  {
+    try {
+      Manifest manifest = ManifestReader.readManifest(f);
+      if (manifest == null) {
+        return null;
+      }
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      manifest.write(bout);
+      return bout.toByteArray();
+    } catch (IOException e) {
+      // Not a jar file
+      return null;
+    }
+  }
+
+  private static class Entry {
+    final long size;
+    final long lastModified;
+    final byte[] manifest;
+
+    Entry(long size, long lastModified, byte[] manifest)
+    {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.manifest = manifest;
+    }
+  }
+}
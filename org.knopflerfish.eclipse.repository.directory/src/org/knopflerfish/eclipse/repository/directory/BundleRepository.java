@@ -35,17 +35,20 @@
 package org.knopflerfish.eclipse.repository.directory;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
 
+import org.knopflerfish.eclipse.core.BundleScanner;
 import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.IOsgiLibrary;
 import org.knopflerfish.eclipse.core.OsgiBundle;
+import org.knopflerfish.eclipse.core.PackageIndex;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.manifest.SymbolicName;
@@ -57,22 +60,73 @@ import org.osgi.framework.Version;
  */
 public class BundleRepository implements IBundleRepository {
 
+  // Minimum time between checks for changed files
+  private static final long CHECK_INTERVAL = 1000;
+
   private final String directory;
+  // Path -> size and modification time of files when scanned
+  private final Map<String, String> snapshot;
+  private long lastChecked;
 
   private List<IOsgiBundle> bundles = new ArrayList<IOsgiBundle>();
-  private List<PackageDescription> packages = new ArrayList<PackageDescription>();
+  private Map<String, IOsgiBundle> bundlesByPath = new HashMap<String, IOsgiBundle>();
   private Map<String, List<String>> symbolicNames = new HashMap<String, List<String>>();
-  private List<BundleManifest> manifests = new ArrayList<BundleManifest>();
+  private PackageIndex packageIndex = new PackageIndex();
 
   public BundleRepository(String name)
   {
 
     this.directory = name;
     bundles.clear();
-    packages.clear();
+    bundlesByPath.clear();
     symbolicNames.clear();
-    manifests.clear();
-    findBundles(new File(directory), bundles, packages, symbolicNames, manifests);
+
+    // Only files added or changed since last scan are opened
+    final BundleIndex index = RepositoryPlugin.getBundleIndex(directory);
+    List<File> files = BundleScanner.findFiles(new File(directory),
+        BundleScanner.ALL_FILES, null);
+    List<IOsgiBundle> found = BundleScanner.processFiles(files,
+        new BundleScanner.IFileProcessor<IOsgiBundle>() {
+          public IOsgiBundle process(File f)
+          {
+            return readBundle(f, index);
+          }
+        }, null);
+
+    // Merge in scan order
+    for (IOsgiBundle b : found) {
+      addBundle(b);
+    }
+
+    Set<String> paths = new HashSet<String>();
+    for (File f : files) {
+      paths.add(f.getAbsolutePath());
+    }
+    index.retain(paths);
+    index.save();
+
+    snapshot = getSnapshot(files);
+    lastChecked = System.currentTimeMillis();
+  }
+
+  /**
+   * Returns true if no file in the repository directory has been added,
+   * removed or changed since the repository was scanned. Only names, sizes
+   * and modification times are compared, and the directory is checked at
+   * most once per {@link #CHECK_INTERVAL}.
+   *
+   * @return true if repository is up to date; otherwise false
+   */
+  synchronized boolean isCurrent()
+  {
+    long now = System.currentTimeMillis();
+    if (now - lastChecked < CHECK_INTERVAL) {
+      return true;
+    }
+    lastChecked = now;
+    List<File> files = BundleScanner.findFiles(new File(directory),
+        BundleScanner.ALL_FILES, null);
+    return snapshot.equals(getSnapshot(files));
   }
 
   //***************************************************************************
@@ -86,7 +140,7 @@ public class BundleRepository implements IBundleRepository {
    */
   public PackageDescription[] getExportedPackages()
   {
-    return packages.toArray(new PackageDescription[packages.size()]);
+    return packageIndex.getExportedPackages();
   }
 
   /*
@@ -98,13 +152,7 @@ public class BundleRepository implements IBundleRepository {
    */
   public BundleManifest[] getExportingBundles(PackageDescription pd)
   {
-    List<BundleManifest> manifests = new ArrayList<BundleManifest>();
-    for (BundleManifest manifest : this.manifests) {
-      if (manifest.hasExportedPackage(pd)) {
-        manifests.add(manifest);
-      }
-    }
-    return manifests.toArray(new BundleManifest[manifests.size()]);
+    return packageIndex.getExportingBundles(pd);
   }
 
   /*
@@ -126,11 +174,11 @@ public class BundleRepository implements IBundleRepository {
       return null;
 
     for (String path : paths) {
-      try {
-        OsgiBundle bundle = new OsgiBundle(new File(path));
+      IOsgiBundle bundle = bundlesByPath.get(path);
+      if (bundle != null) {
         boolean hasPackages = true;
         for (int j = 0; packages != null && j < packages.length; j++) {
-          if (!bundle.hasExportedPackage(packages[j])) {
+          if (!packageIndex.hasExportedPackage(bundle.getBundleManifest(), packages[j])) {
             hasPackages = false;
             break;
           }
@@ -152,8 +200,6 @@ public class BundleRepository implements IBundleRepository {
           */
           return libs.toArray(new IOsgiLibrary[libs.size()]);
         }
-      } catch (IOException e) {
-        e.printStackTrace();
       }
     }
     return null;
@@ -178,119 +224,108 @@ public class BundleRepository implements IBundleRepository {
    */
   public Version[] getPackageVersions(String packageName)
   {
-    if (packageName == null)
-      return null;
-    ArrayList<Version> versions = new ArrayList<Version>();
-
-    for (PackageDescription pd : packages) {
-      if (packageName.equals(pd.getPackageName())) {
-        if (!versions.contains(pd.getVersion())) {
-          versions.add(pd.getVersion());
-        }
-      }
-    }
-
-    return versions.toArray(new Version[versions.size()]);
+    return packageIndex.getPackageVersions(packageName);
   }
 
   //***************************************************************************
   // Private utility methods
   //***************************************************************************
-  private void findBundles(File f,
-                           List<IOsgiBundle> bundles,
-                           List<PackageDescription> packages,
-                           Map<String, List<String>> symbolicNames,
-                           List<BundleManifest> manifests)
+  private static Map<String, String> getSnapshot(List<File> files)
   {
-    if (f == null || !f.exists()) {
-      return;
+    Map<String, String> snapshot = new HashMap<String, String>();
+    for (File f : files) {
+      snapshot.put(f.getAbsolutePath(), f.length() + ":" + f.lastModified());
     }
-    
-    if (f.isFile()) {
-      // Check if bundle
-      try {
-        IOsgiBundle b = new OsgiBundle(f);
-        
-        // Check that manifest exist and that either symbolic name
-        // or bundle name
-        BundleManifest bm = b.getBundleManifest();
-        if (bm == null) {
-          return;
-        }
-        
-        // Bundles, skip bundles with no symbolic name
-        SymbolicName symbolicName = bm.getSymbolicName();
-        // Use name if symbolic name is not set
-        if (symbolicName == null && bm.getName() != null) {
-          symbolicName = new SymbolicName(bm.getName());
-        }
-        // Skip if Symbolic name is not set
-        if (symbolicName == null) {
-          return;
-        }
+    return snapshot;
+  }
 
-        List<String> paths = symbolicNames.get(symbolicName.getSymbolicName());
-        if (paths == null) {
-          paths = new ArrayList<String>();
-        }
-        paths.add(b.getPath());
-        symbolicNames.put(symbolicName.getSymbolicName(), paths);
-
-        //BundleIdentity id = new BundleIdentity(symbolicName, bm.getVersion());
-        // Manifests
-        manifests.add(bm);
-        // Packages
-        this.packages.addAll(Arrays.asList(bm.getExportedPackages()));
-        // Check if this bundles has any more libraries to extract
-        /* Not used by launch configuration, used by class path in bundle projects
-        String[] classPaths = bm.getBundleClassPath();
-        try {
-          JarFile jarFile = null;
-          try {
-            jarFile = new JarFile(b.getPath());
-            List<String> libs = new ArrayList<String>();
-            for (int j = 0; j < classPaths.length; j++) {
-              if (".".equals(classPaths[j]))
-                continue;
-
-              ZipEntry entry = jarFile.getEntry(classPaths[j]);
-              if (entry != null) {
-                InputStream is = jarFile.getInputStream(entry);
-                String path = RepositoryPlugin.getDefault().storeFile(is,
-                    classPaths[j], id);
-                if (path != null) {
-                  libs.add(path);
-                }
-                is.close();
-              }
-            }
+  /**
+   * Reads the bundle from the given file. Called concurrently while
+   * scanning.
+   *
+   * @return bundle or null if file is not a bundle
+   */
+  private static IOsgiBundle readBundle(File f, BundleIndex index)
+  {
+    Manifest manifest = index.getManifest(f);
+    if (manifest == null) {
+      return null;
+    }
+    IOsgiBundle b = new OsgiBundle(f, manifest);
+
+    // Check that manifest exist and that either symbolic name
+    // or bundle name
+    BundleManifest bm = b.getBundleManifest();
+    if (bm == null) {
+      return null;
+    }
+    // Skip if Symbolic name or name is not set
+    if (bm.getSymbolicName() == null && bm.getName() == null) {
+      return null;
+    }
+    // Parse exported packages while still running in parallel
+    bm.getExportedPackages();
+    return b;
+  }
 
-            libraries.put(b.getPath(), libs);
-          } finally {
-            if (jarFile != null) {
-              jarFile.close();
-              jarFile = null;
+  private void addBundle(IOsgiBundle b)
+  {
+    BundleManifest bm = b.getBundleManifest();
+
+    // Use name if symbolic name is not set
+    SymbolicName symbolicName = bm.getSymbolicName();
+    if (symbolicName == null) {
+      symbolicName = new SymbolicName(bm.getName());
+    }
+
+    List<String> bundlePaths = symbolicNames.get(symbolicName.getSymbolicName());
+    if (bundlePaths == null) {
+      bundlePaths = new ArrayList<String>();
+    }
+    bundlePaths.add(b.getPath());
+    symbolicNames.put(symbolicName.getSymbolicName(), bundlePaths);
+
+    //BundleIdentity id = new BundleIdentity(symbolicName, bm.getVersion());
+    // Packages
+    packageIndex.addBundle(bm);
+    // Check if this bundles has any more libraries to extract
+    /* Not used by launch configuration, used by class path in bundle projects
+    String[] classPaths = bm.getBundleClassPath();
+    try {
+      JarFile jarFile = null;
+      try {
+        jarFile = new JarFile(b.getPath());
+        List<String> libs = new ArrayList<String>();
+        for (int j = 0; j < classPaths.length; j++) {
+          if (".".equals(classPaths[j]))
+            continue;
+
+          ZipEntry entry = jarFile.getEntry(classPaths[j]);
+          if (entry != null) {
+            InputStream is = jarFile.getInputStream(entry);
+            String path = RepositoryPlugin.getDefault().storeFile(is,
+                classPaths[j], id);
+            if (path != null) {
+              libs.add(path);
             }
+            is.close();
           }
-        } catch (IOException e) {
-          e.printStackTrace();
         }
-        */
-        
-        bundles.add(b);
-      } catch (Throwable t) {
-        // Ignore, not a  bundle
-      }
-    } else {
-      // Directory, loop through children
-      File[] children = f.listFiles();
-      if(children == null) {
-        return;
-      }
-      for (int i=0; i<children.length;i++) {
-        findBundles(children[i], bundles, packages, symbolicNames, manifests);
+
+        libraries.put(b.getPath(), libs);
+      } finally {
+        if (jarFile != null) {
+          jarFile.close();
+          jarFile = null;
+        }
       }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
+    */
+
+    bundles.add(b);
+    bundlesByPath.put(b.getPath(), b);
   }
 
 }
@@ -54,7 +54,16 @@ public class BundleRepositoryType implements IBundleRepositoryType {
    * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#createRepository(java.lang.String)
    */
   public IBundleRepository createRepository(String config) {
-    return new BundleRepository(config);
+    synchronized (RepositoryPlugin.repositoriesCache) {
+      IBundleRepository repository = RepositoryPlugin.repositoriesCache.get(config);
+      // Scanned again if files have been added, removed or changed
+      if (repository == null
+          || !((BundleRepository) repository).isCurrent()) {
+        repository = new BundleRepository(config);
+        RepositoryPlugin.repositoriesCache.put(config, repository);
+      }
+      return repository;
+    }
   }
 
   /*
@@ -62,6 +71,11 @@ public class BundleRepositoryType implements IBundleRepositoryType {
    * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#refreshRepositories()
    */
   public void refreshRepositories() {
+    // Repositories are rescanned when created again, only changed
+    // files are read thanks to the bundle index
+    synchronized (RepositoryPlugin.repositoriesCache) {
+      RepositoryPlugin.repositoriesCache.clear();
+    }
   }
   
   /* (non-Javadoc)
@@ -34,7 +34,16 @@
 
 package org.knopflerfish.eclipse.repository.directory;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
+import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -46,6 +55,9 @@ public class RepositoryPlugin extends Plugin {
   // The shared instance.
   private static RepositoryPlugin plugin;
 
+  static Map<String, IBundleRepository> repositoriesCache = new HashMap<String, IBundleRepository>();
+  private static Map<String, BundleIndex> indexCache = new HashMap<String, BundleIndex>();
+
   /**
    * The constructor.
    */
@@ -79,4 +91,59 @@ public class RepositoryPlugin extends Plugin {
     return plugin;
   }
 
+  /**
+   * Logs the given status to the plug-in log.
+   */
+  static void log(IStatus status)
+  {
+    if (plugin != null) {
+      plugin.getLog().log(status);
+    }
+  }
+
+  /**
+   * Returns the bundle index for the given directory. The index is loaded
+   * from the plug-in state location the first time it is requested.
+   *
+   * @param directory repository directory
+   * @return bundle index
+   */
+  static synchronized BundleIndex getBundleIndex(String directory)
+  {
+    BundleIndex index = indexCache.get(directory);
+    if (index == null) {
+      File indexFile = null;
+      if (plugin != null) {
+        File indexDir = new File(plugin.getStateLocation().toFile(), "index");
+        indexFile = new File(indexDir, digest(directory) + ".idx");
+      }
+      index = new BundleIndex(directory, indexFile);
+      index.load();
+      indexCache.put(directory, index);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the SHA-1 digest of the given string as a hex string, used as
+   * file name for data cached per directory.
+   */
+  private static String digest(String s)
+  {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] digest = md.digest(s.getBytes("UTF-8"));
+      StringBuffer buf = new StringBuffer(digest.length * 2);
+      for (int i = 0; i < digest.length; i++) {
+        buf.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+        buf.append(Character.forDigit(digest[i] & 0xF, 16));
+      }
+      return buf.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not supported");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 not supported");
+    }
+  }
+
 }
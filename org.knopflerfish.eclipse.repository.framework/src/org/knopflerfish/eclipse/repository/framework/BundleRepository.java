@@ -38,7 +38,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,8 +47,8 @@ import java.util.zip.ZipEntry;
 import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.IOsgiLibrary;
-import org.knopflerfish.eclipse.core.OsgiBundle;
 import org.knopflerfish.eclipse.core.OsgiLibrary;
+import org.knopflerfish.eclipse.core.PackageIndex;
 import org.knopflerfish.eclipse.core.manifest.BundleIdentity;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
@@ -66,10 +65,10 @@ public class BundleRepository implements IBundleRepository {
 
   private final String name;
 
-  private List<PackageDescription> packages = new ArrayList<PackageDescription>();
+  private Map<String, IOsgiBundle> bundlesByPath = new HashMap<String, IOsgiBundle>();
   private Map<String, List<String>> symbolicNames = new HashMap<String, List<String>>();
   private Map<String, List<String>> libraries = new HashMap<String, List<String>>();
-  private List<BundleManifest> manifests = new ArrayList<BundleManifest>();
+  private PackageIndex packageIndex = new PackageIndex();
 
   public BundleRepository(String name)
   {
@@ -100,10 +99,9 @@ public class BundleRepository implements IBundleRepository {
       symbolicNames.put(symbolicName.getSymbolicName(), paths);
 
       BundleIdentity id = new BundleIdentity(symbolicName, bm.getVersion());
-      // Manifests
-      manifests.add(bm);
+      bundlesByPath.put(bundles[i].getPath(), bundles[i]);
       // Packages
-      this.packages.addAll(Arrays.asList(bm.getExportedPackages()));
+      packageIndex.addBundle(bm);
       // Check if this bundles has any more libraries to extract
       String[] classPaths = bm.getBundleClassPath();
       try {
@@ -151,7 +149,7 @@ public class BundleRepository implements IBundleRepository {
    */
   public PackageDescription[] getExportedPackages()
   {
-    return packages.toArray(new PackageDescription[packages.size()]);
+    return packageIndex.getExportedPackages();
   }
 
   /*
@@ -163,13 +161,7 @@ public class BundleRepository implements IBundleRepository {
    */
   public BundleManifest[] getExportingBundles(PackageDescription pd)
   {
-    List<BundleManifest> manifests = new ArrayList<BundleManifest>();
-    for (BundleManifest manifest : this.manifests) {
-      if (manifest.hasExportedPackage(pd)) {
-        manifests.add(manifest);
-      }
-    }
-    return manifests.toArray(new BundleManifest[manifests.size()]);
+    return packageIndex.getExportingBundles(pd);
   }
 
   /*
@@ -191,11 +183,11 @@ public class BundleRepository implements IBundleRepository {
       return null;
 
     for (String path : paths) {
-      try {
-        OsgiBundle bundle = new OsgiBundle(new File(path));
+      IOsgiBundle bundle = bundlesByPath.get(path);
+      if (bundle != null) {
         boolean hasPackages = true;
         for (int j = 0; packages != null && j < packages.length; j++) {
-          if (!bundle.hasExportedPackage(packages[j])) {
+          if (!packageIndex.hasExportedPackage(bundle.getBundleManifest(), packages[j])) {
             hasPackages = false;
             break;
           }
@@ -215,8 +207,6 @@ public class BundleRepository implements IBundleRepository {
           }
           return libs.toArray(new IOsgiLibrary[libs.size()]);
         }
-      } catch (IOException e) {
-        e.printStackTrace();
       }
     }
     return null;
@@ -243,19 +233,7 @@ public class BundleRepository implements IBundleRepository {
    */
   public Version[] getPackageVersions(String packageName)
   {
-    if (packageName == null)
-      return null;
-    ArrayList<Version> versions = new ArrayList<Version>();
-
-    for (PackageDescription pd : packages) {
-      if (packageName.equals(pd.getPackageName())) {
-        if (!versions.contains(pd.getVersion())) {
-          versions.add(pd.getVersion());
-        }
-      }
-    }
-
-    return versions.toArray(new Version[versions.size()]);
+    return packageIndex.getPackageVersions(packageName);
   }
 
 }
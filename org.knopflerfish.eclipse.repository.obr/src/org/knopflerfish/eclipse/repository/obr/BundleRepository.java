@@ -34,68 +34,270 @@
 
 package org.knopflerfish.eclipse.repository.obr;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.knopflerfish.eclipse.core.IOsgiBundle;
 import org.knopflerfish.eclipse.core.IOsgiLibrary;
+import org.knopflerfish.eclipse.core.OsgiBundle;
+import org.knopflerfish.eclipse.core.PackageIndex;
 import org.knopflerfish.eclipse.core.manifest.BundleManifest;
 import org.knopflerfish.eclipse.core.manifest.PackageDescription;
 import org.knopflerfish.eclipse.core.manifest.SymbolicName;
 import org.osgi.framework.Version;
 
 /**
+ * Bundle repository described by an OBR repository index.
+ * <p>
+ * Bundles with a <code>file:</code> location are used directly, other
+ * bundles are downloaded to the plug-in state location by a
+ * {@link DownloadJob} the first time their libraries are requested. Only
+ * bundles that exist locally are returned, i.e. bundle containers are
+ * resolved again when the download is done, and the launcher installs
+ * bundles from their local path.
+ * </p>
+ *
  * @author Anders Rimn, Gatespace Telematics
  * @see http://www.gatespacetelematics.com/
  */
 public class BundleRepository implements IBundleRepository {
 
+  private final String url;
+
+  private List<IOsgiBundle> bundles = new ArrayList<IOsgiBundle>();
+  private Map<String, IOsgiBundle> bundlesByPath = new HashMap<String, IOsgiBundle>();
+  private Map<String, String> locations = new HashMap<String, String>();
+  private Map<String, List<String>> symbolicNames = new HashMap<String, List<String>>();
+  private PackageIndex packageIndex = new PackageIndex();
+
+  public BundleRepository(String url)
+  {
+    this.url = url;
+
+    // The index is only parsed if it has changed since it was cached
+    RepositoryIndex index = RepositoryPlugin.getRepositoryIndex(url);
+    List<Resource> resources;
+    try {
+      resources = readRepository(url, index);
+    } catch (IOException e) {
+      // Use last known contents if repository can not be read
+      Status status = new Status(IStatus.ERROR,
+          "org.knopflerfish.eclipse.repository.obr", IStatus.OK,
+          "Failed to read OBR repository " + url, e);
+      RepositoryPlugin.log(status);
+      resources = index.getResources();
+    }
+
+    if (resources != null) {
+      for (Resource resource : resources) {
+        IOsgiBundle b = createBundle(resource);
+        if (b != null) {
+          addBundle(b, resource.getLocation());
+        }
+      }
+    }
+  }
+
   /****************************************************************************
-   * org.knopflerfish.eclipse.core.IBundleRepositoryType methods
+   * org.knopflerfish.eclipse.core.IBundleRepository methods
    ***************************************************************************/
   
   /*
    *  (non-Javadoc)
    * @see org.knopflerfish.eclipse.core.IBundleRepository#getExportedPackages()
    */
-  public PackageDescription[] getExportedPackages() {
-    // TODO Auto-generated method stub
-    return null;
+  public PackageDescription[] getExportedPackages()
+  {
+    return packageIndex.getExportedPackages();
   }
 
   /*
    *  (non-Javadoc)
    * @see org.knopflerfish.eclipse.core.IBundleRepository#getExportingBundles(org.knopflerfish.eclipse.core.manifest.PackageDescription)
    */
-  public BundleManifest[] getExportingBundles(PackageDescription pd) {
-    // TODO Auto-generated method stub
-    return null;
+  public BundleManifest[] getExportingBundles(PackageDescription pd)
+  {
+    return packageIndex.getExportingBundles(pd);
   }
 
   /*
    *  (non-Javadoc)
    * @see org.knopflerfish.eclipse.core.IBundleRepository#getBundleLibraries(org.knopflerfish.eclipse.core.manifest.SymbolicName, org.knopflerfish.eclipse.core.manifest.PackageDescription[])
    */
-  public IOsgiLibrary[] getBundleLibraries(SymbolicName symbolicName, PackageDescription[] packages) {
-    // TODO Auto-generated method stub
+  public IOsgiLibrary[] getBundleLibraries(SymbolicName symbolicName,
+                                           PackageDescription[] packages)
+  {
+    if (symbolicName == null)
+      return null;
+
+    List<String> paths = symbolicNames.get(symbolicName.getSymbolicName());
+    if (paths == null || paths.size() == 0)
+      return null;
+
+    for (String path : paths) {
+      IOsgiBundle bundle = bundlesByPath.get(path);
+      if (bundle != null) {
+        boolean hasPackages = true;
+        for (int j = 0; packages != null && j < packages.length; j++) {
+          if (!packageIndex.hasExportedPackage(bundle.getBundleManifest(), packages[j])) {
+            hasPackages = false;
+            break;
+          }
+        }
+        if (hasPackages) {
+          if (new File(bundle.getPath()).isFile()) {
+            return new IOsgiLibrary[] {bundle};
+          }
+          // Resolved again when downloaded
+          String location = locations.get(bundle.getPath());
+          if (location != null && !location.startsWith("file:")) {
+            DownloadJob.download(location, new File(bundle.getPath()));
+          }
+        }
+      }
+    }
     return null;
   }
 
-
   /*
    *  (non-Javadoc)
    * @see org.knopflerfish.eclipse.core.IBundleRepository#getBundles()
    */
-  public IOsgiBundle[] getBundles() {
-    // TODO Auto-generated method stub
-    return null;
+  public IOsgiBundle[] getBundles()
+  {
+    // Bundles not downloaded yet can not be launched
+    List<IOsgiBundle> l = new ArrayList<IOsgiBundle>(bundles.size());
+    for (IOsgiBundle bundle : bundles) {
+      if (new File(bundle.getPath()).isFile()) {
+        l.add(bundle);
+      }
+    }
+    return l.toArray(new IOsgiBundle[l.size()]);
   }
 
   /*
    *  (non-Javadoc)
    * @see org.knopflerfish.eclipse.core.IBundleRepository#getPackageVersions(java.lang.String)
    */
-  public Version[] getPackageVersions(String packageName) {
-    // TODO Auto-generated method stub
-    return null;
+  public Version[] getPackageVersions(String packageName)
+  {
+    return packageIndex.getPackageVersions(packageName);
+  }
+
+  /****************************************************************************
+   * java.lang.Object methods
+   ***************************************************************************/
+
+  /*
+   *  (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return url;
+  }
+
+  /****************************************************************************
+   * Private utility methods
+   ***************************************************************************/
+
+  /**
+   * Returns the resources of the given repository, either from the cache
+   * or by parsing the repository index.
+   */
+  private static List<Resource> readRepository(String url,
+                                               RepositoryIndex index)
+      throws IOException
+  {
+    URLConnection con = new URL(url).openConnection();
+    if (index.getLastModified() != 0) {
+      con.setIfModifiedSince(index.getLastModified());
+    }
+    InputStream in = con.getInputStream();
+    try {
+      if (con instanceof HttpURLConnection
+          && ((HttpURLConnection) con).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED
+          && index.getResources() != null) {
+        return index.getResources();
+      }
+      long lastModified = con.getLastModified();
+      long length = con.getContentLength();
+      if (index.isCurrent(lastModified, length)) {
+        return index.getResources();
+      }
+
+      List<Resource> resources = RepositoryParser.parse(
+          new BufferedInputStream(in), con.getURL());
+      index.update(lastModified, length, resources);
+      return resources;
+    } finally {
+      in.close();
+    }
   }
 
+  private static IOsgiBundle createBundle(Resource resource)
+  {
+    IOsgiBundle b = new OsgiBundle(getFile(resource.getLocation()), resource
+        .getManifest());
+
+    // Skip if Symbolic name or name is not set
+    BundleManifest bm = b.getBundleManifest();
+    if (bm.getSymbolicName() == null && bm.getName() == null) {
+      return null;
+    }
+    return b;
+  }
+
+  private static File getFile(String location)
+  {
+    if (location.startsWith("file:")) {
+      try {
+        return new File(new URI(location));
+      } catch (URISyntaxException e) {
+        // Not encoded, e.g. contains spaces
+      } catch (IllegalArgumentException e) {
+        // Not an absolute file URI
+      }
+      return new File(location.substring("file:".length()));
+    }
+    return RepositoryPlugin.getBundleFile(location);
+  }
+
+  private void addBundle(IOsgiBundle b, String location)
+  {
+    BundleManifest bm = b.getBundleManifest();
+
+    // Use name if symbolic name is not set
+    SymbolicName symbolicName = bm.getSymbolicName();
+    if (symbolicName == null) {
+      symbolicName = new SymbolicName(bm.getName());
+    }
+
+    List<String> bundlePaths = symbolicNames.get(symbolicName.getSymbolicName());
+    if (bundlePaths == null) {
+      bundlePaths = new ArrayList<String>();
+      symbolicNames.put(symbolicName.getSymbolicName(), bundlePaths);
+    }
+    bundlePaths.add(b.getPath());
+
+    packageIndex.addBundle(bm);
+
+    bundles.add(b);
+    bundlesByPath.put(b.getPath(), b);
+    locations.put(b.getPath(), location);
+  }
 }
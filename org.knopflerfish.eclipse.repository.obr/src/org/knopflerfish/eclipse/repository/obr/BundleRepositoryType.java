@@ -35,6 +35,7 @@
 package org.knopflerfish.eclipse.repository.obr;
 
 import org.knopflerfish.eclipse.core.IBundleRepository;
+import org.knopflerfish.eclipse.core.IBundleRepositoryConfig;
 import org.knopflerfish.eclipse.core.IBundleRepositoryType;
 
 /**
@@ -43,9 +44,7 @@ import org.knopflerfish.eclipse.core.IBundleRepositoryType;
  */
 public class BundleRepositoryType implements IBundleRepositoryType {
   
-  private static String[] OBR_URLS = new String[] {
-    "http://oscar-osgi.sourceforge.net/repo/repository.xml"
-  };
+  private final BundleRepositoryConfig config = new BundleRepositoryConfig();
 
   /****************************************************************************
    * org.knopflerfish.eclipse.core.IBundleRepositoryType methods
@@ -53,36 +52,37 @@ public class BundleRepositoryType implements IBundleRepositoryType {
 
   /*
    *  (non-Javadoc)
-   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#isValidConfig(java.lang.String)
-   */
-  public boolean isValidConfig(String config) {
-    // Check that config is a valid URL
-    return true;
-  }
-
-  /*
-   *  (non-Javadoc)
-   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#getConfigSuggestions()
+   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#createRepository(java.lang.String)
    */
-  public String[] getConfigSuggestions() {
-    return OBR_URLS;
+  public IBundleRepository createRepository(String config) {
+    synchronized (RepositoryPlugin.repositoriesCache) {
+      IBundleRepository repository = RepositoryPlugin.repositoriesCache.get(config);
+      if (repository == null) {
+        repository = new BundleRepository(config);
+        RepositoryPlugin.repositoriesCache.put(config, repository);
+      }
+      return repository;
+    }
   }
 
   /*
    *  (non-Javadoc)
-   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#createRepository(java.lang.String)
+   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#refreshRepositories()
    */
-  public IBundleRepository createRepository(String config) {
-    // TODO Auto-generated method stub
-    return null;
+  public void refreshRepositories() {
+    // Repositories are read again when created, the index is only parsed
+    // again if it has changed since it was cached
+    synchronized (RepositoryPlugin.repositoriesCache) {
+      RepositoryPlugin.repositoriesCache.clear();
+    }
+    DownloadJob.clearFailed();
   }
 
   /*
    *  (non-Javadoc)
-   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#refreshRepositories()
+   * @see org.knopflerfish.eclipse.core.IBundleRepositoryType#getRepositoryConfig()
    */
-  public void refreshRepositories() {
-    // TODO Auto-generated method stub
-    
+  public IBundleRepositoryConfig getRepositoryConfig() {
+    return config;
   }
 }
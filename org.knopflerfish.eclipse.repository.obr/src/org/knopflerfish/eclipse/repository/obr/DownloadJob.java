@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.repository.obr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.knopflerfish.eclipse.core.project.classpath.ClasspathUtil;
+
+/**
+ * Job downloading bundles from OBR repositories to the plug-in state
+ * location.
+ * <p>
+ * Downloads are requested when a bundle container needs a bundle that has
+ * not been downloaded yet. When the job has downloaded bundles the bundle
+ * containers are resolved again. A bundle that fails to download is not
+ * requested again until the repositories are refreshed.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class DownloadJob extends Job {
+
+  private static final DownloadJob job = new DownloadJob();
+
+  // Local file -> location, not yet downloaded
+  private final Map<File, String> pending = new LinkedHashMap<File, String>();
+  // Locations that failed to download
+  private final Set<String> failed = new HashSet<String>();
+
+  /**
+   * Requests a download of the bundle at the given location.
+   *
+   * @param location bundle URL
+   * @param file local file to download bundle to
+   */
+  static void download(String location, File file)
+  {
+    job.request(location, file);
+  }
+
+  /**
+   * Forgets failed downloads, e.g. when repositories are refreshed.
+   */
+  static void clearFailed()
+  {
+    synchronized (job) {
+      job.failed.clear();
+    }
+  }
+
+  private DownloadJob()
+  {
+    super("Download OBR bundles");
+    setPriority(Job.LONG);
+  }
+
+  /****************************************************************************
+   * org.eclipse.core.runtime.jobs.Job methods
+   ***************************************************************************/
+  /*
+   *  (non-Javadoc)
+   * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+   */
+  protected IStatus run(IProgressMonitor monitor)
+  {
+    Map<File, String> requests;
+    synchronized (this) {
+      requests = new LinkedHashMap<File, String>(pending);
+      pending.clear();
+    }
+
+    SubMonitor progress = SubMonitor.convert(monitor, "Download OBR bundles",
+        requests.size());
+    boolean downloaded = false;
+    for (Map.Entry<File, String> e : requests.entrySet()) {
+      if (progress.isCanceled()) {
+        // Requested again when bundle containers are resolved
+        break;
+      }
+      progress.subTask(e.getValue());
+      if (copy(e.getValue(), e.getKey())) {
+        downloaded = true;
+      } else {
+        synchronized (this) {
+          failed.add(e.getValue());
+        }
+      }
+      progress.worked(1);
+    }
+
+    // Bundle containers only use downloaded bundles
+    if (downloaded) {
+      ClasspathUtil.updateBundleContainers();
+    }
+    return progress.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+  }
+
+  /****************************************************************************
+   * Private utility methods
+   ***************************************************************************/
+
+  private synchronized void request(String location, File file)
+  {
+    if (failed.contains(location) || pending.containsKey(file)) {
+      return;
+    }
+    pending.put(file, location);
+    schedule();
+  }
+
+  /**
+   * Downloads the given bundle if it has not been downloaded before.
+   *
+   * @return true if bundle was downloaded
+   */
+  private static boolean copy(String location, File f)
+  {
+    if (f.isFile()) {
+      return true;
+    }
+
+    File tmpFile = new File(f.getPath() + ".tmp");
+    InputStream in = null;
+    OutputStream out = null;
+    try {
+      f.getParentFile().mkdirs();
+      in = new URL(location).openStream();
+      out = new FileOutputStream(tmpFile);
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+      out.close();
+      out = null;
+      return tmpFile.renameTo(f);
+    } catch (IOException e) {
+      Status status = new Status(IStatus.ERROR,
+          "org.knopflerfish.eclipse.repository.obr", IStatus.OK,
+          "Failed to download bundle " + location, e);
+      RepositoryPlugin.log(status);
+      return false;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+        }
+      }
+      // Remove partially downloaded file
+      tmpFile.delete();
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.repository.obr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Manifest;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Persistent cache of a parsed OBR repository index.
+ * <p>
+ * The resources are stored together with the modification time and size of
+ * the repository index they were parsed from. As long as the index is
+ * unchanged the resources are read from the cache instead of parsing the
+ * index again. The cached resources are also used if the repository can
+ * not be reached.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class RepositoryIndex {
+
+  private static final int INDEX_VERSION = 1;
+
+  private final String url;
+  private final File indexFile;
+  private long lastModified = 0;
+  private long length = -1;
+  private List<Resource> resources = null;
+
+  /**
+   * Creates a cache for the given repository.
+   *
+   * @param url repository URL
+   * @param indexFile file where cache is persisted, may be null if the cache
+   *          shall only be kept in memory
+   */
+  RepositoryIndex(String url, File indexFile)
+  {
+    this.url = url;
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Returns true if the cached resources were parsed from a repository
+   * index with the given modification time and size.
+   *
+   * @param lastModified modification time of repository index, 0 if unknown
+   * @param length size of repository index, -1 if unknown
+   * @return true if cache is up to date; otherwise false
+   */
+  synchronized boolean isCurrent(long lastModified, long length)
+  {
+    return resources != null && lastModified != 0
+        && this.lastModified == lastModified && this.length == length;
+  }
+
+  /**
+   * Returns the modification time of the cached repository index.
+   *
+   * @return modification time or 0 if unknown
+   */
+  synchronized long getLastModified()
+  {
+    return resources == null ? 0 : lastModified;
+  }
+
+  /**
+   * Returns the cached resources.
+   *
+   * @return list of resources or null if nothing is cached
+   */
+  synchronized List<Resource> getResources()
+  {
+    return resources;
+  }
+
+  /**
+   * Replaces the cached resources and saves the cache to disk.
+   *
+   * @param lastModified modification time of repository index, 0 if unknown
+   * @param length size of repository index, -1 if unknown
+   * @param resources parsed resources
+   */
+  synchronized void update(long lastModified,
+                           long length,
+                           List<Resource> resources)
+  {
+    this.lastModified = lastModified;
+    this.length = length;
+    this.resources = resources;
+    save();
+  }
+
+  /**
+   * Loads the cache from disk. If the cache file does not exist or can not
+   * be read the cache is left empty.
+   */
+  synchronized void load()
+  {
+    resources = null;
+    if (indexFile == null || !indexFile.isFile()) {
+      return;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          indexFile)));
+      if (in.readInt() != INDEX_VERSION || !url.equals(in.readUTF())) {
+        return;
+      }
+      long lastModified = in.readLong();
+      long length = in.readLong();
+      int n = in.readInt();
+      List<Resource> l = new ArrayList<Resource>(n);
+      for (int i = 0; i < n; i++) {
+        String location = in.readUTF();
+        byte[] manifest = new byte[in.readInt()];
+        in.readFully(manifest);
+        l.add(new Resource(location, new Manifest(new ByteArrayInputStream(
+            manifest))));
+      }
+      this.lastModified = lastModified;
+      this.length = length;
+      this.resources = l;
+    } catch (IOException e) {
+      // Ignore, repository index is parsed again
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void save()
+  {
+    if (indexFile == null || resources == null) {
+      return;
+    }
+
+    File tmpFile = new File(indexFile.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      indexFile.getParentFile().mkdirs();
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+          tmpFile)));
+      out.writeInt(INDEX_VERSION);
+      out.writeUTF(url);
+      out.writeLong(lastModified);
+      out.writeLong(length);
+      out.writeInt(resources.size());
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      for (Resource resource : resources) {
+        out.writeUTF(resource.getLocation());
+        bout.reset();
+        resource.getManifest().write(bout);
+        out.writeInt(bout.size());
+        bout.writeTo(out);
+      }
+      out.close();
+      out = null;
+
+      if (indexFile.exists()) {
+        indexFile.delete();
+      }
+      tmpFile.renameTo(indexFile);
+    } catch (IOException e) {
+      Status status = new Status(IStatus.ERROR,
+          "org.knopflerfish.eclipse.repository.obr", IStatus.OK,
+          "Failed to save OBR repository index " + indexFile, e);
+      RepositoryPlugin.log(status);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+        }
+      }
+      tmpFile.delete();
+    }
+  }
+}
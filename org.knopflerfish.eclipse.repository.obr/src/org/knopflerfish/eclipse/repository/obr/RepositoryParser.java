@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2003-2011, KNOPFLERFISH project
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials
+ *   provided with the distribution.
+ *
+ * - Neither the name of the KNOPFLERFISH project nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.knopflerfish.eclipse.repository.obr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming parser for OBR repository indexes, e.g. repository.xml.
+ * <p>
+ * The index is parsed with SAX so that no document tree is built, only the
+ * resulting list of resources is kept in memory. Both the OBR 1.0 format
+ * (&lt;resource&gt; elements with capabilities and requirements) and the
+ * older Oscar format (&lt;bundle&gt; elements) are understood. Every
+ * resource is described by a manifest holding the bundle headers, so that
+ * resources can be handled as any other bundle.
+ * </p>
+ *
+ * @author Anders Rimn, Makewave
+ * @see http://www.makewave.com/
+ */
+class RepositoryParser extends DefaultHandler {
+
+  // OBR 1.0 elements
+  private static final String RESOURCE = "resource";
+  private static final String DESCRIPTION = "description";
+  private static final String CATEGORY = "category";
+  private static final String CAPABILITY = "capability";
+  private static final String REQUIRE = "require";
+  private static final String PROPERTY = "p";
+
+  // Oscar elements
+  private static final String BUNDLE = "bundle";
+  private static final String BUNDLE_PREFIX = "bundle-";
+  private static final String BUNDLE_UPDATELOCATION = "bundle-updatelocation";
+  private static final String EXPORT_PACKAGE = "export-package";
+  private static final String IMPORT_PACKAGE = "import-package";
+
+  private static final String PACKAGE = "package";
+
+  // Matches simple filter terms, e.g. (version>=1.0.0) or (!(version>=2.0.0))
+  private static final Pattern FILTER_TERM = Pattern
+      .compile("(\\(\\s*!\\s*)?\\(\\s*(package|version)\\s*(>=|<=|=|>|<)\\s*([^()]*?)\\s*\\)");
+
+  private final URL base;
+  private final List<Resource> resources = new ArrayList<Resource>();
+  private final StringBuilder text = new StringBuilder();
+
+  // Current resource
+  private String location;
+  private Map<String, String> headers;
+  private List<String> exports;
+  private List<String> imports;
+  private List<String> categories;
+  private String capability;
+  private final Map<String, String> properties = new HashMap<String, String>();
+
+  private RepositoryParser(URL base)
+  {
+    this.base = base;
+  }
+
+  /**
+   * Parses a repository index.
+   *
+   * @param in index contents
+   * @param base URL of the index, relative bundle locations are resolved
+   *          against it
+   * @return list of resources in index order
+   * @throws IOException if the index can not be read or parsed
+   */
+  static List<Resource> parse(InputStream in, URL base) throws IOException
+  {
+    RepositoryParser parser = new RepositoryParser(base);
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(false);
+      factory.setValidating(false);
+      // Index is read from the network, never resolve external entities
+      factory.setFeature(
+          "http://xml.org/sax/features/external-general-entities", false);
+      factory.setFeature(
+          "http://xml.org/sax/features/external-parameter-entities", false);
+      try {
+        factory.setFeature(
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+            false);
+      } catch (SAXException e) {
+        // Not a Xerces based parser, external entities are still disabled
+      }
+      factory.newSAXParser().parse(in, parser);
+    } catch (SAXException e) {
+      IOException ioe = new IOException("Failed to parse repository " + base
+          + ": " + e.getMessage());
+      ioe.initCause(e);
+      throw ioe;
+    } catch (ParserConfigurationException e) {
+      IOException ioe = new IOException("Failed to create XML parser");
+      ioe.initCause(e);
+      throw ioe;
+    }
+    return parser.resources;
+  }
+
+  /**
+   * Converts an OBR package requirement filter to an Import-Package clause,
+   * e.g. "(&amp;(package=org.osgi.framework)(version&gt;=1.3.0))" to
+   * "org.osgi.framework;version="1.3.0"".
+   *
+   * @param filter requirement filter
+   * @param optional if requirement is optional
+   * @return import package clause or null if filter does not contain a
+   *         package name
+   */
+  static String importPackage(String filter, boolean optional)
+  {
+    if (filter == null) {
+      return null;
+    }
+
+    String name = null;
+    String low = null;
+    String high = null;
+    boolean lowInclusive = true;
+    boolean highInclusive = false;
+    Matcher m = FILTER_TERM.matcher(filter);
+    while (m.find()) {
+      boolean not = m.group(1) != null;
+      String op = m.group(3);
+      String value = m.group(4);
+      if (PACKAGE.equals(m.group(2))) {
+        if (!not && "=".equals(op)) {
+          name = value;
+        }
+      } else if ("=".equals(op)) {
+        low = value;
+        high = value;
+        lowInclusive = true;
+        highInclusive = true;
+      } else if (">=".equals(op) || ">".equals(op)) {
+        if (not) {
+          high = value;
+          highInclusive = ">".equals(op);
+        } else {
+          low = value;
+          lowInclusive = ">=".equals(op);
+        }
+      } else {
+        if (not) {
+          low = value;
+          lowInclusive = "<".equals(op);
+        } else {
+          high = value;
+          highInclusive = "<=".equals(op);
+        }
+      }
+    }
+    if (name == null) {
+      return null;
+    }
+
+    StringBuilder buf = new StringBuilder(name);
+    if (high != null) {
+      buf.append(";version=\"");
+      buf.append(lowInclusive ? '[' : '(');
+      buf.append(low == null ? "0.0.0" : low);
+      buf.append(',');
+      buf.append(high);
+      buf.append(highInclusive ? ']' : ')');
+      buf.append('"');
+    } else if (low != null) {
+      buf.append(";version=\"");
+      buf.append(low);
+      buf.append('"');
+    }
+    if (optional) {
+      buf.append(";resolution:=optional");
+    }
+    return buf.toString();
+  }
+
+  //***************************************************************************
+  // org.xml.sax.helpers.DefaultHandler methods
+  //***************************************************************************
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+   * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+   */
+  public void startElement(String uri,
+                           String localName,
+                           String qName,
+                           Attributes attributes)
+  {
+    text.setLength(0);
+
+    if (RESOURCE.equals(qName) || BUNDLE.equals(qName)) {
+      startResource();
+      if (RESOURCE.equals(qName)) {
+        location = attributes.getValue("uri");
+        putHeader("Bundle-SymbolicName", attributes.getValue("symbolicname"));
+        putHeader("Bundle-Name", attributes.getValue("presentationname"));
+        putHeader("Bundle-Version", attributes.getValue("version"));
+      }
+    } else if (headers == null) {
+      // Outside resource
+    } else if (CATEGORY.equals(qName)) {
+      addValue(categories, attributes.getValue("id"));
+    } else if (CAPABILITY.equals(qName)) {
+      capability = attributes.getValue("name");
+      properties.clear();
+    } else if (PROPERTY.equals(qName)) {
+      if (capability != null && attributes.getValue("n") != null) {
+        properties.put(attributes.getValue("n"), attributes.getValue("v"));
+      }
+    } else if (REQUIRE.equals(qName)) {
+      if (PACKAGE.equals(attributes.getValue("name"))) {
+        addValue(imports, importPackage(attributes.getValue("filter"),
+            "true".equals(attributes.getValue("optional"))));
+      }
+    } else if (EXPORT_PACKAGE.equals(qName)) {
+      addValue(exports, packageClause(attributes.getValue(PACKAGE),
+          attributes.getValue("specification-version")));
+    } else if (IMPORT_PACKAGE.equals(qName)) {
+      addValue(imports, packageClause(attributes.getValue(PACKAGE),
+          attributes.getValue("specification-version")));
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+   * java.lang.String, java.lang.String)
+   */
+  public void endElement(String uri, String localName, String qName)
+  {
+    if (headers == null) {
+      return;
+    }
+
+    if (RESOURCE.equals(qName) || BUNDLE.equals(qName)) {
+      endResource();
+    } else if (DESCRIPTION.equals(qName)) {
+      putHeader("Bundle-Description", text.toString().trim());
+    } else if (CAPABILITY.equals(qName)) {
+      if (PACKAGE.equals(capability)) {
+        addValue(exports, packageClause(properties.get(PACKAGE), properties
+            .get("version")));
+      } else if (BUNDLE.equals(capability)) {
+        putDefaultHeader("Bundle-SymbolicName", properties.get("symbolicname"));
+        putDefaultHeader("Bundle-Name", properties.get("presentationname"));
+        putDefaultHeader("Bundle-Version", properties.get("version"));
+        putDefaultHeader("Bundle-ManifestVersion", properties
+            .get("manifestversion"));
+      }
+      capability = null;
+    } else if (BUNDLE_UPDATELOCATION.equals(qName)) {
+      location = text.toString().trim();
+    } else if (qName.startsWith(BUNDLE_PREFIX)) {
+      // Oscar format, e.g. bundle-name -> Bundle-Name
+      putHeader(headerName(qName), text.toString().trim());
+    }
+    text.setLength(0);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+   */
+  public void characters(char[] ch, int start, int length)
+  {
+    if (headers != null) {
+      text.append(ch, start, length);
+    }
+  }
+
+  //***************************************************************************
+  // Private utility methods
+  //***************************************************************************
+  private void startResource()
+  {
+    location = null;
+    headers = new HashMap<String, String>();
+    exports = new ArrayList<String>();
+    imports = new ArrayList<String>();
+    categories = new ArrayList<String>();
+    capability = null;
+  }
+
+  private void endResource()
+  {
+    String resolved = resolve(location);
+    if (resolved != null) {
+      Manifest manifest = new Manifest();
+      manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+      for (Map.Entry<String, String> e : headers.entrySet()) {
+        manifest.getMainAttributes().putValue(e.getKey(), e.getValue());
+      }
+      putList(manifest, "Export-Package", exports);
+      putList(manifest, "Import-Package", imports);
+      putList(manifest, "Bundle-Category", categories);
+      resources.add(new Resource(resolved, manifest));
+    }
+    headers = null;
+    exports = null;
+    imports = null;
+    categories = null;
+  }
+
+  private String resolve(String location)
+  {
+    if (location == null || location.length() == 0) {
+      return null;
+    }
+    try {
+      return (base == null ? new URL(location) : new URL(base, location))
+          .toExternalForm();
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+  private void putHeader(String name, String value)
+  {
+    if (value != null && value.length() > 0) {
+      headers.put(name, value);
+    }
+  }
+
+  private void putDefaultHeader(String name, String value)
+  {
+    if (!headers.containsKey(name)) {
+      putHeader(name, value);
+    }
+  }
+
+  private static void addValue(List<String> l, String value)
+  {
+    if (value != null && value.length() > 0) {
+      l.add(value);
+    }
+  }
+
+  private static void putList(Manifest manifest, String name, List<String> l)
+  {
+    if (l.isEmpty()) {
+      return;
+    }
+    StringBuilder buf = new StringBuilder();
+    for (String s : l) {
+      if (buf.length() > 0) {
+        buf.append(',');
+      }
+      buf.append(s);
+    }
+    manifest.getMainAttributes().putValue(name, buf.toString());
+  }
+
+  private static String packageClause(String name, String version)
+  {
+    if (name == null || name.length() == 0) {
+      return null;
+    }
+    if (version == null || version.length() == 0) {
+      return name;
+    }
+    return name + ";version=\"" + version + "\"";
+  }
+
+  private static String headerName(String element)
+  {
+    StringBuilder buf = new StringBuilder(element.length());
+    boolean upper = true;
+    for (int i = 0; i < element.length(); i++) {
+      char c = element.charAt(i);
+      buf.append(upper ? Character.toUpperCase(c) : c);
+      upper = c == '-';
+    }
+    return buf.toString();
+  }
+}
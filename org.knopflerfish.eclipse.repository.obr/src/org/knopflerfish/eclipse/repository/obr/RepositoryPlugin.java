@@ -34,7 +34,16 @@
 
 package org.knopflerfish.eclipse.repository.obr;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
+import org.knopflerfish.eclipse.core.IBundleRepository;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -45,6 +54,9 @@ public class RepositoryPlugin extends Plugin {
 
 	//The shared instance.
 	private static RepositoryPlugin plugin;
+
+	static Map<String, IBundleRepository> repositoriesCache = new HashMap<String, IBundleRepository>();
+	private static Map<String, RepositoryIndex> indexCache = new HashMap<String, RepositoryIndex>();
 	
 	/**
 	 * The constructor.
@@ -75,4 +87,78 @@ public class RepositoryPlugin extends Plugin {
 		return plugin;
 	}
 
+	/**
+	 * Logs the given status to the plug-in log.
+	 */
+	static void log(IStatus status) {
+		if (plugin != null) {
+			plugin.getLog().log(status);
+		}
+	}
+
+	/**
+	 * Returns the cached index for the given repository. The index is loaded
+	 * from the plug-in state location the first time it is requested.
+	 *
+	 * @param url repository URL
+	 * @return repository index
+	 */
+	static synchronized RepositoryIndex getRepositoryIndex(String url) {
+		RepositoryIndex index = indexCache.get(url);
+		if (index == null) {
+			File indexFile = null;
+			if (plugin != null) {
+				File indexDir = new File(plugin.getStateLocation().toFile(), "index");
+				indexFile = new File(indexDir, digest(url) + ".idx");
+			}
+			index = new RepositoryIndex(url, indexFile);
+			index.load();
+			indexCache.put(url, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the local file used for a bundle downloaded from the given
+	 * location.
+	 *
+	 * @param location bundle URL
+	 * @return local bundle file, may not exist
+	 */
+	static File getBundleFile(String location) {
+		File dir;
+		if (plugin != null) {
+			dir = new File(plugin.getStateLocation().toFile(), "bundles");
+		} else {
+			dir = new File(System.getProperty("java.io.tmpdir"), "obr-bundles");
+		}
+		String name = location.substring(location.lastIndexOf('/') + 1)
+				.replaceAll("[^\\w.-]", "_");
+		if (name.length() == 0) {
+			name = "bundle.jar";
+		}
+		return new File(new File(dir, digest(location)), name);
+	}
+
+	/**
+	 * Returns the SHA-1 digest of the given string as a hex string, used as
+	 * file name for data cached per URL.
+	 */
+	private static String digest(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(s.getBytes("UTF-8"));
+			StringBuffer buf = new StringBuffer(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				buf.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+				buf.append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return buf.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not supported");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 not supported");
+		}
+	}
+
 }